@@ -0,0 +1,116 @@
+package com.sccomponents.interfaces;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Connectivity provider reading the status from the Android connectivity manager.
+ * The changes are listened through the connectivity broadcast, registered while at least
+ * one listener exists.
+ *
+ * PERMISSION: need the ACCESS_NETWORK_STATE permission inside the application manifest.
+ */
+@SuppressWarnings("unused")
+public class ScAndroidConnectivityProvider implements ScConnectivityProvider {
+
+    /**
+     * Private variables
+     */
+
+    private Context mContext = null;                            // The application context
+    private ConnectivityManager mManager = null;                // The connectivity manager
+    private BroadcastReceiver mReceiver = null;                 // The changes receiver
+    private volatile boolean mLastStatus = true;                // The last notified status
+
+    // The listeners
+    private CopyOnWriteArrayList<OnConnectivityChangeListener> mListeners =
+            new CopyOnWriteArrayList<>();
+
+
+    /**
+     * Private methods
+     */
+
+    // Read the status from the manager and call the listeners if changed
+    private void notifyIfChanged() {
+        // Get the current status and check if changed
+        boolean connected = this.isConnected();
+        if (connected == this.mLastStatus) return;
+        this.mLastStatus = connected;
+
+        // Call the listeners
+        for (OnConnectivityChangeListener listener : this.mListeners)
+            listener.onConnectivityChange(connected);
+    }
+
+
+    /**
+     * Public methods
+     */
+
+    // Constructor
+    public ScAndroidConnectivityProvider(Context context) {
+        // Init
+        this.mContext = context.getApplicationContext();
+        this.mManager = (ConnectivityManager)
+                this.mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.mLastStatus = this.isConnected();
+    }
+
+    @Override
+    public boolean isConnected() {
+        // If the manager not exists consider connected
+        if (this.mManager == null) return true;
+
+        try {
+            // Get the active network
+            NetworkInfo info = this.mManager.getActiveNetworkInfo();
+            return info != null && info.isConnected();
+
+        } catch (SecurityException e) {
+            // Missing permission so cannot know the status
+            return true;
+        }
+    }
+
+    @Override
+    public synchronized void addOnConnectivityChangeListener(
+            OnConnectivityChangeListener listener) {
+        // Hold the listener
+        if (listener == null) return;
+        this.mListeners.addIfAbsent(listener);
+
+        // Register the receiver if needed
+        if (this.mReceiver == null) {
+            this.mLastStatus = this.isConnected();
+            this.mReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    ScAndroidConnectivityProvider.this.notifyIfChanged();
+                }
+            };
+            this.mContext.registerReceiver(
+                    this.mReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        }
+    }
+
+    @Override
+    public synchronized void removeOnConnectivityChangeListener(
+            OnConnectivityChangeListener listener) {
+        // Remove the listener
+        this.mListeners.remove(listener);
+
+        // Unregister the receiver if not needed anymore
+        if (this.mListeners.isEmpty() && this.mReceiver != null) {
+            this.mContext.unregisterReceiver(this.mReceiver);
+            this.mReceiver = null;
+        }
+    }
+
+}
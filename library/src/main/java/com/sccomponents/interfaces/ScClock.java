@@ -0,0 +1,39 @@
+package com.sccomponents.interfaces;
+
+/**
+ * Give the current time to the commands scheduler.
+ * The time is expressed in milliseconds on the same scale of the wall clock, so a command saved
+ * and loaded again keep its schedule.
+ */
+public interface ScClock {
+
+    // The default clock
+    ScClock MONOTONIC = new MonotonicClock();
+
+    // Get the current time in milliseconds
+    long now();
+
+
+    /**
+     * Clock anchored on the wall clock when created that after follow only the monotonic
+     * system timer, so it never jump back or forward when the wall clock is changed.
+     */
+    class MonotonicClock implements ScClock {
+
+        private final long mBase;           // The wall clock when created
+        private final long mStart;          // The monotonic timer when created
+
+        // Constructor
+        public MonotonicClock() {
+            this.mBase = System.currentTimeMillis();
+            this.mStart = System.nanoTime();
+        }
+
+        @Override
+        public long now() {
+            return this.mBase + (System.nanoTime() - this.mStart) / 1000000;
+        }
+
+    }
+
+}
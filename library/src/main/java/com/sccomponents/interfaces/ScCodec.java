@@ -0,0 +1,29 @@
+package com.sccomponents.interfaces;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * Encode the commands and decode the answers of a HTTP transport.
+ */
+public interface ScCodec {
+
+    // Get the content type of the encoded request
+    String getContentType();
+
+    // Get the url of a method.
+    // The service url is the server address followed by the web service name.
+    String getUrl(String serviceUrl, String namespace, String methodName);
+
+    // Encode the method call.
+    // The callable parameters are already executed.
+    void encode(String namespace, String methodName, Map<String, Object> params,
+                OutputStream output) throws IOException;
+
+    // Decode the answer of the server.
+    // Throw a ScServerFault if the server answered with an error.
+    String decode(int status, InputStream input) throws IOException;
+
+}
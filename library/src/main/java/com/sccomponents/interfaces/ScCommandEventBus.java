@@ -0,0 +1,298 @@
+package com.sccomponents.interfaces;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Deliver the commands life cycle events to many subscribers.
+ * The events are delivered through an executor so a slow subscriber not stall the caller.
+ * When the batching is active the events raised by a thread between < beginBatch > and
+ * < endBatch > are delivered together with a single notification.
+ * A batch can be shared with other threads, like the workers of a dispatch cycle, and is
+ * delivered when the last of them end it.
+ */
+@SuppressWarnings("unused")
+public class ScCommandEventBus {
+
+    /**
+     * Static and constant
+     */
+
+    // Default max number of events inside a batch
+    private static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+
+    /**
+     * Private variables
+     */
+
+    private volatile Executor mExecutor = null;         // Delivery executor, null for direct
+    private volatile boolean mBatching = false;         // Batching trigger
+    private int mMaxBatchSize = DEFAULT_MAX_BATCH_SIZE; // Max events for notification
+
+    // The subscribers list is read at every event and written rarely
+    private CopyOnWriteArrayList<OnCommandEventsListener> mSubscribers = null;
+    // The pending batch of every thread
+    private ThreadLocal<Batch> mBatch = null;
+
+
+    /**
+     * Private methods
+     */
+
+    // Deliver the events to all subscribers
+    private void deliver(final List<CommandEvent> events) {
+        // Create the delivery task
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                // Cycle all subscribers
+                for (OnCommandEventsListener subscriber : ScCommandEventBus.this.mSubscribers) {
+                    try {
+                        subscriber.onCommandEvents(events);
+                    } catch (Exception e) {
+                        // A subscriber error must not stop the others
+                        e.printStackTrace();
+                    }
+                }
+            }
+        };
+
+        // Run the task on the executor if exists
+        Executor executor = this.mExecutor;
+        if (executor != null) executor.execute(task);
+        else task.run();
+    }
+
+
+    /**
+     * Public methods
+     */
+
+    // Constructor
+    public ScCommandEventBus() {
+        // Init
+        this.mSubscribers = new CopyOnWriteArrayList<>();
+        this.mBatch = new ThreadLocal<>();
+    }
+
+    // Add a subscriber
+    public void subscribe(OnCommandEventsListener listener) {
+        if (listener != null) this.mSubscribers.addIfAbsent(listener);
+    }
+
+    // Remove a subscriber
+    public void unsubscribe(OnCommandEventsListener listener) {
+        this.mSubscribers.remove(listener);
+    }
+
+    // Check if have subscribers.
+    // Can be used to avoid to create the events when nobody listen.
+    public boolean hasSubscribers() {
+        return !this.mSubscribers.isEmpty();
+    }
+
+    // Publish an event.
+    // If the current thread is inside a batch the event is held until the batch end.
+    public void publish(CommandEvent event) {
+        // Check if the current thread have a batch
+        Batch batch = this.mBatch.get();
+        if (batch != null) {
+            // Add to the batch and deliver if full
+            ArrayList<CommandEvent> full = null;
+            synchronized (batch) {
+                batch.mEvents.add(event);
+                if (batch.mEvents.size() >= this.mMaxBatchSize) {
+                    full = batch.mEvents;
+                    batch.mEvents = new ArrayList<>();
+                }
+            }
+            if (full != null) this.deliver(Collections.unmodifiableList(full));
+        } else {
+            // Deliver immediately
+            this.deliver(Collections.singletonList(event));
+        }
+    }
+
+    // Start to batch the events published by the current thread.
+    // Do nothing if the batching is not active.
+    public void beginBatch() {
+        if (this.mBatching && this.mBatch.get() == null)
+            this.mBatch.set(new Batch());
+    }
+
+    // Deliver the events batched by the current thread.
+    // If the batch is shared the events are delivered by the last thread that end it.
+    public void endBatch() {
+        // Get the batch and remove it from the thread
+        Batch batch = this.mBatch.get();
+        if (batch == null) return;
+        this.mBatch.remove();
+        this.leaveBatch(batch);
+    }
+
+    // Leave a shared batch without join it, for example when the thread that should join it
+    // can not be started
+    void leaveBatch(Batch batch) {
+        // Check if was the last thread
+        if (batch == null) return;
+        ArrayList<CommandEvent> events;
+        synchronized (batch) {
+            if (--batch.mOpen > 0) return;
+            events = batch.mEvents;
+        }
+
+        // Deliver if not empty
+        if (!events.isEmpty()) this.deliver(Collections.unmodifiableList(events));
+    }
+
+    // Share the batch of the current thread with another thread.
+    // The other thread must pass the returned batch to < joinBatch > and always call
+    // < endBatch > at the end. Return null if the current thread have not a batch.
+    Batch shareBatch() {
+        // Get the batch of this thread
+        Batch batch = this.mBatch.get();
+        if (batch == null) return null;
+        // Count the new thread
+        synchronized (batch) {
+            batch.mOpen++;
+        }
+        return batch;
+    }
+
+    // Join the current thread to a batch shared by another thread
+    void joinBatch(Batch batch) {
+        if (batch != null) this.mBatch.set(batch);
+    }
+
+
+    /**
+     * Public properties
+     */
+
+    // Get/Set the delivery executor.
+    // If null the events are delivered on the publisher thread.
+    // Default: null
+    public void setExecutor(Executor value) {
+        this.mExecutor = value;
+    }
+
+    public Executor getExecutor() {
+        return this.mExecutor;
+    }
+
+    // Get/Set the batching status.
+    // Default: false
+    public void setBatching(boolean value) {
+        this.mBatching = value;
+    }
+
+    public boolean getBatching() {
+        return this.mBatching;
+    }
+
+    // Get/Set the max events delivered with a single notification.
+    // Default: 100
+    public void setMaxBatchSize(int value) {
+        this.mMaxBatchSize = Math.max(1, value);
+    }
+
+    public int getMaxBatchSize() {
+        return this.mMaxBatchSize;
+    }
+
+
+    /******************************************************************************************
+     * BATCH CLASS
+     * Internal use only
+     *****************************************************************************************/
+
+    /**
+     * The events held by one or more threads
+     */
+    static class Batch {
+
+        private ArrayList<CommandEvent> mEvents = new ArrayList<>();    // The held events
+        private int mOpen = 1;                                          // Threads inside
+
+    }
+
+
+    /******************************************************************************************
+     * COMMAND EVENT CLASS
+     *****************************************************************************************/
+
+    /**
+     * Define a command life cycle event
+     */
+    public static class CommandEvent {
+
+        /**
+         * Event types
+         */
+        public enum Type {
+            REQUEST,                // The command execution is starting
+            COMPLETE,               // The command finished with success
+            ERROR                   // The command finished with error
+        }
+
+
+        /**
+         * Private variables
+         */
+
+        private Type mType = null;                      // The event type
+        private ScServer.Command mCommand = null;       // The command
+        private String mValue = null;                   // The returned value
+        private long mTime = 0;                         // The event time
+
+
+        // Constructor
+        public CommandEvent(Type type, ScServer.Command command, String value) {
+            this(type, command, value, ScClock.MONOTONIC.now());
+        }
+
+        public CommandEvent(Type type, ScServer.Command command, String value, long time) {
+            this.mType = type;
+            this.mCommand = command;
+            this.mValue = value;
+            this.mTime = time;
+        }
+
+
+        /**
+         * Public properties
+         */
+
+        public Type getType() {
+            return this.mType;
+        }
+
+        public ScServer.Command getCommand() {
+            return this.mCommand;
+        }
+
+        public String getValue() {
+            return this.mValue;
+        }
+
+        public long getTime() {
+            return this.mTime;
+        }
+
+    }
+
+
+    /**
+     * Events listener
+     */
+    public interface OnCommandEventsListener {
+
+        void onCommandEvents(List<CommandEvent> events);
+
+    }
+
+}
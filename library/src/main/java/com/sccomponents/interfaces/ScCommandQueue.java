@@ -0,0 +1,426 @@
+package com.sccomponents.interfaces;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrent commands queue that keep the inserting order.
+ * Every command is indexed by a sequence number assigned when added, so adding and removing
+ * a command cost O(log n) and never copy the queue.
+ * The iteration is weakly consistent: it never throw exceptions and every command present for
+ * the whole iteration is returned exactly one time in the inserting order.
+ * The queue also track the estimated memory size of the commands and let a producer wait until
+ * some command is removed.
+ * The commands are indexed also by their next execution time, so the due commands and the next
+ * due time are found without scan the queue. The index is updated when a command is added and
+ * every time its next execution change; the entries left behind by a change are dropped when
+ * found.
+ * When due the commands are moved to the due list of their group, ordered as inside the
+ * queue, so the due commands of a group are taken one by one without read the others.
+ */
+@SuppressWarnings("unused")
+public class ScCommandQueue implements Iterable<ScServer.SchedulableCommand> {
+
+    /**
+     * Private variables
+     */
+
+    private AtomicLong mSequence = null;            // The next sequence number
+    private AtomicInteger mSize = null;             // The commands count
+    private AtomicLong mBytes = null;               // The commands estimated size
+    private AtomicLong mChanges = null;             // The adding and removing count
+    private final Object mSpace = new Object();     // Signal the removals
+    private volatile int mWaiters = 0;              // Producers waiting for a removal
+
+    // The commands ordered by sequence number
+    private ConcurrentSkipListMap<Long, ScServer.SchedulableCommand> mCommands = null;
+    // The commands ordered by next execution time and sequence number
+    private PriorityQueue<Due> mSchedule = null;
+    // The due commands of every group ordered by sequence number
+    private HashMap<String, TreeMap<Long, Due>> mReady = null;
+
+
+    /**
+     * Private methods
+     */
+
+    // Check if an index entry is still the current one of its command
+    private static boolean isCurrent(Due due) {
+        return due.mCommand.mDue == due && due.mCommand.mQueueKey == due.mKey;
+    }
+
+    // Drop the not current entries from the top of the index.
+    // NB: must be called holding the index lock.
+    private void dropStale() {
+        Due due;
+        while ((due = this.mSchedule.peek()) != null && !ScCommandQueue.isCurrent(due))
+            this.mSchedule.poll();
+    }
+
+    // Get the first current entry of a group due list, dropping the entries left behind.
+    // The group without current entries is forgotten.
+    // NB: must be called holding the index lock.
+    private Due firstReady(String group) {
+        // Get the group list
+        TreeMap<Long, Due> ready = this.mReady.get(group);
+        if (ready == null) return null;
+
+        // Cycle until find a current entry
+        Map.Entry<Long, Due> entry;
+        while ((entry = ready.firstEntry()) != null) {
+            if (ScCommandQueue.isCurrent(entry.getValue())) return entry.getValue();
+            ready.pollFirstEntry();
+        }
+
+        // Empty
+        this.mReady.remove(group);
+        return null;
+    }
+
+    // Rebuild the index if the entries left behind are more than the current ones.
+    // NB: must be called holding the index lock.
+    private void compact() {
+        // Check the size
+        if (this.mSchedule.size() <= 2 * this.mSize.get() + 64) return;
+
+        // Keep only the current entries
+        PriorityQueue<Due> schedule = new PriorityQueue<>(Math.max(1, this.mSize.get()));
+        for (Due due : this.mSchedule) {
+            if (ScCommandQueue.isCurrent(due)) schedule.add(due);
+        }
+        this.mSchedule = schedule;
+    }
+
+
+    /**
+     * Public methods
+     */
+
+    // Constructor
+    public ScCommandQueue() {
+        // Init
+        this.mSequence = new AtomicLong();
+        this.mSize = new AtomicInteger();
+        this.mBytes = new AtomicLong();
+        this.mChanges = new AtomicLong();
+        this.mCommands = new ConcurrentSkipListMap<>();
+        this.mSchedule = new PriorityQueue<>();
+        this.mReady = new HashMap<>();
+    }
+
+    // Add a command at the end of the queue.
+    // Return false if the command is already in a queue.
+    public boolean add(ScServer.SchedulableCommand command) {
+        // Check for null value
+        if (command == null) return false;
+
+        synchronized (command) {
+            // Check if already queued
+            if (command.mQueueKey != 0) return false;
+            // Assign the sequence and the size and add it
+            command.mQueueKey = this.mSequence.incrementAndGet();
+            command.mQueueBytes = (int) Math.min(Integer.MAX_VALUE, command.estimateSize());
+            this.mCommands.put(command.mQueueKey, command);
+        }
+
+        // Update the size and index the next execution
+        this.mSize.incrementAndGet();
+        this.mBytes.addAndGet(command.mQueueBytes);
+        this.mChanges.incrementAndGet();
+        this.schedule(command);
+        return true;
+    }
+
+    // Add many commands at the end of the queue keeping the collection order.
+    // Return the number of commands added.
+    public int addAll(Collection<? extends ScServer.SchedulableCommand> commands) {
+        // Holder
+        int count = 0;
+        // Cycle all commands and add them
+        if (commands != null)
+            for (ScServer.SchedulableCommand command : commands) {
+                if (this.add(command)) count++;
+            }
+        // Return the count
+        return count;
+    }
+
+    // Remove a command from the queue.
+    // Return false if the command is not in this queue.
+    public boolean remove(ScServer.SchedulableCommand command) {
+        // Check for null value
+        if (command == null) return false;
+
+        synchronized (command) {
+            // Check if queued here
+            if (command.mQueueKey == 0 || !this.mCommands.remove(command.mQueueKey, command))
+                return false;
+            // Reset the sequence
+            command.mQueueKey = 0;
+        }
+
+        // Update the size
+        this.mSize.decrementAndGet();
+        this.mBytes.addAndGet(-command.mQueueBytes);
+        this.mChanges.incrementAndGet();
+
+        // Wake up the waiting producers
+        if (this.mWaiters > 0)
+            synchronized (this.mSpace) {
+                this.mSpace.notifyAll();
+            }
+        return true;
+    }
+
+    // Remove many commands from the queue.
+    // Return the list of commands removed.
+    public ArrayList<ScServer.SchedulableCommand> removeAll(
+            Collection<? extends ScServer.SchedulableCommand> commands) {
+        // Holder
+        ArrayList<ScServer.SchedulableCommand> removed = new ArrayList<>();
+        // Cycle all commands and remove them
+        if (commands != null)
+            for (ScServer.SchedulableCommand command : commands) {
+                if (this.remove(command)) removed.add(command);
+            }
+        // Return the removed
+        return removed;
+    }
+
+    // Remove all commands
+    public void clear() {
+        // Remove one by one so the sequence of every command is reset
+        for (ScServer.SchedulableCommand command : this.mCommands.values()) {
+            this.remove(command);
+        }
+    }
+
+    // Index the command by its current next execution time.
+    // Must be called every time the next execution of a queued command change and when a
+    // command taken from the index must be executed later.
+    // Nothing is done if the command is not queued or already indexed at the same time.
+    public void schedule(ScServer.SchedulableCommand command) {
+        // Check for null value
+        if (command == null) return;
+
+        synchronized (this.mSchedule) {
+            // Check if queued and already indexed
+            long key = command.mQueueKey;
+            Due due = command.mDue;
+            if (key == 0 || (due != null && due.mKey == key &&
+                    due.mTime == command.mNextExecution))
+                return;
+
+            // Index the new time, the old entry is dropped when found
+            command.mDue = new Due(command.mNextExecution, key, command);
+            this.mSchedule.add(command.mDue);
+            this.compact();
+        }
+    }
+
+    // Take from the index the first command with the next execution at or before the passed
+    // time, in order of time and after in the queue order.
+    // The command taken is not indexed anymore until scheduled again.
+    // Return null if no command is due.
+    public ScServer.SchedulableCommand pollScheduled(long time) {
+        synchronized (this.mSchedule) {
+            // Check the first current entry
+            this.dropStale();
+            Due due = this.mSchedule.peek();
+            if (due == null || due.mTime > time) return null;
+
+            // Take it
+            this.mSchedule.poll();
+            due.mCommand.mDue = null;
+            return due.mCommand;
+        }
+    }
+
+    // Get the first next execution time inside the index, Long.MAX_VALUE if nothing is indexed.
+    // The due commands not yet taken from their group are included.
+    public long peekScheduled() {
+        synchronized (this.mSchedule) {
+            // The first not due
+            this.dropStale();
+            Due due = this.mSchedule.peek();
+            long time = due != null ? due.mTime : Long.MAX_VALUE;
+
+            // The due ones
+            for (String group : new ArrayList<>(this.mReady.keySet())) {
+                Due first = this.firstReady(group);
+                if (first != null) time = Math.min(time, first.mTime);
+            }
+            return time;
+        }
+    }
+
+    // Move the commands with the next execution at or before the passed time to the due list
+    // of their group
+    public void promote(long time) {
+        synchronized (this.mSchedule) {
+            // Cycle all due entries
+            Due due;
+            while ((due = this.mSchedule.peek()) != null && due.mTime <= time) {
+                // Take it if current
+                this.mSchedule.poll();
+                if (!ScCommandQueue.isCurrent(due)) continue;
+
+                // Add to its group, replacing the entry left behind by the same command
+                String group = due.mCommand.getGroup();
+                TreeMap<Long, Due> ready = this.mReady.get(group);
+                if (ready == null) {
+                    ready = new TreeMap<>();
+                    this.mReady.put(group, ready);
+                }
+                ready.put(due.mKey, due);
+            }
+        }
+    }
+
+    // Get the groups with due commands ordered by their first due command in the queue order
+    public ArrayList<String> getReadyGroups() {
+        synchronized (this.mSchedule) {
+            // Find the first command of every group
+            final HashMap<String, Long> first = new HashMap<>();
+            for (String group : new ArrayList<>(this.mReady.keySet())) {
+                Due due = this.firstReady(group);
+                if (due != null) first.put(group, due.mKey);
+            }
+
+            // Sort
+            ArrayList<String> groups = new ArrayList<>(first.keySet());
+            Collections.sort(groups, new Comparator<String>() {
+                @Override
+                public int compare(String lhs, String rhs) {
+                    long left = first.get(lhs);
+                    long right = first.get(rhs);
+                    return left < right ? -1 : (left == right ? 0 : 1);
+                }
+            });
+            return groups;
+        }
+    }
+
+    // Take the first due command of a group in the queue order.
+    // The command taken is not indexed anymore until scheduled again.
+    // Return null if the group have no due commands.
+    public ScServer.SchedulableCommand pollReady(String group) {
+        synchronized (this.mSchedule) {
+            // Get the first
+            Due due = this.firstReady(group);
+            if (due == null) return null;
+
+            // Take it
+            this.mReady.get(group).pollFirstEntry();
+            due.mCommand.mDue = null;
+            return due.mCommand;
+        }
+    }
+
+    // Check if the command is in the queue
+    public boolean contains(ScServer.SchedulableCommand command) {
+        return command != null && command.mQueueKey != 0 &&
+                this.mCommands.get(command.mQueueKey) == command;
+    }
+
+    // Get the commands count
+    public int size() {
+        return this.mSize.get();
+    }
+
+    // Check if empty
+    public boolean isEmpty() {
+        return this.mSize.get() == 0;
+    }
+
+    // Get the commands estimated size in bytes
+    public long getBytes() {
+        return this.mBytes.get();
+    }
+
+    // Get the count of the commands added and removed, to know if the queue changed
+    public long getChanges() {
+        return this.mChanges.get();
+    }
+
+    // Wait until a command is removed or the timeout in milliseconds expire.
+    // Return false if expired.
+    public boolean awaitRemoval(long timeout) throws InterruptedException {
+        // Check the timeout
+        if (timeout <= 0) return false;
+
+        synchronized (this.mSpace) {
+            // Wait for the signal
+            this.mWaiters++;
+            try {
+                long start = System.nanoTime();
+                this.mSpace.wait(timeout);
+                return (System.nanoTime() - start) / 1000000 < timeout;
+
+            } finally {
+                this.mWaiters--;
+            }
+        }
+    }
+
+    // Get a copy of the queue
+    public ArrayList<ScServer.SchedulableCommand> toList() {
+        return new ArrayList<>(this.mCommands.values());
+    }
+
+    // Get the commands from the passed one to the end of the queue in the inserting order.
+    // The view is weakly consistent like the queue iteration and empty if the command is not
+    // queued.
+    public Collection<ScServer.SchedulableCommand> tail(ScServer.SchedulableCommand command) {
+        long key = command != null ? command.mQueueKey : 0;
+        if (key == 0) return new ArrayList<>();
+        return this.mCommands.tailMap(key, true).values();
+    }
+
+    // Iterate the commands in the inserting order
+    @Override
+    public Iterator<ScServer.SchedulableCommand> iterator() {
+        return this.mCommands.values().iterator();
+    }
+
+
+    /******************************************************************************************
+     * DUE CLASS
+     * Internal use only
+     *****************************************************************************************/
+
+    /**
+     * An entry of the next execution index
+     */
+    static class Due implements Comparable<Due> {
+
+        private long mTime = 0;                             // The next execution
+        private long mKey = 0;                              // The queue sequence
+        private ScServer.SchedulableCommand mCommand = null; // The command
+
+        // Constructor
+        private Due(long time, long key, ScServer.SchedulableCommand command) {
+            this.mTime = time;
+            this.mKey = key;
+            this.mCommand = command;
+        }
+
+        @Override
+        public int compareTo(Due other) {
+            if (this.mTime != other.mTime) return this.mTime < other.mTime ? -1 : 1;
+            return this.mKey < other.mKey ? -1 : (this.mKey == other.mKey ? 0 : 1);
+        }
+
+    }
+
+}
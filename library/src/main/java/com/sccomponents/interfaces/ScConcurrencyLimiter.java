@@ -0,0 +1,235 @@
+package com.sccomponents.interfaces;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Limit how many requests run at once adapting the limit to the observed latency and errors.
+ * The algorithm is an AIMD: every request finished in time increase the limit by 1 / limit, so
+ * the limit grow by one for every full window, while a request finished with a connection error
+ * or with a latency over the tolerance multiply the limit by the backoff factor.
+ * The latency reference is the lowest round-trip time observed, slowly raised so it can follow
+ * a network change.
+ */
+@SuppressWarnings("unused")
+public class ScConcurrencyLimiter {
+
+    /**
+     * Static and constant
+     */
+
+    // Default limits
+    private static final int DEFAULT_MIN_LIMIT = 1;
+    private static final int DEFAULT_MAX_LIMIT = 16;
+    private static final int DEFAULT_INITIAL_LIMIT = 2;
+    // Default multiplier applied when the limit decrease
+    private static final double DEFAULT_BACKOFF = 0.75;
+    // Default max latency, as multiple of the lowest, considered in time
+    private static final double DEFAULT_TOLERANCE = 2.0;
+    // How much the latency reference rise at every request
+    private static final double REFERENCE_DRIFT = 1.01;
+    // Number of limit changes held in the history
+    private static final int HISTORY_SIZE = 64;
+
+
+    /**
+     * Private variables
+     */
+
+    private int mMinLimit = DEFAULT_MIN_LIMIT;          // Lowest limit
+    private int mMaxLimit = DEFAULT_MAX_LIMIT;          // Highest limit
+    private double mBackoff = DEFAULT_BACKOFF;          // Decrease multiplier
+    private double mTolerance = DEFAULT_TOLERANCE;      // Latency tolerance
+
+    private double mLimit = DEFAULT_INITIAL_LIMIT;      // The current limit
+    private int mInFlight = 0;                          // Requests in execution
+    private double mReference = -1;                     // The latency reference
+    private ScClock mClock = ScClock.MONOTONIC;         // The history time source
+
+    // The history of the limit changes
+    private ArrayList<Sample> mHistory = null;
+
+
+    /**
+     * Private methods
+     */
+
+    // Set the limit recording the change in the history
+    private void setLimit(double value) {
+        // Apply the bounds
+        value = Math.max(this.mMinLimit, Math.min(this.mMaxLimit, value));
+
+        // Record only when the integer value change
+        if ((int) value != (int) this.mLimit) {
+            if (this.mHistory.size() >= ScConcurrencyLimiter.HISTORY_SIZE)
+                this.mHistory.remove(0);
+            this.mHistory.add(new Sample(this.mClock.now(), (int) value));
+        }
+        this.mLimit = value;
+    }
+
+
+    /**
+     * Public methods
+     */
+
+    // Constructor
+    public ScConcurrencyLimiter() {
+        // Init
+        this.mHistory = new ArrayList<>();
+        this.mHistory.add(new Sample(this.mClock.now(), (int) this.mLimit));
+    }
+
+    // Try to start a request.
+    // Return false if the limit is reached.
+    public synchronized boolean tryAcquire() {
+        // Check the limit
+        if (this.mInFlight >= (int) this.mLimit) return false;
+        // Count the request
+        this.mInFlight++;
+        return true;
+    }
+
+    // Finish a request started with < tryAcquire > passing its round-trip time in
+    // milliseconds and if it failed for an overload or a connection error.
+    // Pass a negative latency if the request was not executed.
+    public synchronized void release(long latency, boolean failed) {
+        // Count the request
+        this.mInFlight = Math.max(0, this.mInFlight - 1);
+        // Without a measure there is nothing to learn
+        if (latency < 0 && !failed) return;
+
+        // Update the latency reference
+        if (!failed && latency >= 0) {
+            this.mReference = this.mReference < 0 ?
+                    latency : Math.min(latency, this.mReference * ScConcurrencyLimiter.REFERENCE_DRIFT);
+        }
+
+        // Adapt the limit
+        if (failed || (this.mReference > 0 && latency > this.mReference * this.mTolerance)) {
+            // Multiplicative decrease
+            this.setLimit(this.mLimit * this.mBackoff);
+        } else {
+            // Additive increase
+            this.setLimit(this.mLimit + 1.0 / this.mLimit);
+        }
+    }
+
+    // Get how many requests can be started now
+    public synchronized int getAvailable() {
+        return Math.max(0, (int) this.mLimit - this.mInFlight);
+    }
+
+    // Get the history of the limit changes, the oldest first
+    public synchronized List<Sample> getHistory() {
+        return new ArrayList<>(this.mHistory);
+    }
+
+
+    /**
+     * Public properties
+     */
+
+    // Get the current limit
+    public synchronized int getLimit() {
+        return (int) this.mLimit;
+    }
+
+    // Get the requests in execution
+    public synchronized int getInFlight() {
+        return this.mInFlight;
+    }
+
+    // Get the latency reference in milliseconds, -1 if unknown
+    public synchronized double getReferenceLatency() {
+        return this.mReference;
+    }
+
+    // Get/Set the lowest limit.
+    // Default: 1
+    public synchronized void setMinLimit(int value) {
+        this.mMinLimit = Math.max(1, value);
+        this.mMaxLimit = Math.max(this.mMinLimit, this.mMaxLimit);
+        this.setLimit(this.mLimit);
+    }
+
+    public synchronized int getMinLimit() {
+        return this.mMinLimit;
+    }
+
+    // Get/Set the highest limit.
+    // Default: 16
+    public synchronized void setMaxLimit(int value) {
+        this.mMaxLimit = Math.max(1, value);
+        this.mMinLimit = Math.min(this.mMinLimit, this.mMaxLimit);
+        this.setLimit(this.mLimit);
+    }
+
+    public synchronized int getMaxLimit() {
+        return this.mMaxLimit;
+    }
+
+    // Get/Set the multiplier applied when the limit decrease.
+    // Default: 0.75
+    public synchronized void setBackoff(double value) {
+        this.mBackoff = Math.max(0.1, Math.min(0.99, value));
+    }
+
+    public synchronized double getBackoff() {
+        return this.mBackoff;
+    }
+
+    // Get/Set the max latency, as multiple of the reference one, considered in time.
+    // Default: 2.0
+    public synchronized void setTolerance(double value) {
+        this.mTolerance = Math.max(1.0, value);
+    }
+
+    public synchronized double getTolerance() {
+        return this.mTolerance;
+    }
+
+    // Get/Set the clock used to timestamp the history.
+    // Setting the clock before any change restamp the initial limit too.
+    // The server set its own clock when the limiter is attached.
+    // Default: ScClock.MONOTONIC
+    public synchronized void setClock(ScClock value) {
+        this.mClock = value != null ? value : ScClock.MONOTONIC;
+        if (this.mHistory.size() == 1)
+            this.mHistory.set(0, new Sample(this.mClock.now(), (int) this.mLimit));
+    }
+
+    public synchronized ScClock getClock() {
+        return this.mClock;
+    }
+
+
+    /******************************************************************************************
+     * SAMPLE CLASS
+     *****************************************************************************************/
+
+    /**
+     * A limit change
+     */
+    public static class Sample {
+
+        private long mTime = 0;             // When changed
+        private int mLimit = 0;             // The new limit
+
+        // Constructor
+        private Sample(long time, int limit) {
+            this.mTime = time;
+            this.mLimit = limit;
+        }
+
+        public long getTime() {
+            return this.mTime;
+        }
+
+        public int getLimit() {
+            return this.mLimit;
+        }
+
+    }
+
+}
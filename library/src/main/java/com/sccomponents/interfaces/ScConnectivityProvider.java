@@ -0,0 +1,29 @@
+package com.sccomponents.interfaces;
+
+/**
+ * Provide the device connectivity status to the servers.
+ * When the device is offline the server hold the commands queue dispatch.
+ * The same provider can be shared by many servers, everyone adding its own listener.
+ */
+public interface ScConnectivityProvider {
+
+    // Check if the device is connected
+    boolean isConnected();
+
+    // Add a listener called when the connectivity status change
+    void addOnConnectivityChangeListener(OnConnectivityChangeListener listener);
+
+    // Remove a listener
+    void removeOnConnectivityChangeListener(OnConnectivityChangeListener listener);
+
+
+    /**
+     * Connectivity listener
+     */
+    interface OnConnectivityChangeListener {
+
+        void onConnectivityChange(boolean connected);
+
+    }
+
+}
@@ -0,0 +1,290 @@
+package com.sccomponents.interfaces;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hold the commands that failed for good.
+ * When a server have a store every command spent with an error is moved here from the live
+ * queue, so the queue hold only the commands that can still run.
+ * Every entry keep a compact record of the command: its method, group and id, its last error,
+ * the number of tries, the times and its status saved as in the queue store. The command
+ * itself, its listener and the exception are not held, so the store never keep alive the
+ * objects of the caller, like an activity, or the stack traces.
+ * A command with parameters that can not be serialized can not be replayed.
+ * When the store is full the oldest entry is dropped.
+ * The entries can be read, replayed inside the queue with <code>ScServer.replayDeadLetter</code>
+ * or purged.
+ */
+@SuppressWarnings("unused")
+public class ScDeadLetterStore implements Iterable<ScDeadLetterStore.Entry> {
+
+    /**
+     * Static and constant
+     */
+
+    // Default max number of entries
+    private static final int DEFAULT_CAPACITY = 1000;
+
+
+    /**
+     * Private variables
+     */
+
+    private int mCapacity = DEFAULT_CAPACITY;       // Max number of entries
+    private AtomicLong mSequence = null;            // The next entry id
+    private AtomicInteger mSize = null;             // The entries count
+    private AtomicLong mDropped = null;             // Entries dropped because the store is full
+
+    // The entries ordered by id, so by the failing time
+    private ConcurrentSkipListMap<Long, Entry> mEntries = null;
+
+
+    /**
+     * Private methods
+     */
+
+    // Check if the entry match the filter.
+    // The null values match everything.
+    private static boolean match(String value, String filter) {
+        return filter == null || filter.equals(value);
+    }
+
+
+    /**
+     * Public methods
+     */
+
+    // Constructor
+    public ScDeadLetterStore() {
+        // Init
+        this.mSequence = new AtomicLong();
+        this.mSize = new AtomicInteger();
+        this.mDropped = new AtomicLong();
+        this.mEntries = new ConcurrentSkipListMap<>();
+    }
+
+    // Add a failed command.
+    // Return the created entry.
+    public Entry add(ScServer.SchedulableCommand command, long time) {
+        // Create the entry
+        Entry entry = new Entry(this.mSequence.incrementAndGet(), command, time);
+
+        // Add it
+        this.mEntries.put(entry.mId, entry);
+        this.mSize.incrementAndGet();
+
+        // Drop the oldest entries if full
+        while (this.mSize.get() > this.mCapacity) {
+            Entry oldest = this.mEntries.isEmpty() ? null : this.mEntries.firstEntry().getValue();
+            if (oldest == null) break;
+            if (this.remove(oldest)) this.mDropped.incrementAndGet();
+        }
+
+        // Return the entry
+        return entry;
+    }
+
+    // Remove an entry.
+    // Return false if the entry is not in the store.
+    public boolean remove(Entry entry) {
+        // Check for null value
+        if (entry == null || !this.mEntries.remove(entry.mId, entry)) return false;
+        // Update the size
+        this.mSize.decrementAndGet();
+        return true;
+    }
+
+    // Find the entries of a method and a group failed between the passed times.
+    // Pass null to not filter by method or group, and 0 or Long.MAX_VALUE to not filter by
+    // time.
+    public List<Entry> query(String methodName, String groupName, long from, long to) {
+        // Holder
+        ArrayList<Entry> found = new ArrayList<>();
+        // Cycle all entries
+        for (Entry entry : this.mEntries.values()) {
+            if (ScDeadLetterStore.match(entry.getMethodName(), methodName) &&
+                    ScDeadLetterStore.match(entry.getGroup(), groupName) &&
+                    entry.mDeadAt >= from && entry.mDeadAt <= to)
+                found.add(entry);
+        }
+        // Return the found
+        return found;
+    }
+
+    // Find the entries of a method
+    public List<Entry> query(String methodName) {
+        return this.query(methodName, null, 0, Long.MAX_VALUE);
+    }
+
+    // Get all the entries, the oldest first
+    public List<Entry> toList() {
+        return new ArrayList<>(this.mEntries.values());
+    }
+
+    // Remove the entries failed before the passed time.
+    // Return the number of entries removed.
+    public int purge(long before) {
+        // Holder
+        int count = 0;
+        // Cycle all entries
+        for (Entry entry : this.mEntries.values()) {
+            if (entry.mDeadAt < before && this.remove(entry)) count++;
+        }
+        // Return the count
+        return count;
+    }
+
+    // Remove all the entries.
+    // Return the number of entries removed.
+    public int purge() {
+        return this.purge(Long.MAX_VALUE);
+    }
+
+    // Get the entries count
+    public int size() {
+        return this.mSize.get();
+    }
+
+    // Iterate the entries, the oldest first
+    @Override
+    public Iterator<Entry> iterator() {
+        return this.mEntries.values().iterator();
+    }
+
+
+    /**
+     * Public properties
+     */
+
+    // Get/Set the max number of entries.
+    // Default: 1000
+    public void setCapacity(int value) {
+        this.mCapacity = Math.max(1, value);
+    }
+
+    public int getCapacity() {
+        return this.mCapacity;
+    }
+
+    // Get how many entries were dropped because the store was full
+    public long getDroppedCount() {
+        return this.mDropped.get();
+    }
+
+
+    /******************************************************************************************
+     * ENTRY CLASS
+     *****************************************************************************************/
+
+    /**
+     * A command failed for good
+     */
+    public static class Entry {
+
+        private long mId = 0;                               // The entry id
+        private String mCommandId = null;                   // The command id
+        private String mMethodName = null;                  // The command method name
+        private String mGroup = null;                       // The command group
+        private byte[] mData = null;                        // The saved command status
+        private String mErrorType = null;                   // The last error class name
+        private String mErrorMessage = null;                // The last error message
+        private int mAttempts = 0;                          // The number of tries
+        private long mCreatedAt = 0;                        // When the command was created
+        private long mLastAttemptAt = 0;                    // When the command was last tried
+        private long mDeadAt = 0;                           // When moved to the store
+
+        // Constructor
+        private Entry(long id, ScServer.SchedulableCommand command, long time) {
+            // Hold the command status
+            Exception error = command.getLastError();
+            this.mId = id;
+            this.mCommandId = command.getId();
+            this.mMethodName = command.getMethodName();
+            this.mGroup = command.getGroup();
+            this.mData = Entry.encode(command);
+            this.mErrorType = error != null ? error.getClass().getName() : null;
+            this.mErrorMessage = error != null ? error.getMessage() : null;
+            this.mAttempts = command.mTryCount;
+            this.mCreatedAt = command.getCreatedAt();
+            this.mLastAttemptAt = command.getLastAttemptAt();
+            this.mDeadAt = time;
+        }
+
+        // Save the command status.
+        // Return null if some parameter can not be saved, so the command can not be rebuilt.
+        private static byte[] encode(ScServer.SchedulableCommand command) {
+            // Check the parameters
+            for (Object value : command.getParams().values()) {
+                if (value != null && !(value instanceof Serializable)) return null;
+            }
+
+            try {
+                // Save
+                return ScServer.encodeCommand(command);
+
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        // Get the saved command status, null if not replayable
+        byte[] getData() {
+            return this.mData;
+        }
+
+        public long getId() {
+            return this.mId;
+        }
+
+        public String getCommandId() {
+            return this.mCommandId;
+        }
+
+        public String getMethodName() {
+            return this.mMethodName;
+        }
+
+        public String getGroup() {
+            return this.mGroup;
+        }
+
+        // Check if the command can be moved back to the queue
+        public boolean isReplayable() {
+            return this.mData != null;
+        }
+
+        public String getErrorType() {
+            return this.mErrorType;
+        }
+
+        public String getErrorMessage() {
+            return this.mErrorMessage;
+        }
+
+        public int getAttempts() {
+            return this.mAttempts;
+        }
+
+        public long getCreatedAt() {
+            return this.mCreatedAt;
+        }
+
+        public long getLastAttemptAt() {
+            return this.mLastAttemptAt;
+        }
+
+        public long getDeadAt() {
+            return this.mDeadAt;
+        }
+
+    }
+
+}
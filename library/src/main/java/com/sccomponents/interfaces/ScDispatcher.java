@@ -0,0 +1,384 @@
+package com.sccomponents.interfaces;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dispatch the commands queues of many servers using one scheduling thread and a shared pool
+ * of workers.
+ * Every registered server keep its own queue, listeners and persistence. At every check the
+ * free workers are shared between the servers with due commands: first every server receive
+ * at most its fair share, after the workers still free are given to who need them.
+ * When a command finish the dispatcher check again immediately so the freed worker is reused.
+ * The servers are held weakly: a server not used anymore by the application leave the
+ * dispatcher by itself. Call < shutdown > to stop the threads when the dispatcher is not
+ * needed anymore.
+ */
+@SuppressWarnings("unused")
+public class ScDispatcher {
+
+    /**
+     * Static and constant
+     */
+
+    // Default number of workers
+    private static final int DEFAULT_WORKERS = 4;
+    // Default delay between the checks in milliseconds
+    private static final long DEFAULT_INTERVAL = 1000;
+
+    // The process wide shared instance
+    private static ScDispatcher mShared = null;
+
+
+    /**
+     * Private variables
+     */
+
+    private int mWorkers = 0;                           // Max concurrent commands
+    private long mInterval = DEFAULT_INTERVAL;          // Delay between the checks
+    private AtomicInteger mInFlight = null;             // Commands in execution
+    private AtomicBoolean mWakeUpPending = null;        // A check is already requested
+    private int mNext = 0;                              // First member of the next check
+    private volatile boolean mShutdown = false;         // The dispatcher is stopped
+
+    private ScheduledExecutorService mScheduler = null; // The scheduling thread
+    private ThreadPoolExecutor mPool = null;            // The workers
+
+    // The registered servers
+    private CopyOnWriteArrayList<Member> mMembers = null;
+
+
+    /**
+     * Private methods
+     */
+
+    // Create a factory of daemon threads marked as queue threads
+    private static ThreadFactory newThreadFactory(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(ScServer.asQueueThread(runnable), name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    // Find the member of a server
+    private Member find(ScServer server) {
+        // Cycle all members
+        for (Member member : this.mMembers) {
+            if (member.mServer.get() == server) return member;
+        }
+        // Else not found
+        return null;
+    }
+
+    // Start a command on a worker
+    private void submit(final Member member, final ScServer server,
+                        final ScServer.SchedulableCommand command) {
+        // Update the counters
+        member.mInFlight.incrementAndGet();
+        this.mInFlight.incrementAndGet();
+
+        // Execute inside the events batch of the check
+        final ScCommandEventBus bus = server.getEventBus();
+        final ScCommandEventBus.Batch batch = bus.shareBatch();
+        try {
+            this.mPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    bus.joinBatch(batch);
+                    try {
+                        server.executeDispatched(command);
+
+                    } finally {
+                        // Deliver the batch if the last, release the worker and check again
+                        // for the due commands
+                        bus.endBatch();
+                        member.mInFlight.decrementAndGet();
+                        ScDispatcher.this.mInFlight.decrementAndGet();
+                        ScDispatcher.this.wakeUp();
+                    }
+                }
+            });
+
+        } catch (RejectedExecutionException e) {
+            // Shut down in the meantime so the command wait the server own check
+            bus.leaveBatch(batch);
+            member.mInFlight.decrementAndGet();
+            this.mInFlight.decrementAndGet();
+            server.releaseSlot(command);
+            command.finish();
+        }
+    }
+
+    // Share the free workers between the servers.
+    // The events of every server are batched for the whole check: the started commands share
+    // the batch and the last one that finish deliver it.
+    private void check() {
+        // Allow a new wake up request
+        this.mWakeUpPending.set(false);
+
+        // Get the members still used, forgetting the servers gone
+        List<Member> members = new ArrayList<>();
+        List<ScServer> servers = new ArrayList<>();
+        for (Member member : this.mMembers) {
+            ScServer server = member.mServer.get();
+            if (server == null) {
+                this.mMembers.remove(member);
+                continue;
+            }
+            members.add(member);
+            servers.add(server);
+        }
+        if (members.isEmpty()) return;
+
+        // Batch the events of every server
+        for (ScServer server : servers) server.getEventBus().beginBatch();
+        try {
+            this.share(members, servers);
+
+        } finally {
+            for (ScServer server : servers) server.getEventBus().endBatch();
+        }
+    }
+
+    // Share the free workers between the members
+    private void share(List<Member> members, List<ScServer> servers) {
+        // Check the free workers
+        int free = this.mWorkers - this.mInFlight.get();
+
+        // Collect the due commands of every server.
+        // Only the due commands are read from the servers next execution index, and nothing
+        // is collected without free workers.
+        ArrayList<ArrayDeque<ScServer.SchedulableCommand>> candidates = new ArrayList<>();
+        int active = 0;
+        for (int index = 0; index < members.size(); index++) {
+            // Get the due commands
+            ScServer server = servers.get(index);
+            ArrayDeque<ScServer.SchedulableCommand> due = new ArrayDeque<>();
+            try {
+                due.addAll(server.collectDueCommands(
+                        Math.max(0, Math.min(free, server.getDispatchCapacity()))));
+            } catch (Exception e) {
+                // A server error must not stop the others
+                e.printStackTrace();
+            }
+            candidates.add(due);
+
+            // Count the servers that need workers
+            if (!due.isEmpty() || members.get(index).mInFlight.get() > 0) active++;
+        }
+
+        // The fair share of every active server
+        int share = (this.mWorkers + Math.max(1, active) - 1) / Math.max(1, active);
+
+        // First pass give at most the fair share, second pass give the remaining workers.
+        // Start every time from a different server so no one is favored.
+        int count = members.size();
+        int start = this.mNext++ % count;
+        for (int pass = 0; pass < 2 && free > 0 && !this.mShutdown; pass++) {
+            boolean progress = true;
+            while (free > 0 && progress) {
+                progress = false;
+                // Give one worker to every server in turn
+                for (int offset = 0; offset < count && free > 0; offset++) {
+                    // Get the member and its candidates
+                    int index = (start + offset) % count;
+                    Member member = members.get(index);
+                    ScServer server = servers.get(index);
+                    ArrayDeque<ScServer.SchedulableCommand> due = candidates.get(index);
+
+                    // Check the limits
+                    if (due.isEmpty()) continue;
+                    if (pass == 0 && member.mInFlight.get() >= share) continue;
+
+                    // Check the server concurrency limit
+                    ScServer.SchedulableCommand command = due.peek();
+                    if (!server.acquireSlot(command)) {
+                        server.returnDueCommands(due);
+                        due.clear();
+                        continue;
+                    }
+                    due.poll();
+
+                    // Start the command if not already started by someone else
+                    if (command.tryStart()) {
+                        this.submit(member, server, command);
+                        free--;
+                    } else {
+                        server.releaseSlot(command);
+                    }
+                    progress = true;
+                }
+            }
+        }
+
+        // The commands not started wait the next check
+        for (int index = 0; index < members.size(); index++)
+            servers.get(index).returnDueCommands(candidates.get(index));
+    }
+
+
+    /**
+     * Public methods
+     */
+
+    // Constructor
+    public ScDispatcher(int workers) {
+        // Init
+        this.mWorkers = Math.max(1, workers);
+        this.mInFlight = new AtomicInteger();
+        this.mWakeUpPending = new AtomicBoolean();
+        this.mMembers = new CopyOnWriteArrayList<>();
+
+        // Create the scheduling thread and the workers pool.
+        // The pool never receive more tasks than workers so the queue stay small.
+        this.mScheduler = Executors.newSingleThreadScheduledExecutor(
+                ScDispatcher.newThreadFactory("ScDispatcher-scheduler"));
+        this.mPool = new ThreadPoolExecutor(this.mWorkers, this.mWorkers,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                ScDispatcher.newThreadFactory("ScDispatcher-worker"));
+        this.mPool.allowCoreThreadTimeOut(true);
+
+        // Start the periodic check
+        this.mScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                ScDispatcher.this.check();
+            }
+        }, this.mInterval, this.mInterval, TimeUnit.MILLISECONDS);
+    }
+
+    // Get the process wide shared dispatcher.
+    // If the shared one was shut down a new one is created.
+    public static synchronized ScDispatcher getShared() {
+        // Create it if not exists
+        if (ScDispatcher.mShared == null || ScDispatcher.mShared.isShutdown())
+            ScDispatcher.mShared = new ScDispatcher(ScDispatcher.DEFAULT_WORKERS);
+        return ScDispatcher.mShared;
+    }
+
+    // Register a server.
+    // Use ScServer.setDispatcher instead of call this method directly.
+    public void register(ScServer server) {
+        // Check if already registered
+        if (server == null || this.mShutdown || this.find(server) != null) return;
+        // Add it and check soon
+        this.mMembers.add(new Member(server));
+        this.wakeUp();
+    }
+
+    // Unregister a server.
+    // The commands already in execution will finish.
+    public void unregister(ScServer server) {
+        Member member = this.find(server);
+        if (member != null) this.mMembers.remove(member);
+    }
+
+    // Request a check as soon as possible
+    public void wakeUp() {
+        // Only one request at time
+        if (this.mShutdown || !this.mWakeUpPending.compareAndSet(false, true)) return;
+        try {
+            this.mScheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ScDispatcher.this.check();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shut down in the meantime
+            this.mWakeUpPending.set(false);
+        }
+    }
+
+    // Stop the dispatcher and its threads.
+    // The commands already in execution will finish. The registered servers are detached and
+    // come back to solve their queue with their own check.
+    public void shutdown() {
+        // Stop the threads
+        this.mShutdown = true;
+        this.mScheduler.shutdown();
+        this.mPool.shutdown();
+
+        // Detach all servers
+        for (Member member : this.mMembers) {
+            ScServer server = member.mServer.get();
+            if (server != null) server.detachDispatcher(this);
+        }
+        this.mMembers.clear();
+    }
+
+
+    /**
+     * Public properties
+     */
+
+    // Get the number of workers
+    public int getWorkers() {
+        return this.mWorkers;
+    }
+
+    // Get the number of commands in execution
+    public int getInFlight() {
+        return this.mInFlight.get();
+    }
+
+    // Get the number of commands in execution of a server
+    public int getInFlight(ScServer server) {
+        Member member = this.find(server);
+        return member != null ? member.mInFlight.get() : 0;
+    }
+
+    // Get the number of registered servers still used
+    public int getServers() {
+        int count = 0;
+        for (Member member : this.mMembers) {
+            if (member.mServer.get() != null) count++;
+        }
+        return count;
+    }
+
+    // Check if the dispatcher is shut down
+    public boolean isShutdown() {
+        return this.mShutdown;
+    }
+
+
+    /******************************************************************************************
+     * MEMBER CLASS
+     * Internal use only
+     *****************************************************************************************/
+
+    /**
+     * A registered server and its commands in execution.
+     * The server is held weakly so the dispatcher not keep it alive.
+     */
+    private static class Member {
+
+        private WeakReference<ScServer> mServer = null; // The server
+        private AtomicInteger mInFlight = null;         // Commands in execution
+
+        // Constructor
+        private Member(ScServer server) {
+            this.mServer = new WeakReference<>(server);
+            this.mInFlight = new AtomicInteger();
+        }
+
+    }
+
+}
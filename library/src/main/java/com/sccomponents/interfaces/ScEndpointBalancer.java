@@ -0,0 +1,355 @@
+package com.sccomponents.interfaces;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Hold a list of server endpoints and choose the best one for every call.
+ * Every endpoint track a moving average of the latency and of the error rate.
+ * When an endpoint fail too many times consecutively it will be excluded for a cool down period
+ * that grow at every new failure.
+ * The statistics of an endpoint not called for a while fade, so a slow endpoint is probed again
+ * and can recover its place.
+ */
+@SuppressWarnings("unused")
+public class ScEndpointBalancer {
+
+    /**
+     * Static and constant
+     */
+
+    // Default smoothing factor of the moving averages
+    private static final double DEFAULT_SMOOTHING = 0.2;
+    // Default number of consecutive failures before consider an endpoint unhealthy
+    private static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    // Default cool down period in milliseconds
+    private static final long DEFAULT_COOL_DOWN = 5000;
+    // Max cool down period in milliseconds
+    private static final long MAX_COOL_DOWN = 60000;
+    // Default time in milliseconds to halve the statistics of a not called endpoint
+    private static final long DEFAULT_SCORE_HALF_LIFE = 60000;
+
+
+    /**
+     * Private variables
+     */
+
+    private double mSmoothing = DEFAULT_SMOOTHING;              // The moving average factor
+    private int mFailureThreshold = DEFAULT_FAILURE_THRESHOLD;  // Failures before exclusion
+    private long mCoolDown = DEFAULT_COOL_DOWN;                 // Exclusion base period
+    private long mScoreHalfLife = DEFAULT_SCORE_HALF_LIFE;      // Statistics fading period
+    private ScClock mClock = ScClock.MONOTONIC;                 // The cool down time source
+
+    // The endpoints list is read at every call and written rarely
+    private CopyOnWriteArrayList<Endpoint> mEndpoints = null;
+
+
+    /**
+     * Private methods
+     */
+
+    // Get the current time.
+    // The default clock is monotonic because the wall clock can jump.
+    private long now() {
+        return this.mClock.now();
+    }
+
+    // Find an endpoint by address
+    private Endpoint find(String address) {
+        // Cycle all endpoints
+        for (Endpoint endpoint : this.mEndpoints) {
+            // If the address is the same return found
+            if (endpoint.mAddress.equals(address)) return endpoint;
+        }
+        // Else not found
+        return null;
+    }
+
+
+    /**
+     * Public methods
+     */
+
+    // Constructor
+    public ScEndpointBalancer() {
+        // Init
+        this.mEndpoints = new CopyOnWriteArrayList<>();
+    }
+
+    // Add an endpoint to the list.
+    // Return the endpoint object or the already present one.
+    public Endpoint add(String address) {
+        // Check for empty values
+        if (address == null || address.isEmpty()) return null;
+
+        // Check if already exists
+        Endpoint endpoint = this.find(address);
+        if (endpoint == null) {
+            // Create the new one and add it to the list
+            endpoint = new Endpoint(address);
+            this.mEndpoints.add(endpoint);
+        }
+        // Return the endpoint
+        return endpoint;
+    }
+
+    // Remove an endpoint from the list
+    public Endpoint remove(String address) {
+        // Find the endpoint
+        Endpoint endpoint = this.find(address);
+        // If exists remove it
+        if (endpoint != null) this.mEndpoints.remove(endpoint);
+        // Return the removed endpoint
+        return endpoint;
+    }
+
+    // Remove all endpoints
+    public void clear() {
+        this.mEndpoints.clear();
+    }
+
+    // Check if the list is empty
+    public boolean isEmpty() {
+        return this.mEndpoints.isEmpty();
+    }
+
+    // Get a copy of the endpoints list in the inserting order
+    public List<Endpoint> getEndpoints() {
+        return new ArrayList<>(this.mEndpoints);
+    }
+
+    // Get the endpoints list ordered by preference.
+    // The healthy endpoints come first ordered by score, after them the unhealthy endpoints
+    // ordered by the end of the cool down period. So a call can always try all the endpoints
+    // as last resort.
+    public List<Endpoint> getCandidates() {
+        // Holders
+        final long now = this.now();
+        ArrayList<Endpoint> healthy = new ArrayList<>();
+        ArrayList<Endpoint> unhealthy = new ArrayList<>();
+
+        // Split the endpoints by health status
+        for (Endpoint endpoint : this.mEndpoints) {
+            if (endpoint.isHealthy(now)) healthy.add(endpoint);
+            else unhealthy.add(endpoint);
+        }
+
+        // Sort the healthy by the score faded from the last call
+        final long halfLife = this.mScoreHalfLife;
+        Collections.sort(healthy, new Comparator<Endpoint>() {
+            @Override
+            public int compare(Endpoint lhs, Endpoint rhs) {
+                return Double.compare(lhs.getScore(now, halfLife), rhs.getScore(now, halfLife));
+            }
+        });
+
+        // Sort the unhealthy by the time when will be available again
+        Collections.sort(unhealthy, new Comparator<Endpoint>() {
+            @Override
+            public int compare(Endpoint lhs, Endpoint rhs) {
+                return lhs.mUnhealthyUntil < rhs.mUnhealthyUntil ? -1 :
+                        (lhs.mUnhealthyUntil == rhs.mUnhealthyUntil ? 0 : 1);
+            }
+        });
+
+        // Join the lists
+        healthy.addAll(unhealthy);
+        return healthy;
+    }
+
+    // Get the best endpoint or null if the list is empty
+    public Endpoint getBest() {
+        // Get the candidates list and return the first
+        List<Endpoint> candidates = this.getCandidates();
+        return candidates.isEmpty() ? null : candidates.get(0);
+    }
+
+    // Record a call finished with a server answer.
+    // The latency is expressed in milliseconds.
+    public void recordSuccess(Endpoint endpoint, long latency) {
+        // Check for null value
+        if (endpoint == null) return;
+
+        synchronized (endpoint) {
+            // Update the moving averages
+            endpoint.mLatency = endpoint.mLatency < 0 ?
+                    latency : endpoint.mLatency + this.mSmoothing * (latency - endpoint.mLatency);
+            endpoint.mErrorRate -= this.mSmoothing * endpoint.mErrorRate;
+
+            // Reset the failures status
+            endpoint.mConsecutiveFailures = 0;
+            endpoint.mUnhealthyUntil = 0;
+            endpoint.mLastCall = this.now();
+            endpoint.mCalls++;
+        }
+    }
+
+    // Record a call failed without reach the server
+    public void recordFailure(Endpoint endpoint) {
+        // Check for null value
+        if (endpoint == null) return;
+
+        synchronized (endpoint) {
+            // Update the moving average
+            endpoint.mErrorRate += this.mSmoothing * (1.0 - endpoint.mErrorRate);
+            endpoint.mConsecutiveFailures++;
+            endpoint.mFailures++;
+            endpoint.mLastCall = this.now();
+            endpoint.mCalls++;
+
+            // Check if the endpoint must be excluded for a while.
+            // The cool down period double at every failure over the threshold.
+            int over = endpoint.mConsecutiveFailures - this.mFailureThreshold;
+            if (over >= 0) {
+                long coolDown = Math.min(this.mCoolDown << Math.min(over, 16), MAX_COOL_DOWN);
+                endpoint.mUnhealthyUntil = this.now() + coolDown;
+            }
+        }
+    }
+
+
+    /**
+     * Public properties
+     */
+
+    // Get/Set the moving averages smoothing factor.
+    // Must be between 0 (never change) and 1 (consider only the last value).
+    // Default: 0.2
+    public void setSmoothing(double value) {
+        this.mSmoothing = Math.max(0.0, Math.min(1.0, value));
+    }
+
+    public double getSmoothing() {
+        return this.mSmoothing;
+    }
+
+    // Get/Set how many consecutive failures make an endpoint unhealthy.
+    // Default: 3
+    public void setFailureThreshold(int value) {
+        this.mFailureThreshold = Math.max(1, value);
+    }
+
+    public int getFailureThreshold() {
+        return this.mFailureThreshold;
+    }
+
+    // Get/Set the base cool down period in milliseconds.
+    // Default: 5000
+    public void setCoolDown(long value) {
+        this.mCoolDown = Math.max(0, value);
+    }
+
+    public long getCoolDown() {
+        return this.mCoolDown;
+    }
+
+    // Get/Set the time in milliseconds that halve the statistics of an endpoint not called.
+    // The slow or failing endpoints are probed again when their score fade below the others.
+    // Zero to never fade.
+    // Default: 60000
+    public void setScoreHalfLife(long value) {
+        this.mScoreHalfLife = Math.max(0, value);
+    }
+
+    public long getScoreHalfLife() {
+        return this.mScoreHalfLife;
+    }
+
+    // Get/Set the clock used to measure the cool down periods.
+    // Default: ScClock.MONOTONIC
+    public void setClock(ScClock value) {
+        this.mClock = value != null ? value : ScClock.MONOTONIC;
+    }
+
+    public ScClock getClock() {
+        return this.mClock;
+    }
+
+
+    /******************************************************************************************
+     * ENDPOINT CLASS
+     *****************************************************************************************/
+
+    /**
+     * Define a single endpoint and its statistics.
+     */
+    public static class Endpoint {
+
+        /**
+         * Private variables
+         */
+
+        private String mAddress = null;             // The server address
+        private double mLatency = -1;               // Latency moving average, -1 if unknown
+        private double mErrorRate = 0;              // Error rate moving average
+        private int mConsecutiveFailures = 0;       // Consecutive failures count
+        private long mUnhealthyUntil = 0;           // End of the exclusion period
+        private long mCalls = 0;                    // Total calls
+        private long mFailures = 0;                 // Total failures
+        private long mLastCall = 0;                 // Time of the last call
+
+
+        // Constructor
+        private Endpoint(String address) {
+            this.mAddress = address;
+        }
+
+
+        /**
+         * Public methods
+         */
+
+        // Check if the endpoint can be used at the passed time
+        public synchronized boolean isHealthy(long now) {
+            return this.mUnhealthyUntil <= now;
+        }
+
+        // Get the endpoint score. Lower is better.
+        // An endpoint never called have the best score so it will be probed soon.
+        public synchronized double getScore() {
+            double latency = this.mLatency < 0 ? 0 : this.mLatency;
+            return latency / Math.max(0.05, 1.0 - this.mErrorRate);
+        }
+
+        // Get the endpoint score faded by the time passed from the last call
+        synchronized double getScore(long now, long halfLife) {
+            // Check if must fade
+            if (halfLife <= 0 || this.mLatency < 0 || now <= this.mLastCall)
+                return this.getScore();
+
+            // Halve the statistics every half life period
+            double fade = Math.pow(0.5, (double) (now - this.mLastCall) / halfLife);
+            return this.mLatency * fade / Math.max(0.05, 1.0 - this.mErrorRate * fade);
+        }
+
+
+        /**
+         * Public properties
+         */
+
+        public String getAddress() {
+            return this.mAddress;
+        }
+
+        public synchronized double getLatency() {
+            return this.mLatency;
+        }
+
+        public synchronized double getErrorRate() {
+            return this.mErrorRate;
+        }
+
+        public synchronized long getCalls() {
+            return this.mCalls;
+        }
+
+        public synchronized long getFailures() {
+            return this.mFailures;
+        }
+
+    }
+
+}
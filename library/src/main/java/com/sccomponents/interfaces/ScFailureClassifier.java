@@ -0,0 +1,221 @@
+package com.sccomponents.interfaces;
+
+import org.ksoap2.HeaderProperty;
+import org.ksoap2.SoapFault;
+import org.ksoap2.transport.HttpResponseException;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decide what to do with a failed command looking at the error.
+ * A retryable failure is tried again after the command retry delay, a throttled one when the
+ * server asked with the Retry-After header and a permanent one is never tried again.
+ * The fault codes are checked first, so a server can mark its own faults, then the HTTP status.
+ * The connection errors and the SOAP faults not mapped are retryable.
+ * A fault code is found also by its name without the namespace prefix and by its parents, so
+ * "soap:Client.Authentication" match "Client.Authentication" and "Client".
+ */
+@SuppressWarnings("unused")
+public class ScFailureClassifier {
+
+    /**
+     * Static and constant
+     */
+
+    // The HTTP date format of the Retry-After header
+    private static final String HTTP_DATE = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+
+    /**
+     * Private variables
+     */
+
+    // The fault codes and HTTP status mapped on a failure kind
+    private ConcurrentHashMap<String, Kind> mFaultCodes = null;
+    private ConcurrentHashMap<Integer, Kind> mStatus = null;
+
+
+    /**
+     * Private methods
+     */
+
+    // Register the default mappings
+    private void registerDefaults() {
+        // The SOAP 1.1 fault of a wrong message must not be sent again without changes
+        this.mFaultCodes.put("Client", Kind.PERMANENT);
+
+        // The overload status
+        this.mStatus.put(429, Kind.THROTTLED);
+        this.mStatus.put(503, Kind.THROTTLED);
+        // The client errors that can pass by themselves
+        this.mStatus.put(408, Kind.RETRYABLE);
+        this.mStatus.put(425, Kind.RETRYABLE);
+    }
+
+    // Find the kind of a fault code, null if not mapped
+    private Kind findFaultCode(String code) {
+        // Check for empty values
+        if (code == null) return null;
+
+        // The full code
+        Kind kind = this.mFaultCodes.get(code);
+        if (kind != null) return kind;
+
+        // The name without prefix and its parents
+        String name = code.substring(code.indexOf(':') + 1);
+        while (true) {
+            kind = this.mFaultCodes.get(name);
+            if (kind != null) return kind;
+            int index = name.lastIndexOf('.');
+            if (index < 0) return null;
+            name = name.substring(0, index);
+        }
+    }
+
+    // Find the kind of a HTTP status.
+    // The client errors not mapped are permanent, the others retryable.
+    private Kind findStatus(int status) {
+        Kind kind = this.mStatus.get(status);
+        if (kind != null) return kind;
+        return status >= 400 && status < 500 ? Kind.PERMANENT : Kind.RETRYABLE;
+    }
+
+    // Get the HTTP status of an error, 0 if unknown
+    static int statusOf(Exception error) {
+        if (error instanceof ScHttpError) return ((ScHttpError) error).getStatus();
+        if (error instanceof ScServerFault) return ((ScServerFault) error).getStatus();
+        if (error instanceof HttpResponseException)
+            return ((HttpResponseException) error).getStatusCode();
+        return 0;
+    }
+
+    // Get the fault code of an error, null if not a fault
+    private static String faultCodeOf(Exception error) {
+        if (error instanceof SoapFault) return ((SoapFault) error).faultcode;
+        if (error instanceof ScServerFault) return ((ScServerFault) error).getCode();
+        return null;
+    }
+
+
+    /**
+     * Public methods
+     */
+
+    // Constructor
+    public ScFailureClassifier() {
+        // Init
+        this.mFaultCodes = new ConcurrentHashMap<>();
+        this.mStatus = new ConcurrentHashMap<>();
+        this.registerDefaults();
+    }
+
+    // Get the kind of a failure
+    public Kind classify(Exception error) {
+        // Check for empty values
+        if (error == null) return Kind.RETRYABLE;
+
+        // The fault codes mapped by the application win
+        Kind kind = this.findFaultCode(ScFailureClassifier.faultCodeOf(error));
+        if (kind != null) return kind;
+
+        // Without a HTTP status is a connection error or a not mapped fault
+        int status = ScFailureClassifier.statusOf(error);
+        if (status <= 0) return Kind.RETRYABLE;
+
+        // If the server asked to wait the failure is throttled, else by status
+        kind = this.findStatus(status);
+        return kind == Kind.RETRYABLE && this.getRetryAfter(error) >= 0 ? Kind.THROTTLED : kind;
+    }
+
+    // Get the milliseconds the server asked to wait before the next try, -1 if not asked
+    public long getRetryAfter(Exception error) {
+        if (error instanceof ScHttpError) return ((ScHttpError) error).getRetryAfter();
+        if (error instanceof ScServerFault) return ((ScServerFault) error).getRetryAfter();
+
+        // The ksoap2 HTTP error hold the answer headers
+        if (error instanceof HttpResponseException) {
+            List<?> headers = ((HttpResponseException) error).getResponseHeaders();
+            if (headers != null)
+                for (Object header : headers) {
+                    HeaderProperty property = (HeaderProperty) header;
+                    if ("Retry-After".equalsIgnoreCase(property.getKey()))
+                        return ScFailureClassifier.parseRetryAfter(property.getValue());
+                }
+        }
+        return -1;
+    }
+
+    // Convert the value of a Retry-After header in milliseconds from now.
+    // The value can be the seconds to wait or a HTTP date.
+    // Return -1 if not valid.
+    public static long parseRetryAfter(String value) {
+        // Check for empty values
+        if (value == null || value.trim().isEmpty()) return -1;
+        value = value.trim();
+
+        try {
+            // The seconds to wait
+            return Math.max(0, Long.parseLong(value) * 1000);
+
+        } catch (NumberFormatException e) {
+            try {
+                // The date to wait
+                SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE, Locale.US);
+                format.setTimeZone(TimeZone.getTimeZone("GMT"));
+                return Math.max(0, format.parse(value).getTime() - System.currentTimeMillis());
+
+            } catch (ParseException ex) {
+                return -1;
+            }
+        }
+    }
+
+
+    /**
+     * Public properties
+     */
+
+    // Get/Set the kind of a fault code, null to remove the mapping.
+    // The code can be with the namespace prefix, to match only it, or without.
+    // Default: "Client" is permanent
+    public void setFaultCode(String code, Kind kind) {
+        if (kind == null) this.mFaultCodes.remove(code);
+        else this.mFaultCodes.put(code, kind);
+    }
+
+    public Kind getFaultCode(String code) {
+        return this.mFaultCodes.get(code);
+    }
+
+    // Get/Set the kind of a HTTP status, null to remove the mapping.
+    // The status not mapped are permanent if client errors (4xx), else retryable.
+    // Default: 429 and 503 are throttled, 408 and 425 are retryable
+    public void setStatus(int status, Kind kind) {
+        if (kind == null) this.mStatus.remove(status);
+        else this.mStatus.put(status, kind);
+    }
+
+    public Kind getStatus(int status) {
+        return this.findStatus(status);
+    }
+
+
+    /******************************************************************************************
+     * KIND ENUM
+     *****************************************************************************************/
+
+    /**
+     * The kind of a failure
+     */
+    public enum Kind {
+        RETRYABLE,          // Try again after the command retry delay
+        THROTTLED,          // Try again when the server asked
+        PERMANENT           // Never try again
+    }
+
+}
@@ -0,0 +1,247 @@
+package com.sccomponents.interfaces;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Share the executions between the commands groups by weighted fair queuing.
+ * Every group with due commands receive a number of executions proportional to its weight, so
+ * a group with a huge backlog can not delay the other groups. The commands of the same group
+ * are taken always in their queue order.
+ * Every group can also have a max number of commands in execution at the same time: by default
+ * a named group run one command at time, to keep its order, while the commands without group
+ * have no limit.
+ * Every group advance a virtual time by the inverse of its weight at every execution and the
+ * group with the lowest time is served first. A group that come back after a pause restart from
+ * the current virtual time so it can not spend the turns it lost.
+ */
+@SuppressWarnings("unused")
+public class ScGroupScheduler {
+
+    /**
+     * Static and constant
+     */
+
+    // The virtual time advance of a group with weight 1
+    private static final long STRIDE = 1 << 20;
+    // The key of the commands without group
+    private static final String NO_GROUP = "";
+    // Max weight
+    private static final int MAX_WEIGHT = 1 << 10;
+    // Default max commands executed by a sequential queue check
+    private static final int DEFAULT_CHECK_BUDGET = 32;
+
+
+    /**
+     * Private variables
+     */
+
+    private int mDefaultWeight = 1;             // Weight of the groups not configured
+    private int mDefaultMaxInFlight = 1;        // In execution limit of the groups not configured
+    private long mVirtualTime = 0;              // The virtual time of the last served group
+    private int mCheckBudget = DEFAULT_CHECK_BUDGET;    // Max executions of a queue check
+
+    // The groups configuration
+    private ConcurrentHashMap<String, Integer> mWeights = null;
+    private ConcurrentHashMap<String, Integer> mMaxInFlight = null;
+    // The virtual time of every group
+    private HashMap<String, Long> mPasses = null;
+
+
+    /**
+     * Private methods
+     */
+
+    // Get the key of a group
+    private static String key(String group) {
+        return group != null ? group : ScGroupScheduler.NO_GROUP;
+    }
+
+
+    /**
+     * Public methods
+     */
+
+    // Constructor
+    public ScGroupScheduler() {
+        // Init
+        this.mWeights = new ConcurrentHashMap<>();
+        this.mMaxInFlight = new ConcurrentHashMap<>();
+        this.mPasses = new HashMap<>();
+
+        // The commands without group are not limited
+        this.mMaxInFlight.put(ScGroupScheduler.NO_GROUP, 0);
+    }
+
+    // Take the commands to execute from the due commands of every group.
+    // The due commands of a group must be in the queue order and the groups in the order of
+    // their first due command: at parity of virtual time the first group is served first.
+    // Pass the number of commands already in execution of every group, null to not apply the
+    // limits, and the max number of commands to take.
+    synchronized ArrayList<ScServer.SchedulableCommand> pick(
+            Map<String, ArrayDeque<ScServer.SchedulableCommand>> due,
+            Map<String, Integer> running, int max) {
+        // Holder
+        ArrayList<ScServer.SchedulableCommand> picked = new ArrayList<>();
+        if (due.isEmpty() || max <= 0) return picked;
+
+        // Forget the groups without due commands that have no turns to recover
+        Iterator<Map.Entry<String, Long>> iterator = this.mPasses.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if (entry.getValue() <= this.mVirtualTime && !due.containsKey(
+                    entry.getKey().equals(NO_GROUP) ? null : entry.getKey()))
+                iterator.remove();
+        }
+
+        // Create the flows of the groups that can execute
+        PriorityQueue<Flow> flows = new PriorityQueue<>();
+        int order = 0;
+        for (Map.Entry<String, ArrayDeque<ScServer.SchedulableCommand>> entry : due.entrySet()) {
+            // Check the in execution limit
+            String key = ScGroupScheduler.key(entry.getKey());
+            int available = Integer.MAX_VALUE;
+            int limit = this.getMaxInFlight(entry.getKey());
+            if (running != null && limit > 0) {
+                Integer count = running.get(entry.getKey());
+                available = limit - (count != null ? count : 0);
+            }
+            if (available <= 0 || entry.getValue().isEmpty()) continue;
+
+            // A group come back after a pause restart from the current virtual time
+            Long pass = this.mPasses.get(key);
+            long start = pass != null ? Math.max(pass, this.mVirtualTime) : this.mVirtualTime;
+            flows.add(new Flow(key, entry.getValue(), available,
+                    STRIDE / this.getWeight(entry.getKey()), start, order++));
+        }
+
+        // Serve the group with the lowest virtual time
+        while (picked.size() < max && !flows.isEmpty()) {
+            // Take the next command of the group
+            Flow flow = flows.poll();
+            picked.add(flow.mCommands.poll());
+            this.mVirtualTime = flow.mPass;
+
+            // Advance the group virtual time
+            flow.mPass += flow.mStride;
+            flow.mAvailable--;
+            this.mPasses.put(flow.mKey, flow.mPass);
+
+            // Put back if can execute more
+            if (flow.mAvailable > 0 && !flow.mCommands.isEmpty()) flows.add(flow);
+        }
+
+        // Return the picked commands
+        return picked;
+    }
+
+
+    /**
+     * Public properties
+     */
+
+    // Get/Set the weight of a group, null for the commands without group.
+    // A group with weight 2 receive twice the executions of a group with weight 1 when both
+    // have due commands. Pass 0 to come back to the default weight.
+    // Default: 1
+    public void setWeight(String group, int value) {
+        if (value <= 0) this.mWeights.remove(ScGroupScheduler.key(group));
+        else this.mWeights.put(ScGroupScheduler.key(group), Math.min(MAX_WEIGHT, value));
+    }
+
+    public int getWeight(String group) {
+        Integer value = this.mWeights.get(ScGroupScheduler.key(group));
+        return value != null ? value : this.mDefaultWeight;
+    }
+
+    // Get/Set the weight of the groups without a specific weight.
+    // Default: 1
+    public void setDefaultWeight(int value) {
+        this.mDefaultWeight = Math.max(1, Math.min(MAX_WEIGHT, value));
+    }
+
+    public int getDefaultWeight() {
+        return this.mDefaultWeight;
+    }
+
+    // Get/Set the max number of commands of a group in execution at the same time, null for
+    // the commands without group. 0 mean no limit.
+    // With more than one command in execution the commands of the group start in their order
+    // but can finish in a different order.
+    // Default: 1 for the named groups, no limit for the commands without group
+    public void setMaxInFlight(String group, int value) {
+        this.mMaxInFlight.put(ScGroupScheduler.key(group), Math.max(0, value));
+    }
+
+    public int getMaxInFlight(String group) {
+        Integer value = this.mMaxInFlight.get(ScGroupScheduler.key(group));
+        return value != null ? value : this.mDefaultMaxInFlight;
+    }
+
+    // Get/Set the max number of commands in execution at the same time of the named groups
+    // without a specific limit. 0 mean no limit.
+    // Default: 1
+    public void setDefaultMaxInFlight(int value) {
+        this.mDefaultMaxInFlight = Math.max(0, value);
+    }
+
+    public int getDefaultMaxInFlight() {
+        return this.mDefaultMaxInFlight;
+    }
+
+    // Get/Set the max number of commands executed by a check of the queue solved one command
+    // at time. The budget is shared between the groups by weight, the due commands out of the
+    // budget wait the next check. Without a limit every due command is executed at every
+    // check and the weights only change the execution order. 0 mean no limit.
+    // With a concurrency limiter or a dispatcher the budget is the free slots.
+    // Default: 32
+    public void setCheckBudget(int value) {
+        this.mCheckBudget = Math.max(0, value);
+    }
+
+    public int getCheckBudget() {
+        return this.mCheckBudget;
+    }
+
+
+    /******************************************************************************************
+     * FLOW CLASS
+     *****************************************************************************************/
+
+    /**
+     * The due commands of a group while picking
+     */
+    private static class Flow implements Comparable<Flow> {
+
+        private String mKey = null;                 // The group key
+        private ArrayDeque<ScServer.SchedulableCommand> mCommands = null;   // Due commands
+        private int mAvailable = 0;                 // Commands that can still start
+        private long mStride = 0;                   // Virtual time of an execution
+        private long mPass = 0;                     // The group virtual time
+        private int mOrder = 0;                     // Order of the first due command
+
+        // Constructor
+        private Flow(String key, ArrayDeque<ScServer.SchedulableCommand> commands,
+                     int available, long stride, long pass, int order) {
+            this.mKey = key;
+            this.mCommands = commands;
+            this.mAvailable = available;
+            this.mStride = stride;
+            this.mPass = pass;
+            this.mOrder = order;
+        }
+
+        @Override
+        public int compareTo(Flow other) {
+            if (this.mPass != other.mPass) return this.mPass < other.mPass ? -1 : 1;
+            return this.mOrder < other.mOrder ? -1 : (this.mOrder > other.mOrder ? 1 : 0);
+        }
+
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.sccomponents.interfaces;
+
+import java.io.IOException;
+
+/**
+ * HTTP error status answered without a server fault, like the errors of a proxy or of an
+ * overloaded server.
+ * Unlike a fault the server may not be working, so the call is sent to the next server.
+ */
+@SuppressWarnings("unused")
+public class ScHttpError extends IOException {
+
+    /**
+     * Static and constant
+     */
+
+    private static final long serialVersionUID = 1L;
+
+
+    /**
+     * Private variables
+     */
+
+    private int mStatus = 0;                // The HTTP status
+    private long mRetryAfter = -1;          // The delay asked by the server
+
+
+    /**
+     * Public methods
+     */
+
+    // Constructor
+    public ScHttpError(int status, long retryAfter) {
+        super("HTTP request failed, HTTP status: " + status);
+        this.mStatus = status;
+        this.mRetryAfter = retryAfter;
+    }
+
+    public ScHttpError(int status) {
+        this(status, -1);
+    }
+
+
+    /**
+     * Public properties
+     */
+
+    // Get the HTTP status
+    public int getStatus() {
+        return this.mStatus;
+    }
+
+    // Get/Set the milliseconds the server asked to wait before the next try, -1 if not asked
+    void setRetryAfter(long value) {
+        this.mRetryAfter = value;
+    }
+
+    public long getRetryAfter() {
+        return this.mRetryAfter;
+    }
+
+}
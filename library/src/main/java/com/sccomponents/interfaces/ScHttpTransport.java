@@ -0,0 +1,204 @@
+package com.sccomponents.interfaces;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Send the commands with a HTTP POST encoding them with a codec.
+ * The server address, the failover between the Production server mirrors and the hedging are
+ * the same of the server built-in SOAP transport.
+ * The request is encoded only one time for every call, also when it is sent to more servers,
+ * and sent again by the next tries of the command while the command not change.
+ * A request with stream parameters is encoded on the fly inside a chunked body instead.
+ */
+@SuppressWarnings("unused")
+public class ScHttpTransport implements ScTransport {
+
+    /**
+     * Static and constant
+     */
+
+    // Default timeouts in milliseconds
+    private static final int DEFAULT_CONNECT_TIMEOUT = 20000;
+    private static final int DEFAULT_READ_TIMEOUT = 20000;
+    // The chunk size of the streamed requests
+    private static final int STREAMING_CHUNK_SIZE = 16 * 1024;
+
+
+    /**
+     * Private variables
+     */
+
+    private ScServer mServer = null;                        // The server
+    private ScCodec mCodec = null;                          // The codec
+    private int mConnectTimeout = DEFAULT_CONNECT_TIMEOUT;  // Connection timeout
+    private int mReadTimeout = DEFAULT_READ_TIMEOUT;        // Answer timeout
+
+
+    /**
+     * Private methods
+     */
+
+    // Send the request to a server address.
+    // If the encoded body is null the parameters are encoded on the fly inside a chunked body,
+    // so the stream parameters are never fully held in memory.
+    private String send(String url, String address, byte[] body, String namespace,
+                        String methodName, Map<String, Object> params,
+                        ScServer.CallContext context)
+            throws IOException {
+        // Check if cancelled before open the connection
+        if (context != null && context.isCancelled())
+            throw new InterruptedIOException("Call cancelled");
+
+        // Create the connection
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        if (context != null) context.setConnection(address, connection);
+
+        try {
+            // Settings
+            connection.setDoOutput(true);
+            if (body != null) connection.setFixedLengthStreamingMode(body.length);
+            else connection.setChunkedStreamingMode(ScHttpTransport.STREAMING_CHUNK_SIZE);
+            connection.setConnectTimeout(this.mConnectTimeout);
+            connection.setReadTimeout(this.mReadTimeout);
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", this.mCodec.getContentType());
+            connection.setRequestProperty("Accept", this.mCodec.getContentType());
+
+            // Write the request
+            OutputStream output = connection.getOutputStream();
+            try {
+                if (body != null) output.write(body);
+                else this.mCodec.encode(namespace, methodName, params, output);
+            } finally {
+                output.close();
+            }
+
+            // Get the answer.
+            // The errors can have a body so read the error stream too.
+            int status = connection.getResponseCode();
+            long retryAfter = ScFailureClassifier.parseRetryAfter(
+                    connection.getHeaderField("Retry-After"));
+            InputStream input = status >= 400 ?
+                    connection.getErrorStream() : connection.getInputStream();
+            if (input == null) throw new ScHttpError(status, retryAfter);
+
+            // Decode the answer.
+            // The codec not see the headers so the asked delay is added here.
+            try {
+                return this.mCodec.decode(status, input);
+
+            } catch (ScHttpError e) {
+                if (e.getRetryAfter() < 0) e.setRetryAfter(retryAfter);
+                throw e;
+
+            } catch (ScServerFault e) {
+                if (e.getRetryAfter() < 0) e.setRetryAfter(retryAfter);
+                throw e;
+
+            } finally {
+                input.close();
+            }
+
+        } finally {
+            // Close the connection
+            connection.disconnect();
+        }
+    }
+
+
+    /**
+     * Public methods
+     */
+
+    // Constructor
+    public ScHttpTransport(ScServer server, ScCodec codec) {
+        this.mServer = server;
+        this.mCodec = codec;
+    }
+
+    @Override
+    public String call(ScServer.Command command) throws Exception {
+        // Reuse the request encoded by the last try if nothing changed
+        ScServer.EncodedRequest encoded = command.getEncodedRequest(this);
+        final String methodName = encoded.getMethodName();
+        final String namespace = this.mServer.getWebServiceNameSpace();
+        byte[] data = encoded.getData();
+        Map<String, Object> params = null;
+
+        if (data == null) {
+            // Execute the callable parameters keeping the parameters order
+            boolean streaming = false;
+            params = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> entry : encoded.getParamsMap().entrySet()) {
+                Object value = entry.getValue();
+                if (value instanceof Callable) value = ((Callable) value).call();
+                streaming |= value instanceof ScStreamParam;
+                params.put(entry.getKey(), value);
+            }
+
+            // The stream parameters are encoded on the fly by every call, the others only
+            // one time
+            if (!streaming) {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                this.mCodec.encode(namespace, methodName, params, output);
+                data = output.toByteArray();
+                command.setEncodedRequest(encoded, data);
+            }
+        }
+        final byte[] body = data;
+        final Map<String, Object> streamed = params;
+
+        // Call the server
+        final String service = this.mServer.getWebServiceName() != null ?
+                this.mServer.getWebServiceName() : "";
+        return this.mServer.callExchange(methodName, new ScServer.Exchange() {
+            @Override
+            public String call(String address, ScServer.CallContext context) throws Exception {
+                String url = ScHttpTransport.this.mCodec.getUrl(
+                        address + service, namespace, methodName);
+                return ScHttpTransport.this.send(
+                        url, address, body, namespace, methodName, streamed, context);
+            }
+        }, command.getIdempotent(), ScServer.isRepeatable(encoded.getParams()));
+    }
+
+
+    /**
+     * Public properties
+     */
+
+    // Get the codec
+    public ScCodec getCodec() {
+        return this.mCodec;
+    }
+
+    // Get/Set the connection timeout in milliseconds.
+    // Default: 20000
+    public void setConnectTimeout(int value) {
+        this.mConnectTimeout = Math.max(0, value);
+    }
+
+    public int getConnectTimeout() {
+        return this.mConnectTimeout;
+    }
+
+    // Get/Set the answer timeout in milliseconds.
+    // Default: 20000
+    public void setReadTimeout(int value) {
+        this.mReadTimeout = Math.max(0, value);
+    }
+
+    public int getReadTimeout() {
+        return this.mReadTimeout;
+    }
+
+}
@@ -0,0 +1,263 @@
+package com.sccomponents.interfaces;
+
+import android.util.Base64;
+import android.util.Base64OutputStream;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Encode the commands as JSON objects and decode the JSON answers.
+ * The format is the one of the .NET script services: the method is called at the web service
+ * url followed by the method name, the parameters are the properties of the request object and
+ * the answer value is wrapped inside the "d" property.
+ * The dates are written as "\/Date(milliseconds)\/" and the binary values as base64 strings.
+ */
+@SuppressWarnings("unused")
+public class ScJsonCodec implements ScCodec {
+
+    /**
+     * Static and constant
+     */
+
+    // The content type
+    private static final String CONTENT_TYPE = "application/json; charset=utf-8";
+    // The property that wrap the answer value
+    private static final String ANSWER_PROPERTY = "d";
+    // Bytes read at once from a stream parameter
+    private static final int READ_SIZE = 8 * 1024;
+
+
+    /**
+     * Private methods
+     */
+
+    // Write a string value
+    private static void writeString(Writer writer, String value) throws IOException {
+        writer.write(JSONObject.quote(value));
+    }
+
+    // Write a number, the not finite numbers are not valid JSON so they are written as null
+    private static void writeNumber(Writer writer, double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) writer.write("null");
+        else if (value == (long) value) writer.write(Long.toString((long) value));
+        else writer.write(Double.toString(value));
+    }
+
+    // Write a stream parameter as base64 string
+    private static void writeStream(Writer writer, OutputStream output, ScStreamParam value)
+            throws IOException {
+        // Flush the pending text before write the bytes directly
+        writer.write('"');
+        writer.flush();
+
+        // Encode the stream
+        InputStream input = value.open();
+        try {
+            Base64OutputStream encoder = new Base64OutputStream(output,
+                    Base64.NO_WRAP | Base64.NO_CLOSE);
+            byte[] buffer = new byte[ScJsonCodec.READ_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                encoder.write(buffer, 0, read);
+            }
+            encoder.close();
+
+        } finally {
+            input.close();
+        }
+        writer.write('"');
+    }
+
+    // Write a value
+    private static void writeValue(Writer writer, OutputStream output, Object value)
+            throws IOException {
+        // Null
+        if (value == null || value == JSONObject.NULL) {
+            writer.write("null");
+
+        } else if (value instanceof String || value instanceof Character) {
+            ScJsonCodec.writeString(writer, value.toString());
+
+        } else if (value instanceof Boolean) {
+            writer.write(value.toString());
+
+        } else if (value instanceof Double || value instanceof Float) {
+            ScJsonCodec.writeNumber(writer, ((Number) value).doubleValue());
+
+        } else if (value instanceof Number) {
+            writer.write(value.toString());
+
+        } else if (value instanceof Date) {
+            // The slashes must be escaped to be read as date, and not all the JSON libraries
+            // escape them
+            writer.write("\"\\/Date(" + ((Date) value).getTime() + ")\\/\"");
+
+        } else if (value instanceof byte[]) {
+            ScJsonCodec.writeString(writer, Base64.encodeToString((byte[]) value, Base64.NO_WRAP));
+
+        } else if (value instanceof ScStreamParam) {
+            ScJsonCodec.writeStream(writer, output, (ScStreamParam) value);
+
+        } else if (value instanceof JSONObject || value instanceof JSONArray) {
+            writer.write(value.toString());
+
+        } else if (value instanceof double[]) {
+            // Primitive arrays are written without boxing
+            double[] array = (double[]) value;
+            writer.write('[');
+            for (int index = 0; index < array.length; index++) {
+                if (index > 0) writer.write(',');
+                ScJsonCodec.writeNumber(writer, array[index]);
+            }
+            writer.write(']');
+
+        } else if (value instanceof int[]) {
+            int[] array = (int[]) value;
+            writer.write('[');
+            for (int index = 0; index < array.length; index++) {
+                if (index > 0) writer.write(',');
+                writer.write(Integer.toString(array[index]));
+            }
+            writer.write(']');
+
+        } else if (value instanceof long[]) {
+            long[] array = (long[]) value;
+            writer.write('[');
+            for (int index = 0; index < array.length; index++) {
+                if (index > 0) writer.write(',');
+                writer.write(Long.toString(array[index]));
+            }
+            writer.write(']');
+
+        } else if (value instanceof boolean[]) {
+            boolean[] array = (boolean[]) value;
+            writer.write('[');
+            for (int index = 0; index < array.length; index++) {
+                if (index > 0) writer.write(',');
+                writer.write(array[index] ? "true" : "false");
+            }
+            writer.write(']');
+
+        } else if (value instanceof Object[] || value instanceof Collection) {
+            // Generic list
+            Iterable<?> items = value instanceof Collection ?
+                    (Collection<?>) value : Arrays.asList((Object[]) value);
+            boolean first = true;
+            writer.write('[');
+            for (Object item : items) {
+                if (!first) writer.write(',');
+                ScJsonCodec.writeValue(writer, output, item);
+                first = false;
+            }
+            writer.write(']');
+
+        } else if (value instanceof Map) {
+            // Generic object
+            ScJsonCodec.writeObject(writer, output, (Map<?, ?>) value);
+
+        } else {
+            // Anything else as string
+            ScJsonCodec.writeString(writer, value.toString());
+        }
+    }
+
+    // Write an object
+    private static void writeObject(Writer writer, OutputStream output, Map<?, ?> values)
+            throws IOException {
+        boolean first = true;
+        writer.write('{');
+        for (Map.Entry<?, ?> entry : values.entrySet()) {
+            if (!first) writer.write(',');
+            ScJsonCodec.writeString(writer, String.valueOf(entry.getKey()));
+            writer.write(':');
+            ScJsonCodec.writeValue(writer, output, entry.getValue());
+            first = false;
+        }
+        writer.write('}');
+    }
+
+    // Read all the stream as string
+    private static String read(InputStream input) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] bytes = new byte[ScJsonCodec.READ_SIZE];
+        int read;
+        while ((read = input.read(bytes)) != -1) {
+            buffer.write(bytes, 0, read);
+        }
+        return buffer.toString("UTF-8");
+    }
+
+
+    /**
+     * Public methods
+     */
+
+    @Override
+    public String getContentType() {
+        return ScJsonCodec.CONTENT_TYPE;
+    }
+
+    @Override
+    public String getUrl(String serviceUrl, String namespace, String methodName) {
+        return serviceUrl + "/" + methodName;
+    }
+
+    @Override
+    public void encode(String namespace, String methodName, Map<String, Object> params,
+                       OutputStream output) throws IOException {
+        // Write the parameters as object properties
+        Writer writer = new OutputStreamWriter(output, "UTF-8");
+        ScJsonCodec.writeObject(writer, output, params);
+        writer.flush();
+    }
+
+    @Override
+    public String decode(int status, InputStream input) throws IOException {
+        // Read the answer
+        String body = ScJsonCodec.read(input);
+
+        try {
+            // Parse
+            Object answer = body.trim().isEmpty() ? null : new JSONTokener(body).nextValue();
+
+            // The server error
+            if (status >= 400) {
+                // Without a JSON error is a HTTP error
+                if (!(answer instanceof JSONObject))
+                    throw new ScHttpError(status);
+                JSONObject error = (JSONObject) answer;
+                throw new ScServerFault(status,
+                        error.optString("ExceptionType", null), error.optString("Message", null));
+            }
+
+            // Unwrap the value
+            if (answer instanceof JSONObject && ((JSONObject) answer).has(ANSWER_PROPERTY))
+                answer = ((JSONObject) answer).opt(ANSWER_PROPERTY);
+
+            // A method without value return an empty string like the SOAP transport
+            if (answer == null || answer == JSONObject.NULL) return "";
+            return answer.toString();
+
+        } catch (JSONException e) {
+            // Not a JSON answer
+            if (status >= 400)
+                throw new ScHttpError(status);
+            throw new IOException("Invalid JSON answer", e);
+        }
+    }
+
+}
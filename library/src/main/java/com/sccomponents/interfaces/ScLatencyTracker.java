@@ -0,0 +1,144 @@
+package com.sccomponents.interfaces;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hold the last latencies observed for every server method and calculate the percentiles.
+ * Every method keep a fixed size ring of samples so the memory used not grow with the calls.
+ */
+@SuppressWarnings("unused")
+public class ScLatencyTracker {
+
+    /**
+     * Static and constant
+     */
+
+    // Default samples kept for every method
+    private static final int DEFAULT_SAMPLES = 64;
+    // Default min samples needed to calculate a percentile
+    private static final int DEFAULT_MIN_SAMPLES = 10;
+
+
+    /**
+     * Private variables
+     */
+
+    private int mSamples = DEFAULT_SAMPLES;             // Ring size
+    private int mMinSamples = DEFAULT_MIN_SAMPLES;      // Min samples for a percentile
+
+    // The samples ring for every method name
+    private ConcurrentHashMap<String, Ring> mRings = null;
+
+
+    /**
+     * Public methods
+     */
+
+    // Constructor
+    public ScLatencyTracker() {
+        // Init
+        this.mRings = new ConcurrentHashMap<>();
+    }
+
+    // Record a latency in milliseconds for the passed method
+    public void record(String methodName, long latency) {
+        // Check for null value
+        if (methodName == null) return;
+
+        // Get the ring or create it if not exists
+        Ring ring = this.mRings.get(methodName);
+        if (ring == null) {
+            Ring created = new Ring(this.mSamples);
+            ring = this.mRings.putIfAbsent(methodName, created);
+            if (ring == null) ring = created;
+        }
+
+        // Add the sample
+        ring.add(latency);
+    }
+
+    // Get the percentile of the passed method latency.
+    // The percentile must be between 0 and 1.
+    // Return -1 if not have enough samples.
+    public long getPercentile(String methodName, double percentile) {
+        // Get the ring
+        Ring ring = methodName == null ? null : this.mRings.get(methodName);
+        if (ring == null) return -1;
+
+        // Get the ordered samples and check if are enough
+        long[] samples = ring.snapshot();
+        if (samples.length == 0 || samples.length < this.mMinSamples) return -1;
+        Arrays.sort(samples);
+
+        // Find the percentile position
+        int index = (int) Math.ceil(percentile * samples.length) - 1;
+        return samples[Math.max(0, Math.min(samples.length - 1, index))];
+    }
+
+    // Forget all the samples
+    public void clear() {
+        this.mRings.clear();
+    }
+
+
+    /**
+     * Public properties
+     */
+
+    // Get/Set the number of samples kept for every method.
+    // Apply only to the methods never recorded before.
+    // Default: 64
+    public void setSamples(int value) {
+        this.mSamples = Math.max(1, value);
+    }
+
+    public int getSamples() {
+        return this.mSamples;
+    }
+
+    // Get/Set the min number of samples needed to calculate a percentile.
+    // Default: 10
+    public void setMinSamples(int value) {
+        this.mMinSamples = Math.max(1, value);
+    }
+
+    public int getMinSamples() {
+        return this.mMinSamples;
+    }
+
+
+    /******************************************************************************************
+     * RING CLASS
+     * Internal use only
+     *****************************************************************************************/
+
+    /**
+     * Fixed size samples ring
+     */
+    private static class Ring {
+
+        private long[] mValues = null;      // The samples
+        private int mCount = 0;             // How many samples stored
+        private int mNext = 0;              // Where write the next sample
+
+        // Constructor
+        private Ring(int size) {
+            this.mValues = new long[size];
+        }
+
+        // Add a sample overwriting the oldest
+        private synchronized void add(long value) {
+            this.mValues[this.mNext] = value;
+            this.mNext = (this.mNext + 1) % this.mValues.length;
+            if (this.mCount < this.mValues.length) this.mCount++;
+        }
+
+        // Get a copy of the stored samples
+        private synchronized long[] snapshot() {
+            return Arrays.copyOf(this.mValues, this.mCount);
+        }
+
+    }
+
+}
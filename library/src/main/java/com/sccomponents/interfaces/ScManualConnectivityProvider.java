@@ -0,0 +1,62 @@
+package com.sccomponents.interfaces;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Connectivity provider with the status settled manually.
+ * Useful for tests or when the application have its own connectivity logic.
+ */
+@SuppressWarnings("unused")
+public class ScManualConnectivityProvider implements ScConnectivityProvider {
+
+    /**
+     * Private variables
+     */
+
+    private volatile boolean mConnected = true;                 // The current status
+
+    // The listeners
+    private CopyOnWriteArrayList<OnConnectivityChangeListener> mListeners =
+            new CopyOnWriteArrayList<>();
+
+
+    /**
+     * Public methods
+     */
+
+    // Constructor
+    public ScManualConnectivityProvider() {
+    }
+
+    public ScManualConnectivityProvider(boolean connected) {
+        this.mConnected = connected;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return this.mConnected;
+    }
+
+    @Override
+    public void addOnConnectivityChangeListener(OnConnectivityChangeListener listener) {
+        if (listener != null) this.mListeners.addIfAbsent(listener);
+    }
+
+    @Override
+    public void removeOnConnectivityChangeListener(OnConnectivityChangeListener listener) {
+        this.mListeners.remove(listener);
+    }
+
+    // Set the connectivity status.
+    // The listeners are called only if the status change.
+    public void setConnected(boolean value) {
+        // Check if changed
+        if (this.mConnected == value) return;
+        this.mConnected = value;
+
+        // Call the listeners
+        for (OnConnectivityChangeListener listener : this.mListeners)
+            listener.onConnectivityChange(value);
+    }
+
+}
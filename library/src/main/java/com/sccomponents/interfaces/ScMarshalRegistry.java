@@ -0,0 +1,350 @@
+package com.sccomponents.interfaces;
+
+import org.kobjects.isodate.IsoDate;
+import org.ksoap2.serialization.Marshal;
+import org.ksoap2.serialization.MarshalBase64;
+import org.ksoap2.serialization.PropertyInfo;
+import org.ksoap2.serialization.SoapSerializationEnvelope;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hold the marshals used to write and read the SOAP parameters.
+ * The marshals are created one time and shared by all the calls of a server, so they must not
+ * hold any state of a single call.
+ * Out of the box the registry map the double values, the dates, the bytes arrays, the strings
+ * arrays and the double, float, int, long and boolean arrays. The primitive arrays are written
+ * and read item by item as .NET expect them, without boxing the items.
+ * The application can add its own marshals or replace the built-in ones.
+ * Every change increase the registry version, so the requests already encoded with the old
+ * marshals are encoded again.
+ */
+@SuppressWarnings("unused")
+public class ScMarshalRegistry {
+
+    /**
+     * Static and constant
+     */
+
+    // The XML schema namespace
+    public static final String XSD = "http://www.w3.org/2001/XMLSchema";
+
+
+    /**
+     * Private variables
+     */
+
+    // The registered marshals
+    private CopyOnWriteArrayList<Entry> mEntries = null;
+    // The registered type of every value class already seen
+    private ConcurrentHashMap<Class<?>, Class<?>> mTypes = null;
+    // Changed at every registration
+    private AtomicInteger mVersion = null;
+
+
+    /**
+     * Private methods
+     */
+
+    // Find the registered entry of a type
+    private Entry find(Class<?> type) {
+        for (Entry entry : this.mEntries) {
+            if (entry.mType == type) return entry;
+        }
+        return null;
+    }
+
+    // Register the built-in marshals
+    private void registerDefaults() {
+        this.register(XSD, "double", Double.class, new MarshalDouble());
+        this.register(XSD, "dateTime", Date.class, new MarshalDate());
+        this.register(XSD, "base64Binary", byte[].class, new MarshalBase64());
+        this.register(null, "ArrayOfDouble", double[].class, new MarshalArray("double"));
+        this.register(null, "ArrayOfFloat", float[].class, new MarshalArray("float"));
+        this.register(null, "ArrayOfInt", int[].class, new MarshalArray("int"));
+        this.register(null, "ArrayOfLong", long[].class, new MarshalArray("long"));
+        this.register(null, "ArrayOfBoolean", boolean[].class, new MarshalArray("boolean"));
+        this.register(null, "ArrayOfString", String[].class, new MarshalArray("string"));
+    }
+
+
+    /**
+     * Public methods
+     */
+
+    // Constructor
+    public ScMarshalRegistry() {
+        // Init
+        this.mEntries = new CopyOnWriteArrayList<>();
+        this.mTypes = new ConcurrentHashMap<>();
+        this.mVersion = new AtomicInteger();
+        this.registerDefaults();
+    }
+
+    // Register a marshal for a type, replacing the one already registered for the same type.
+    // The namespace and the name are the XML schema type used to read the answers, with a null
+    // namespace the one of the envelope is used.
+    public void register(String namespace, String name, Class<?> type, Marshal marshal) {
+        // Check for empty values
+        if (name == null || type == null || marshal == null) throw new NullPointerException();
+
+        // Replace or add
+        Entry entry = new Entry(namespace, name, type, marshal);
+        Entry old = this.find(type);
+        if (old != null) this.mEntries.set(this.mEntries.indexOf(old), entry);
+        else this.mEntries.add(entry);
+
+        // The classes can be mapped on the new type
+        this.mTypes.clear();
+        this.mVersion.incrementAndGet();
+    }
+
+    // Remove the marshal of a type.
+    // Return false if the type is not registered.
+    public boolean unregister(Class<?> type) {
+        // Find and remove
+        Entry entry = this.find(type);
+        if (entry == null || !this.mEntries.remove(entry)) return false;
+
+        // The classes mapped on this type must be found again
+        this.mTypes.clear();
+        this.mVersion.incrementAndGet();
+        return true;
+    }
+
+    // Get the registry version, changed at every register and unregister
+    public int getVersion() {
+        return this.mVersion.get();
+    }
+
+    // Get the marshal of a type, null if not registered
+    public Marshal getMarshal(Class<?> type) {
+        Entry entry = this.find(type);
+        return entry != null ? entry.mMarshal : null;
+    }
+
+    // Get the type to use to write a value.
+    // If the value class is not registered but one of its super classes is, the registered
+    // one is returned so the subclasses, like the sql dates, use the same marshal.
+    public Class<?> getType(Object value) {
+        // Check the already solved classes
+        Class<?> valueClass = value.getClass();
+        Class<?> type = this.mTypes.get(valueClass);
+        if (type != null) return type;
+
+        // Find the nearest registered class
+        type = valueClass;
+        for (Class<?> current = valueClass; current != null; current = current.getSuperclass()) {
+            if (this.find(current) != null) {
+                type = current;
+                break;
+            }
+        }
+
+        // Hold and return
+        this.mTypes.put(valueClass, type);
+        return type;
+    }
+
+    // Map all the registered marshals on an envelope
+    public void apply(SoapSerializationEnvelope envelope) {
+        for (Entry entry : this.mEntries) {
+            envelope.addMapping(entry.mNamespace != null ? entry.mNamespace : envelope.xsd,
+                    entry.mName, entry.mType, entry.mMarshal);
+        }
+    }
+
+
+    /******************************************************************************************
+     * ENTRY CLASS
+     *****************************************************************************************/
+
+    /**
+     * A registered marshal
+     */
+    private static class Entry {
+
+        private String mNamespace = null;       // The type namespace, null for the envelope one
+        private String mName = null;            // The type name
+        private Class<?> mType = null;          // The mapped class
+        private Marshal mMarshal = null;        // The marshal
+
+        // Constructor
+        private Entry(String namespace, String name, Class<?> type, Marshal marshal) {
+            this.mNamespace = namespace;
+            this.mName = name;
+            this.mType = type;
+            this.mMarshal = marshal;
+        }
+
+    }
+
+
+    /******************************************************************************************
+     * MARSHAL DOUBLE CLASS
+     *****************************************************************************************/
+
+    /**
+     * Fix the double type marshalling
+     */
+    private static class MarshalDouble implements Marshal {
+
+        public Object readInstance(XmlPullParser parser, String namespace, String name,
+                                   PropertyInfo expected) throws IOException, XmlPullParserException {
+
+            return Double.parseDouble(parser.nextText());
+        }
+
+        public void register(SoapSerializationEnvelope cm) {
+            cm.addMapping(cm.xsd, "double", Double.class, this);
+        }
+
+        public void writeInstance(XmlSerializer writer, Object obj) throws IOException {
+            writer.text(obj.toString());
+        }
+
+    }
+
+
+    /******************************************************************************************
+     * MARSHAL DATE CLASS
+     *****************************************************************************************/
+
+    /**
+     * Write the dates as ISO 8601 date and time
+     */
+    private static class MarshalDate implements Marshal {
+
+        public Object readInstance(XmlPullParser parser, String namespace, String name,
+                                   PropertyInfo expected) throws IOException, XmlPullParserException {
+
+            return IsoDate.stringToDate(parser.nextText(), IsoDate.DATE_TIME);
+        }
+
+        public void register(SoapSerializationEnvelope cm) {
+            cm.addMapping(cm.xsd, "dateTime", Date.class, this);
+        }
+
+        public void writeInstance(XmlSerializer writer, Object obj) throws IOException {
+            writer.text(IsoDate.dateToString((Date) obj, IsoDate.DATE_TIME));
+        }
+
+    }
+
+
+    /******************************************************************************************
+     * MARSHAL ARRAY CLASS
+     *****************************************************************************************/
+
+    /**
+     * Write the arrays as a list of items in the parameter namespace, like .NET expect them.
+     * The primitive items are written directly from the array, without boxing.
+     */
+    private static class MarshalArray implements Marshal {
+
+        private String mItemName = null;        // The items tag name
+
+        // Constructor
+        private MarshalArray(String itemName) {
+            this.mItemName = itemName;
+        }
+
+        // Write an item
+        private void writeItem(XmlSerializer writer, String namespace, String value)
+                throws IOException {
+            writer.startTag(namespace, this.mItemName);
+            writer.text(value);
+            writer.endTag(namespace, this.mItemName);
+        }
+
+        public Object readInstance(XmlPullParser parser, String namespace, String name,
+                                   PropertyInfo expected) throws IOException, XmlPullParserException {
+            // Read the items text until the end of the parameter
+            ArrayList<String> items = new ArrayList<>();
+            while (parser.nextTag() == XmlPullParser.START_TAG) {
+                items.add(parser.nextText());
+            }
+
+            // Convert to the array type
+            int size = items.size();
+            switch (this.mItemName) {
+                case "double":
+                    double[] doubles = new double[size];
+                    for (int index = 0; index < size; index++)
+                        doubles[index] = Double.parseDouble(items.get(index));
+                    return doubles;
+
+                case "float":
+                    float[] floats = new float[size];
+                    for (int index = 0; index < size; index++)
+                        floats[index] = Float.parseFloat(items.get(index));
+                    return floats;
+
+                case "int":
+                    int[] ints = new int[size];
+                    for (int index = 0; index < size; index++)
+                        ints[index] = Integer.parseInt(items.get(index));
+                    return ints;
+
+                case "long":
+                    long[] longs = new long[size];
+                    for (int index = 0; index < size; index++)
+                        longs[index] = Long.parseLong(items.get(index));
+                    return longs;
+
+                case "boolean":
+                    boolean[] booleans = new boolean[size];
+                    for (int index = 0; index < size; index++)
+                        booleans[index] = Boolean.parseBoolean(items.get(index));
+                    return booleans;
+
+                default:
+                    return items.toArray(new String[size]);
+            }
+        }
+
+        public void register(SoapSerializationEnvelope cm) {
+            // Registered by the registry
+        }
+
+        public void writeInstance(XmlSerializer writer, Object obj) throws IOException {
+            // The items are in the same namespace of the parameter
+            String namespace = writer.getNamespace();
+
+            if (obj instanceof double[]) {
+                for (double value : (double[]) obj)
+                    this.writeItem(writer, namespace, Double.toString(value));
+
+            } else if (obj instanceof float[]) {
+                for (float value : (float[]) obj)
+                    this.writeItem(writer, namespace, Float.toString(value));
+
+            } else if (obj instanceof int[]) {
+                for (int value : (int[]) obj)
+                    this.writeItem(writer, namespace, Integer.toString(value));
+
+            } else if (obj instanceof long[]) {
+                for (long value : (long[]) obj)
+                    this.writeItem(writer, namespace, Long.toString(value));
+
+            } else if (obj instanceof boolean[]) {
+                for (boolean value : (boolean[]) obj)
+                    this.writeItem(writer, namespace, value ? "true" : "false");
+
+            } else {
+                for (Object value : (Object[]) obj)
+                    this.writeItem(writer, namespace, String.valueOf(value));
+            }
+        }
+
+    }
+
+}
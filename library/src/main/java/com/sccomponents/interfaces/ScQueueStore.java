@@ -0,0 +1,768 @@
+package com.sccomponents.interfaces;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hold the records of a commands queue inside a file shared between more processes.
+ * The file is a log: every change is appended at the end as a record and the header, mapped
+ * in memory, hold the committed length. The records are read and written through mapped
+ * segments and every store read only the records appended after its last read, so to see the
+ * changes of the other writers is cheap. When most of the file is made by old records the live
+ * ones are copied where the header do not point, before the records start or after the end,
+ * and only then the header is switched on them, so a crash never leave the store corrupted.
+ * The writes are serialized by a lock on the file, shared between the processes, and by a
+ * lock shared between the stores of the same file inside this process.
+ * A record can be claimed by one store for a lease time: the other stores can not claim it
+ * until it is released, updated, removed or the lease is expired. So a command executed only
+ * after its claim is executed by one process at time.
+ * Use only one store for every file inside the same process.
+ */
+@SuppressWarnings("unused")
+public class ScQueueStore implements Closeable {
+
+    /**
+     * Static and constant
+     */
+
+    // The file signature and format version
+    private static final int MAGIC = 0x53435153;
+    private static final int VERSION = 1;
+
+    // The header size and the positions of its values
+    private static final int HEADER_SIZE = 64;
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_END = 8;
+    private static final int HEADER_GENERATION = 16;
+    private static final int HEADER_NEXT_ID = 24;
+    private static final int HEADER_NEXT_REVISION = 32;
+    private static final int HEADER_START = 40;
+
+    // The record types
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_REMOVE = 2;
+    private static final byte RECORD_CLAIM = 3;
+
+    // The record sizes: every record start with its length, its type and the record id
+    private static final int RECORD_HEADER = 4 + 1 + 8;
+    private static final int PUT_HEADER = RECORD_HEADER + 8;
+    private static final int CLAIM_SIZE = RECORD_HEADER + 8 + 8;
+
+    // Min size of a mapped segment of records
+    private static final int SEGMENT_SIZE = 1024 * 1024;
+    // Min file size before to compact it
+    private static final long COMPACT_SIZE = 1024 * 1024;
+    // Default claim lease time in milliseconds
+    private static final long DEFAULT_LEASE_TIME = 2 * 60 * 1000;
+
+    // The locks of the files opened inside this process.
+    // The file locks are held by the whole process so they can not serialize the threads.
+    private static final ConcurrentHashMap<String, ReentrantLock> LOCKS =
+            new ConcurrentHashMap<>();
+
+
+    /**
+     * Private variables
+     */
+
+    private File mFile = null;                  // The store file
+    private RandomAccessFile mAccess = null;    // The opened file
+    private FileChannel mChannel = null;        // The file channel
+    private MappedByteBuffer mHeader = null;    // The mapped header
+    private MappedByteBuffer mSegment = null;   // The mapped part of the records
+    private long mSegmentStart = 0;             // The segment position inside the file
+    private ReentrantLock mLock = null;         // The process lock of the file
+    private long mOwner = 0;                    // This store id inside the claims
+    private long mLeaseTime = DEFAULT_LEASE_TIME;   // Claim lease time
+
+    private long mGeneration = 0;               // The file compaction read
+    private long mReadOffset = 0;               // The file position read
+    private long mLiveBytes = 0;                // The size of the live records
+
+    // The live records by id
+    private HashMap<Long, Slot> mSlots = null;
+    // The records changed and removed by the other writers not yet polled
+    private LinkedHashSet<Long> mChanged = null;
+    private LinkedHashSet<Long> mRemoved = null;
+
+
+    /**
+     * Private methods
+     */
+
+    // Take the process and the file locks
+    private FileLock lock() throws IOException {
+        this.mLock.lock();
+        try {
+            return this.mChannel.lock();
+        } catch (IOException | RuntimeException e) {
+            this.mLock.unlock();
+            throw e;
+        }
+    }
+
+    // Release the locks
+    private void unlock(FileLock lock) throws IOException {
+        try {
+            lock.release();
+        } finally {
+            this.mLock.unlock();
+        }
+    }
+
+    // Get the current time shared between the processes
+    private static long now() {
+        return System.currentTimeMillis();
+    }
+
+    // Get and increment a header counter
+    private long nextCounter(int position) {
+        long value = this.mHeader.getLong(position);
+        this.mHeader.putLong(position, value + 1);
+        return value;
+    }
+
+    // Apply a record read from the file.
+    // The own records are already known by the caller so they are not polled.
+    private void apply(ByteBuffer buffer, int index, long position, boolean own)
+            throws IOException {
+        // Read the record header
+        int length = buffer.getInt(index);
+        byte type = buffer.get(index + 4);
+        long id = buffer.getLong(index + 5);
+        Slot slot = this.mSlots.get(id);
+
+        switch (type) {
+            case RECORD_PUT:
+                // Create or replace, a put release the claim too
+                if (slot == null) {
+                    slot = new Slot();
+                    this.mSlots.put(id, slot);
+                } else {
+                    this.mLiveBytes -= slot.mLength + PUT_HEADER;
+                }
+                slot.mRevision = buffer.getLong(index + RECORD_HEADER);
+                slot.mPosition = position + PUT_HEADER;
+                slot.mLength = length - PUT_HEADER;
+                slot.mOwner = 0;
+                slot.mLeaseUntil = 0;
+                this.mLiveBytes += length;
+
+                // Hold the change
+                if (own) slot.mSeen = slot.mRevision;
+                else this.mChanged.add(id);
+                break;
+
+            case RECORD_REMOVE:
+                // Check if exists
+                if (slot == null) break;
+                this.mSlots.remove(id);
+                this.mLiveBytes -= slot.mLength + PUT_HEADER;
+
+                // Hold the change only if the record was already polled
+                this.mChanged.remove(id);
+                if (!own && slot.mSeen != 0) this.mRemoved.add(id);
+                break;
+
+            case RECORD_CLAIM:
+                // Check if exists
+                if (slot == null) break;
+                slot.mOwner = buffer.getLong(index + RECORD_HEADER);
+                slot.mLeaseUntil = buffer.getLong(index + RECORD_HEADER + 8);
+                break;
+
+            default:
+                throw new IOException("Corrupted queue store: " + this.mFile);
+        }
+    }
+
+    // Get the segment mapping the passed file range.
+    // The current segment is used while it contain the range, else a new one is mapped
+    // starting from the range.
+    private MappedByteBuffer segment(long position, int length) throws IOException {
+        if (this.mSegment == null || position < this.mSegmentStart ||
+                position + length > this.mSegmentStart + this.mSegment.capacity()) {
+            this.mSegment = this.mChannel.map(FileChannel.MapMode.READ_WRITE,
+                    position, Math.max(SEGMENT_SIZE, length));
+            this.mSegmentStart = position;
+        }
+        return this.mSegment;
+    }
+
+    // Read the records from the last read position to the passed one
+    private void read(long end, boolean own) throws IOException {
+        while (this.mReadOffset < end) {
+            // Read the record length
+            if (end - this.mReadOffset < RECORD_HEADER)
+                throw new IOException("Corrupted queue store: " + this.mFile);
+            MappedByteBuffer segment = this.segment(this.mReadOffset, RECORD_HEADER);
+            int length = segment.getInt((int) (this.mReadOffset - this.mSegmentStart));
+            if (length < RECORD_HEADER || length > end - this.mReadOffset)
+                throw new IOException("Corrupted queue store: " + this.mFile);
+
+            // Apply and go to the next
+            segment = this.segment(this.mReadOffset, length);
+            this.apply(segment, (int) (this.mReadOffset - this.mSegmentStart),
+                    this.mReadOffset, own);
+            this.mReadOffset += length;
+        }
+    }
+
+    // Read again all the file after a compaction.
+    // The polled revisions are kept so only the real changes are polled.
+    private void reload() throws IOException {
+        // Reset
+        HashMap<Long, Slot> old = this.mSlots;
+        this.mSlots = new HashMap<>();
+        this.mSegment = null;
+        this.mReadOffset = this.mHeader.getLong(HEADER_START);
+        this.mLiveBytes = 0;
+        this.mGeneration = this.mHeader.getLong(HEADER_GENERATION);
+
+        // Read all records
+        this.read(this.mHeader.getLong(HEADER_END), true);
+
+        // Find the changes
+        this.mChanged.clear();
+        for (Map.Entry<Long, Slot> entry : this.mSlots.entrySet()) {
+            Slot previous = old.get(entry.getKey());
+            Slot slot = entry.getValue();
+            slot.mSeen = previous != null ? previous.mSeen : 0;
+            if (slot.mRevision != slot.mSeen) this.mChanged.add(entry.getKey());
+        }
+        for (Map.Entry<Long, Slot> entry : old.entrySet()) {
+            if (entry.getValue().mSeen != 0 && !this.mSlots.containsKey(entry.getKey()))
+                this.mRemoved.add(entry.getKey());
+        }
+    }
+
+    // Read the records appended by the other writers.
+    // Must be called holding the lock.
+    private void catchUp() throws IOException {
+        if (this.mHeader.getLong(HEADER_GENERATION) != this.mGeneration) this.reload();
+        else this.read(this.mHeader.getLong(HEADER_END), false);
+    }
+
+    // Append the records at the end of the file and commit them.
+    // The other processes see the mapped changes also if not forced to the disk, so only the
+    // durable records are forced.
+    // Must be called holding the lock after the catch up.
+    private void append(ByteBuffer records, boolean durable) throws IOException {
+        // Write the records
+        records.flip();
+        long end = this.mHeader.getLong(HEADER_END);
+        MappedByteBuffer segment = this.segment(end, records.remaining());
+        ByteBuffer target = segment.duplicate();
+        target.position((int) (end - this.mSegmentStart));
+        target.put(records);
+        if (durable) segment.force();
+
+        // Commit moving the end
+        long newEnd = end + records.limit();
+        this.mHeader.putLong(HEADER_END, newEnd);
+        if (durable) this.mHeader.force();
+
+        // Apply
+        this.read(newEnd, true);
+    }
+
+    // Write a put record
+    private void writePut(ByteBuffer records, long id, byte[] data) {
+        records.putInt(PUT_HEADER + data.length);
+        records.put(RECORD_PUT);
+        records.putLong(id);
+        records.putLong(this.nextCounter(HEADER_NEXT_REVISION));
+        records.put(data);
+    }
+
+    // Write a remove record
+    private static void writeRemove(ByteBuffer records, long id) {
+        records.putInt(RECORD_HEADER);
+        records.put(RECORD_REMOVE);
+        records.putLong(id);
+    }
+
+    // Write a claim record, a zero owner release the claim
+    private static void writeClaim(ByteBuffer records, long id, long owner, long leaseUntil) {
+        records.putInt(CLAIM_SIZE);
+        records.put(RECORD_CLAIM);
+        records.putLong(id);
+        records.putLong(owner);
+        records.putLong(leaseUntil);
+    }
+
+    // Read the data of a record
+    private byte[] readData(Slot slot) throws IOException {
+        byte[] data = new byte[slot.mLength];
+        ByteBuffer source = this.segment(slot.mPosition, slot.mLength).duplicate();
+        source.position((int) (slot.mPosition - this.mSegmentStart));
+        source.get(data);
+        return data;
+    }
+
+    // Check if a record is claimed by another store
+    private boolean isClaimedByOther(Slot slot) {
+        return slot.mOwner != 0 && slot.mOwner != this.mOwner &&
+                slot.mLeaseUntil > ScQueueStore.now();
+    }
+
+    // Copy the live records in a free part of the file and switch the header on them.
+    // The copy is written before the current records start, if there is room, else after the
+    // end, so the committed records are never touched until the header is switched.
+    // Must be called holding the lock after the catch up.
+    private void compactFile() throws IOException {
+        // Sort the live records by position to keep their order
+        ArrayList<Map.Entry<Long, Slot>> live = new ArrayList<>(this.mSlots.entrySet());
+        Collections.sort(live, new Comparator<Map.Entry<Long, Slot>>() {
+            @Override
+            public int compare(Map.Entry<Long, Slot> left, Map.Entry<Long, Slot> right) {
+                long difference = left.getValue().mPosition - right.getValue().mPosition;
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+
+        // Write the live records and their active claims
+        ByteBuffer records = ByteBuffer.allocate(
+                (int) this.mLiveBytes + live.size() * CLAIM_SIZE);
+        for (Map.Entry<Long, Slot> entry : live) {
+            Slot slot = entry.getValue();
+            records.putInt(PUT_HEADER + slot.mLength);
+            records.put(RECORD_PUT);
+            records.putLong(entry.getKey());
+            records.putLong(slot.mRevision);
+            records.put(this.readData(slot));
+        }
+        long now = ScQueueStore.now();
+        for (Map.Entry<Long, Slot> entry : live) {
+            Slot slot = entry.getValue();
+            if (slot.mOwner != 0 && slot.mLeaseUntil > now)
+                ScQueueStore.writeClaim(records, entry.getKey(), slot.mOwner, slot.mLeaseUntil);
+        }
+        records.flip();
+
+        // Find where to write the copy
+        long end = this.mHeader.getLong(HEADER_END);
+        boolean before = HEADER_SIZE + records.limit() <= this.mHeader.getLong(HEADER_START);
+        long start = before ? HEADER_SIZE : end;
+
+        // Write the copy and force it to the disk before the commit
+        if (records.hasRemaining()) {
+            MappedByteBuffer segment = this.segment(start, records.remaining());
+            ByteBuffer target = segment.duplicate();
+            target.position((int) (start - this.mSegmentStart));
+            target.put(records);
+            segment.force();
+        }
+
+        // Commit with a new generation so the other stores read the file again.
+        // The header values are inside the same disk sector so they are written together.
+        end = start + records.limit();
+        this.mHeader.putLong(HEADER_START, start);
+        this.mHeader.putLong(HEADER_END, end);
+        this.mHeader.putLong(HEADER_GENERATION, this.mGeneration + 1);
+        this.mHeader.force();
+
+        // The old records are not used anymore, so if the copy is at the file start the rest
+        // can be truncated.
+        // The segment is released before the truncation so it is never used past the end.
+        this.mSegment = null;
+        if (before) this.mChannel.truncate(end);
+        this.reload();
+    }
+
+    // Compact the file if most of it is made by old records.
+    // Must be called holding the lock after the catch up.
+    private void compactIfNeeded() throws IOException {
+        long size = this.mHeader.getLong(HEADER_END) - this.mHeader.getLong(HEADER_START);
+        if (size > COMPACT_SIZE && this.mLiveBytes * 2 < size) this.compactFile();
+    }
+
+
+    /**
+     * Public methods
+     */
+
+    // Constructor.
+    // Open the store file creating it if not exists.
+    public ScQueueStore(File file) throws IOException {
+        // Init
+        this.mFile = file;
+        this.mSlots = new HashMap<>();
+        this.mChanged = new LinkedHashSet<>();
+        this.mRemoved = new LinkedHashSet<>();
+
+        // A random id so the claims of the different processes are distinguished
+        SecureRandom random = new SecureRandom();
+        while (this.mOwner == 0) this.mOwner = random.nextLong();
+
+        // The process lock of the file
+        ReentrantLock lock = new ReentrantLock();
+        ReentrantLock existing = LOCKS.putIfAbsent(file.getCanonicalPath(), lock);
+        this.mLock = existing != null ? existing : lock;
+
+        // Open
+        this.mAccess = new RandomAccessFile(file, "rw");
+        this.mChannel = this.mAccess.getChannel();
+
+        try {
+            FileLock fileLock = this.lock();
+            try {
+                // Map the header and create it if the file is new
+                this.mHeader = this.mChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+                if (this.mHeader.getInt(HEADER_MAGIC) == 0) {
+                    this.mHeader.putInt(HEADER_MAGIC, MAGIC);
+                    this.mHeader.putInt(HEADER_VERSION, VERSION);
+                    this.mHeader.putLong(HEADER_END, HEADER_SIZE);
+                    this.mHeader.putLong(HEADER_GENERATION, 1);
+                    this.mHeader.putLong(HEADER_NEXT_ID, 1);
+                    this.mHeader.putLong(HEADER_NEXT_REVISION, 1);
+                    this.mHeader.putLong(HEADER_START, HEADER_SIZE);
+                    this.mHeader.force();
+
+                } else if (this.mHeader.getInt(HEADER_MAGIC) != MAGIC ||
+                        this.mHeader.getInt(HEADER_VERSION) != VERSION) {
+                    throw new IOException("Not a queue store: " + file);
+                }
+
+                // Read the existing records
+                this.reload();
+
+            } finally {
+                this.unlock(fileLock);
+            }
+
+        } catch (IOException | RuntimeException e) {
+            this.mAccess.close();
+            throw e;
+        }
+    }
+
+    // Add a new record.
+    // Return its id.
+    public synchronized long put(byte[] data) throws IOException {
+        return this.putAll(Collections.singletonList(data))[0];
+    }
+
+    // Add more records with a single write.
+    // Return their ids in the same order.
+    public synchronized long[] putAll(List<byte[]> data) throws IOException {
+        // Check for empty values
+        long[] ids = new long[data.size()];
+        if (ids.length == 0) return ids;
+
+        // Get the size
+        int size = 0;
+        for (byte[] item : data) size += PUT_HEADER + item.length;
+
+        FileLock lock = this.lock();
+        try {
+            // Write the records
+            this.catchUp();
+            ByteBuffer records = ByteBuffer.allocate(size);
+            for (int index = 0; index < ids.length; index++) {
+                ids[index] = this.nextCounter(HEADER_NEXT_ID);
+                this.writePut(records, ids[index], data.get(index));
+            }
+            this.append(records, true);
+            this.compactIfNeeded();
+            return ids;
+
+        } finally {
+            this.unlock(lock);
+        }
+    }
+
+    // Replace the data of a record releasing its claim.
+    // Return false if the record was removed, if it was changed by another writer after the
+    // last poll or if it is claimed by another store.
+    public synchronized boolean update(long id, byte[] data) throws IOException {
+        FileLock lock = this.lock();
+        try {
+            // Check the record
+            this.catchUp();
+            Slot slot = this.mSlots.get(id);
+            if (slot == null || slot.mRevision != slot.mSeen || this.isClaimedByOther(slot))
+                return false;
+
+            // Write
+            ByteBuffer records = ByteBuffer.allocate(PUT_HEADER + data.length);
+            this.writePut(records, id, data);
+            this.append(records, true);
+            this.compactIfNeeded();
+            return true;
+
+        } finally {
+            this.unlock(lock);
+        }
+    }
+
+    // Remove a record.
+    // Return false if not exists.
+    public synchronized boolean remove(long id) throws IOException {
+        return this.removeAll(Collections.singletonList(id)) > 0;
+    }
+
+    // Remove more records with a single write.
+    // Return the number of records removed.
+    public synchronized int removeAll(Collection<Long> ids) throws IOException {
+        // Check for empty values
+        if (ids.isEmpty()) return 0;
+
+        FileLock lock = this.lock();
+        try {
+            // Find the existing records
+            this.catchUp();
+            ArrayList<Long> found = new ArrayList<>();
+            for (Long id : ids) {
+                if (this.mSlots.containsKey(id)) found.add(id);
+            }
+            if (found.isEmpty()) return 0;
+
+            // Write
+            ByteBuffer records = ByteBuffer.allocate(found.size() * RECORD_HEADER);
+            for (Long id : found) ScQueueStore.writeRemove(records, id);
+            this.append(records, true);
+            this.compactIfNeeded();
+            return found.size();
+
+        } finally {
+            this.unlock(lock);
+        }
+    }
+
+    // Claim a record for the lease time.
+    // Return false if the record was removed, if it was changed by another writer after the
+    // last poll or if it is claimed by another store.
+    public synchronized boolean claim(long id) throws IOException {
+        FileLock lock = this.lock();
+        try {
+            // Check the record
+            this.catchUp();
+            Slot slot = this.mSlots.get(id);
+            if (slot == null || slot.mRevision != slot.mSeen || this.isClaimedByOther(slot))
+                return false;
+
+            // Write
+            ByteBuffer records = ByteBuffer.allocate(CLAIM_SIZE);
+            ScQueueStore.writeClaim(records, id, this.mOwner,
+                    ScQueueStore.now() + this.mLeaseTime);
+            this.append(records, false);
+            return true;
+
+        } finally {
+            this.unlock(lock);
+        }
+    }
+
+    // Release the claim of a record without change it.
+    // Return false if the record is not claimed by this store.
+    public synchronized boolean release(long id) throws IOException {
+        FileLock lock = this.lock();
+        try {
+            // Check the record
+            this.catchUp();
+            Slot slot = this.mSlots.get(id);
+            if (slot == null || slot.mOwner != this.mOwner) return false;
+
+            // Write
+            ByteBuffer records = ByteBuffer.allocate(CLAIM_SIZE);
+            ScQueueStore.writeClaim(records, id, 0, 0);
+            this.append(records, false);
+            return true;
+
+        } finally {
+            this.unlock(lock);
+        }
+    }
+
+    // Get the records added, changed or removed by the other writers after the last poll.
+    // If nobody wrote the file the check do not take any lock.
+    public synchronized Changes poll() throws IOException {
+        // Holder
+        Changes changes = new Changes();
+
+        // Check if something changed
+        if (this.mHeader.getLong(HEADER_GENERATION) == this.mGeneration &&
+                this.mHeader.getLong(HEADER_END) == this.mReadOffset &&
+                this.mChanged.isEmpty() && this.mRemoved.isEmpty())
+            return changes;
+
+        FileLock lock = this.lock();
+        try {
+            // Read the new records
+            this.catchUp();
+
+            // Fill the changes
+            for (Long id : this.mChanged) {
+                Slot slot = this.mSlots.get(id);
+                if (slot == null || slot.mRevision == slot.mSeen) continue;
+                changes.mChanged.add(new Record(id, this.readData(slot)));
+                slot.mSeen = slot.mRevision;
+            }
+            changes.mRemoved.addAll(this.mRemoved);
+
+            // Reset
+            this.mChanged.clear();
+            this.mRemoved.clear();
+            return changes;
+
+        } finally {
+            this.unlock(lock);
+        }
+    }
+
+    // Get the ids of the records already known by this store: polled or written by it
+    public synchronized List<Long> getKnownIds() {
+        ArrayList<Long> ids = new ArrayList<>(this.mSlots.size());
+        for (Map.Entry<Long, Slot> entry : this.mSlots.entrySet()) {
+            if (entry.getValue().mSeen != 0) ids.add(entry.getKey());
+        }
+        return ids;
+    }
+
+    // Compact the file rewriting only the live records
+    public synchronized void compact() throws IOException {
+        FileLock lock = this.lock();
+        try {
+            this.catchUp();
+            this.compactFile();
+        } finally {
+            this.unlock(lock);
+        }
+    }
+
+    // Close the file
+    @Override
+    public synchronized void close() throws IOException {
+        this.mLock.lock();
+        try {
+            this.mAccess.close();
+        } finally {
+            this.mLock.unlock();
+        }
+    }
+
+
+    /**
+     * Public properties
+     */
+
+    // Get the store file
+    public File getFile() {
+        return this.mFile;
+    }
+
+    // Get the records count read by this store
+    public synchronized int size() {
+        return this.mSlots.size();
+    }
+
+    // Get/Set the time in milliseconds a claim is held if not released.
+    // Must be longer than the longest command execution.
+    // Default: 120000
+    public void setLeaseTime(long value) {
+        this.mLeaseTime = Math.max(0, value);
+    }
+
+    public long getLeaseTime() {
+        return this.mLeaseTime;
+    }
+
+
+    /******************************************************************************************
+     * SLOT CLASS
+     *****************************************************************************************/
+
+    /**
+     * The status of a live record
+     */
+    private static class Slot {
+
+        private long mRevision = 0;             // The last write
+        private long mSeen = 0;                 // The last write polled or written by this
+        private long mPosition = 0;             // The data position inside the file
+        private int mLength = 0;                // The data length
+        private long mOwner = 0;                // The claim owner, 0 if not claimed
+        private long mLeaseUntil = 0;           // The claim expiration time
+
+    }
+
+
+    /******************************************************************************************
+     * RECORD CLASS
+     *****************************************************************************************/
+
+    /**
+     * A record added or changed by another writer
+     */
+    public static class Record {
+
+        private long mId = 0;                   // The record id
+        private byte[] mData = null;            // The record data
+
+        // Constructor
+        private Record(long id, byte[] data) {
+            this.mId = id;
+            this.mData = data;
+        }
+
+        public long getId() {
+            return this.mId;
+        }
+
+        public byte[] getData() {
+            return this.mData;
+        }
+
+    }
+
+
+    /******************************************************************************************
+     * CHANGES CLASS
+     *****************************************************************************************/
+
+    /**
+     * The changes of the other writers
+     */
+    public static class Changes {
+
+        private ArrayList<Record> mChanged = new ArrayList<>();     // Added or changed
+        private ArrayList<Long> mRemoved = new ArrayList<>();       // Removed ids
+
+        // Constructor
+        private Changes() {
+        }
+
+        public List<Record> getChanged() {
+            return this.mChanged;
+        }
+
+        public List<Long> getRemoved() {
+            return this.mRemoved;
+        }
+
+        public boolean isEmpty() {
+            return this.mChanged.isEmpty() && this.mRemoved.isEmpty();
+        }
+
+    }
+
+}
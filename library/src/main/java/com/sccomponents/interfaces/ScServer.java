@@ -5,32 +5,72 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.pm.ApplicationInfo;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Base64;
+import android.util.Xml;
 import android.preference.PreferenceManager;
 
 import com.sccomponents.utils.ScChecker;
 
 import org.ksoap2.SoapEnvelope;
+import org.ksoap2.SoapFault;
 import org.ksoap2.serialization.Marshal;
 import org.ksoap2.serialization.PropertyInfo;
 import org.ksoap2.serialization.SoapObject;
 import org.ksoap2.serialization.SoapSerializationEnvelope;
 import org.ksoap2.transport.HttpTransportSE;
+import org.ksoap2.transport.ServiceConnection;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlSerializer;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OptionalDataException;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLHandshakeException;
 
 /**
  * Class for manage the remote server request
@@ -44,6 +84,42 @@ public class ScServer extends ScChecker {
 
     // Preferences key where save the commands queue
     private static final String PREFERENCES_KEY = "COMMANDS_QUEUE_PREFERENCES_KEY";
+    // Hedging delay used when the method latency is still unknown
+    private static final long DEFAULT_HEDGING_DELAY = 2000;
+    // Max wait slice of a blocked producer
+    private static final long BLOCK_SLICE = 100;
+    // Chunk size of the streamed requests
+    private static final int STREAMING_CHUNK_SIZE = 16 * 1024;
+    // Bytes read at once from a stream parameter, must be a multiple of 3 for the base64
+    private static final int STREAMING_READ_SIZE = 3 * 4 * 1024;
+    // Polling delay multiplier while the answer not change
+    private static final double POLL_STRETCH = 1.5;
+    // Min and max delay of a throttled failure when the server not say when try again
+    private static final long THROTTLE_DELAY = 1000;
+    private static final long MAX_THROTTLE_DELAY = 5 * 60 * 1000;
+    // Max delay before to save the changes made by code to the queued commands
+    private static final long SAVE_INTERVAL = 60 * 1000;
+    // The command flags packed inside a single field
+    private static final int FLAG_SUCCESS = 1;              // Execution finished successfully
+    private static final int FLAG_IDEMPOTENT = 1 << 1;      // Can be sent more times
+    private static final int FLAG_PERSISTENT = 1 << 2;      // Never spent
+    private static final int FLAG_TO_SAVE = 1 << 3;         // Saved with the queue
+    private static final int FLAG_AUTO_DELETE = 1 << 4;     // Deleted when spent
+    private static final int FLAG_CHANGE_DETECTION = 1 << 5;    // Skip the unchanged answers
+    private static final int FLAG_PREDECESSOR_DONE = 1 << 6;    // The predecessor succeeded
+    private static final int FLAG_HAS_SUCCESSORS = 1 << 7;  // Some command depends on this
+    private static final int FLAG_CANCELLED = 1 << 8;       // The predecessor failed
+    private static final int FLAG_HOLD = 1 << 9;            // Hold if the predecessor fail
+    private static final int FLAG_REJECTED = 1 << 10;      // Failed for good by the server
+    private static final int FLAG_OFFLINE = 1 << 11;       // Held because the device is offline
+    // The parameters of a command without parameters
+    private static final Object[] NO_PARAMS = new Object[0];
+    // The stream parameters marshal
+    private static final Marshal STREAM_MARSHAL = new MarshalStream();
+    // The status of the commands without polling and dependencies
+    private static final Extra NO_EXTRA = new Extra();
+    // Mark the threads that are solving a queue or executing its commands
+    private static final ThreadLocal<Boolean> QUEUE_THREAD = new ThreadLocal<>();
     // Emulator trigger
     private static Boolean mEmulator = null;
     // Debug trigger
@@ -56,8 +132,8 @@ public class ScServer extends ScChecker {
 
     private Context mContext = null;                    // The caller context
 
-    private String mProductionServerAddress = null;    // The production server address
     private String mTestServerAddress = null;          // The test server address
+    private ScEndpointBalancer mBalancer = null;        // The production servers addresses
 
     private String mWebServiceNameSpace = null;         // Default web service namespace
     private String mWebServiceName = null;              // Web service name
@@ -65,14 +141,58 @@ public class ScServer extends ScChecker {
     private boolean mDotNet = true;                     // If the server is .NET
     private boolean mSaveQueue = false;                 // If the queue is saved automatically
     private boolean mSavePersistentCommand = false;     // Save the persistent command type
+    private volatile boolean mQueueExecuted = false;    // Executed something after the save
+    private volatile long mSavedChanges = -1;           // The queue changes when saved
+    private volatile long mLastSave = 0;                // When the queue was saved
+    private boolean mHedging = false;                   // Hedge the idempotent commands
+    private long mHedgingDelay = 0;                     // Hedging delay, 0 for the p95
+
+    private ScLatencyTracker mLatencyTracker = null;    // The methods latencies
+    private ExecutorService mHedgingExecutor = null;    // Run the hedged requests
+
+    // The connectivity status provider, null for always connected
+    private ScConnectivityProvider mConnectivityProvider = null;
+    // The listener of the connectivity changes
+    private ScConnectivityProvider.OnConnectivityChangeListener mConnectivityListener = null;
+    // Flush the waiting commands at the next check
+    private volatile boolean mFlushRequested = false;
+
+    private volatile Executor mCallbackExecutor = null; // Listeners executor, null for direct
+    private ScCommandEventBus mEventBus = null;         // The command events subscribers
+
+    private int mMaxQueueSize = 0;                      // Max commands in queue, 0 no limit
+    private long mMaxQueueBytes = 0;                    // Max queue estimated size, 0 no limit
+    private OverflowPolicy mOverflowPolicy = OverflowPolicy.REJECT;   // The overflow policy
+    private long mBlockTimeout = 5000;                  // Max wait of a blocked producer
+    private final Object mAdmissionLock = new Object(); // Serialize the bounded adding
+    private ScServerMetrics mMetrics = null;            // The server counters
+    private volatile ScDispatcher mDispatcher = null;   // The shared dispatcher
+    private volatile ScConcurrencyLimiter mLimiter = null;  // Adaptive concurrency limit
+    private ExecutorService mWorkers = null;            // Run the commands in parallel
+    // The commands in execution of every group
+    private HashMap<String, Integer> mGroupsInFlight = null;
+    private ScClock mClock = ScClock.MONOTONIC;         // The scheduling time source
+    private volatile ScDeadLetterStore mDeadLetterStore = null; // The commands failed for good
+    private ScTransport mTransport = null;              // Default transport, null for SOAP
+    private ScTransport mSoapTransport = null;          // The built-in SOAP transport
+    private volatile ScMarshalRegistry mMarshalRegistry = null; // The SOAP parameters marshals
+    private volatile ScQueueStore mQueueStore = null;   // The queue shared between processes
+    private ScGroupScheduler mGroupScheduler = null;    // Share the executions between groups
+    private volatile int mRequestVersion = 0;           // Changed with the requests settings
+    private volatile ScFailureClassifier mFailureClassifier = null; // Classify the failures
+
+    // The transports of the methods that not use the default one
+    private ConcurrentHashMap<String, ScTransport> mMethodTransports = null;
+    // The successors released by their predecessor and not yet executed
+    private ConcurrentLinkedQueue<SchedulableCommand> mReleased = null;
 
     // The listeners
     private OnCommandListener mOnCommandListener = null;
     private OnServerSelectionListener mOnServerSelectionListener = null;
 
     // The commands queue can be asynchronous so I need a structure can be manage read and write
-    // without throw exceptions.
-    private CopyOnWriteArrayList<SchedulableCommand> mCommandQueue = null;
+    // without throw exceptions and without copy all the commands at every change.
+    private ScCommandQueue mCommandQueue = null;
 
 
     /**
@@ -99,13 +219,12 @@ public class ScServer extends ScChecker {
     // Save the command queue data persistent
     private void saveCommandsQueue() {
         // Exclude the persistent commands
-        CopyOnWriteArrayList<SchedulableCommand> filtered = new CopyOnWriteArrayList<>();
+        ArrayList<SchedulableCommand> filtered = new ArrayList<>();
 
         // Cycle all commands in queue
         for (SchedulableCommand command : this.mCommandQueue) {
             // Filter the command to save
-            if (command.willTry() && command.getToSave() &&
-                    (this.mSavePersistentCommand || !command.getPersistent())) {
+            if (this.isToSave(command)) {
                 // Add to collection
                 filtered.add(command);
             }
@@ -138,6 +257,211 @@ public class ScServer extends ScChecker {
             }
     }
 
+    // Save the commands queue only if changed from the last saving.
+    // The queue change when a command is added, removed or executed. The changes made by code
+    // to the queued commands are saved at least every minute.
+    // The shared store is already updated by every change.
+    private void saveCommandsQueueIfChanged() {
+        // Check if must save
+        if (this.mQueueStore != null || !this.mSaveQueue) return;
+        long now = this.mClock.now();
+        long changes = this.mCommandQueue.getChanges();
+        if (!this.mQueueExecuted && changes == this.mSavedChanges &&
+                now - this.mLastSave < ScServer.SAVE_INTERVAL) return;
+
+        // Hold the saved status and save
+        this.mQueueExecuted = false;
+        this.mSavedChanges = changes;
+        this.mLastSave = now;
+        this.saveCommandsQueue();
+    }
+
+    // Check if a command must be saved
+    private boolean isToSave(SchedulableCommand command) {
+        return command.willTry() && command.getToSave() &&
+                (this.mSavePersistentCommand || !command.getPersistent());
+    }
+
+    // Encode a command for the queue store
+    static byte[] encodeCommand(SchedulableCommand command) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ObjectOutputStream writer = new ObjectOutputStream(output);
+        command.writeTo(writer);
+        writer.close();
+        return output.toByteArray();
+    }
+
+    // Decode a command from the queue store
+    private SchedulableCommand decodeCommand(byte[] data)
+            throws IOException, ClassNotFoundException {
+        ObjectInputStream reader = new ObjectInputStream(new ByteArrayInputStream(data));
+        try {
+            SchedulableCommand command = new SchedulableCommand(null);
+            command.readFrom(reader);
+            return command;
+        } finally {
+            reader.close();
+        }
+    }
+
+    // Exchange the queue changes with the shared store.
+    // The new commands are added to the store, the commands removed from the queue are removed
+    // from the store and the changes of the other processes are loaded inside the queue.
+    private void syncQueueStore() {
+        // Check for empty values
+        ScQueueStore store = this.mQueueStore;
+        if (store == null) return;
+
+        synchronized (store) {
+            try {
+                // Find the stored and the new commands
+                HashMap<Long, SchedulableCommand> stored = new HashMap<>();
+                ArrayList<SchedulableCommand> added = new ArrayList<>();
+                ArrayList<byte[]> data = new ArrayList<>();
+                for (SchedulableCommand command : this.mCommandQueue) {
+                    if (command.mStoreId != 0) {
+                        stored.put(command.mStoreId, command);
+                    } else if (!command.mRunning && this.isToSave(command)) {
+                        added.add(command);
+                        data.add(ScServer.encodeCommand(command));
+                    }
+                }
+
+                // Add the new commands
+                long[] ids = store.putAll(data);
+                for (int index = 0; index < ids.length; index++) {
+                    added.get(index).mStoreId = ids[index];
+                    stored.put(ids[index], added.get(index));
+                }
+
+                // Remove the commands removed from the queue
+                ArrayList<Long> removed = new ArrayList<>();
+                for (Long id : store.getKnownIds()) {
+                    if (!stored.containsKey(id)) removed.add(id);
+                }
+                store.removeAll(removed);
+
+                // Apply the changes of the other processes
+                this.applyStoreChanges(store, store.poll(), stored);
+
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Apply the changes read from the store to the queue.
+    // The stored map hold the queue commands by store id and is updated.
+    private void applyStoreChanges(ScQueueStore store, ScQueueStore.Changes changes,
+                                   Map<Long, SchedulableCommand> stored) throws IOException {
+        // The removed commands
+        for (Long id : changes.getRemoved()) {
+            SchedulableCommand command = stored.remove(id);
+            if (command != null) {
+                command.mStoreId = 0;
+                this.mCommandQueue.remove(command);
+            }
+        }
+
+        // The added or changed commands
+        for (ScQueueStore.Record record : changes.getChanged()) {
+            // Decode.
+            // A record that can not be read is dropped.
+            SchedulableCommand command;
+            try {
+                command = this.decodeCommand(record.getData());
+            } catch (IOException | ClassNotFoundException e) {
+                e.printStackTrace();
+                store.remove(record.getId());
+                continue;
+            }
+
+            // Replace the old version
+            command.mStoreId = record.getId();
+            SchedulableCommand old = stored.put(record.getId(), command);
+            if (old != null) {
+                old.mStoreId = 0;
+                this.mCommandQueue.remove(old);
+            }
+            this.mCommandQueue.add(command);
+        }
+    }
+
+    // Move the commands not stored, like the ones loaded from the shared preferences, inside
+    // the store.
+    // The other processes sharing the store can have loaded and moved the same saved queue, so
+    // first the stored commands are loaded and the local commands equal to a stored one are
+    // dropped in favour of it.
+    private void migrateToQueueStore(ScQueueStore store) {
+        synchronized (store) {
+            try {
+                // Read the stored commands
+                ScQueueStore.Changes changes = store.poll();
+                HashSet<ByteBuffer> existing = new HashSet<>();
+                for (ScQueueStore.Record record : changes.getChanged())
+                    existing.add(ByteBuffer.wrap(record.getData()));
+
+                // Drop the local copies of the stored commands
+                for (SchedulableCommand command : this.mCommandQueue) {
+                    if (command.mStoreId == 0 && this.isToSave(command) &&
+                            existing.contains(ByteBuffer.wrap(ScServer.encodeCommand(command))))
+                        this.mCommandQueue.remove(command);
+                }
+
+                // Load the stored commands
+                this.applyStoreChanges(store, changes, new HashMap<Long, SchedulableCommand>());
+
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // Add the others
+        this.syncQueueStore();
+    }
+
+    // Claim a stored command before execute it.
+    // Return false if another process is executing it or if it was changed by another process.
+    private boolean claimStored(SchedulableCommand command) {
+        // Check for empty values
+        ScQueueStore store = this.mQueueStore;
+        if (store == null || command.mStoreId == 0) return true;
+
+        try {
+            return store.claim(command.mStoreId);
+        } catch (IOException e) {
+            // Without the claim can not be sure to be the only one
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // Write the status of a stored command after its execution releasing the claim.
+    // The spent commands are removed from the store.
+    private void releaseStored(SchedulableCommand command) {
+        // Check for empty values
+        ScQueueStore store = this.mQueueStore;
+        long id = command.mStoreId;
+        if (store == null || id == 0) return;
+
+        try {
+            if (this.isToSave(command)) {
+                // If changed by another process in the meantime the new version will be loaded
+                if (!store.update(id, ScServer.encodeCommand(command))) {
+                    command.mStoreId = 0;
+                    this.mCommandQueue.remove(command);
+                }
+            } else {
+                // Spent
+                store.remove(id);
+                command.mStoreId = 0;
+            }
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     // Load the commands queue if persistent
     @SuppressWarnings("unchecked")
     private void loadCommandsQueue() {
@@ -150,8 +474,9 @@ public class ScServer extends ScChecker {
             ByteArrayInputStream bais = new ByteArrayInputStream(value.getBytes("UTF-8"));
             ObjectInputStream ois = new ObjectInputStream(bais);
 
-            // Create the structure
-            this.mCommandQueue = (CopyOnWriteArrayList<SchedulableCommand>) ois.readObject();
+            // Fill the structure.
+            // The old versions saved a different collection type so read it as a generic one.
+            this.mCommandQueue.addAll((Collection<SchedulableCommand>) ois.readObject());
             // Close all
             ois.close();
             bais.close();
@@ -200,17 +525,80 @@ public class ScServer extends ScChecker {
         return ScServer.mDebug;
     }
 
-    // Call a remote web service methods through SOAP
-    private String callServerMethod(String methodName, Hashtable<String, Object> params)
+    // Check if the test server must be used.
+    // By default the test server is called when the application is in debug.
+    private boolean useTestServer() {
+        // Check if the test server is defined
+        if (this.mTestServerAddress != null && !this.mTestServerAddress.isEmpty()) {
+            // Check for the listener
+            if (this.mOnServerSelectionListener != null) {
+                // Call the listener methods for the result
+                return this.mOnServerSelectionListener
+                        .onServerSelection(this.onEmulator(), this.inDebug());
+            } else {
+                // Default check if in debug
+                return this.inDebug();
+            }
+        }
+        // Else
+        return false;
+    }
+
+    // Drop the requests encoded with the old settings
+    private void changeRequests() {
+        this.mRequestVersion++;
+    }
+
+    // Get the version of the requests settings.
+    // Include the marshals registry version because the registry can be changed in place.
+    private long getRequestsVersion() {
+        return ((long) this.mRequestVersion << 32) |
+                (this.mMarshalRegistry.getVersion() & 0xFFFFFFFFL);
+    }
+
+    // Create the SOAP envelope with the server settings
+    private SoapSerializationEnvelope createEnvelope() {
+        // Create
+        SoapSerializationEnvelope envelope = new SoapSerializationEnvelope(SoapEnvelope.VER11);
+        // The server is .NET
+        envelope.dotNet = this.mDotNet;
+        // Implicit type
+        envelope.implicitTypes = true;
+
+        // Map the shared marshals
+        this.mMarshalRegistry.apply(envelope);
+        return envelope;
+    }
+
+    // Encode the SOAP request, so it can be sent to more servers or more times
+    private byte[] encodeRequest(SoapObject request) throws IOException {
+        // Attach the serializer to the request
+        SoapSerializationEnvelope envelope = this.createEnvelope();
+        envelope.setOutputSoapObject(request);
+
+        // Write the envelope
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        XmlSerializer writer = Xml.newSerializer();
+        writer.setOutput(output, "UTF-8");
+        envelope.write(writer);
+        writer.flush();
+        return output.toByteArray();
+    }
+
+    // Create the SOAP request object
+    private SoapObject createRequest(String methodName, Object[] params)
             throws Exception {
-        // Init the request
-        SoapObject request = new SoapObject(this.mWebServiceNameSpace, methodName);
+        // Holders
+        ArrayList<PropertyInfo> properties = new ArrayList<>();
+        boolean streaming = false;
+
         // Check if exists some parameters
         if (params != null)
             // Cycle all parameters to create a correct property info structure
-            for (String key : params.keySet()) {
-                // Get the value
-                Object value = params.get(key);
+            for (int index = 0; index < params.length; index += 2) {
+                // Get the name and the value
+                String key = (String) params[index];
+                Object value = params[index + 1];
 
                 // If the value is a callable function try to execute the function and
                 // store the result inside the same variable < value >
@@ -218,37 +606,271 @@ public class ScServer extends ScChecker {
                     value = ((Callable) value).call();
                 }
 
+                // The stream parameters are mapped on the base class, the others on the
+                // registered marshal type
+                boolean stream = value instanceof ScStreamParam;
+                streaming |= stream;
+
                 // Create the structure and set all values
                 PropertyInfo property = new PropertyInfo();     // Create
                 property.setName(key);                          // Name
                 property.setValue(value);                       // Value
-                property.setType(value.getClass());             // Type
+                property.setType(stream ?                       // Type
+                        ScStreamParam.class : this.mMarshalRegistry.getType(value));
 
-                // Add the parameter info to the request
-                request.addProperty(property);
+                // Add the parameter info to the list
+                properties.add(property);
             }
 
-        // Serialize the request
-        SoapSerializationEnvelope envelope = new SoapSerializationEnvelope(SoapEnvelope.VER11);
-        // The server is .NET
-        envelope.dotNet = this.mDotNet;
-        // Implicit type
-        envelope.implicitTypes = true;
-        // Attach the serializer to the request
-        envelope.setOutputSoapObject(request);
+        // Init the request.
+        // If have a stream parameter the request will be sent with a chunked body.
+        SoapObject request = streaming ?
+                new StreamingRequest(this.mWebServiceNameSpace, methodName) :
+                new SoapObject(this.mWebServiceNameSpace, methodName);
 
-        // Fix a bug with the "double" type parameters
-        MarshalDouble md = new MarshalDouble();
-        md.register(envelope);
+        // Add the parameters info to the request
+        for (PropertyInfo property : properties) {
+            request.addProperty(property);
+        }
 
-        // Create the absolute address of the server
-        String url = this.getServerAddress() + this.mWebServiceName;
-        // Create the transport
-        HttpTransportSE androidHttpTransport = new HttpTransportSE(url);
+        // Return the request
+        return request;
+    }
+
+    // Call a remote web service method through the passed exchange.
+    // The idempotent calls are hedged if the hedging is active.
+    // A request that can not be sent more times is never hedged and not sent to the next
+    // server on error.
+    // Used by the transports to share the servers selection, the failover and the hedging.
+    String callExchange(String methodName, Exchange exchange, boolean idempotent,
+                        boolean repeatable)
+            throws Exception {
+        // Hold the start time
+        long start = System.nanoTime();
+        // Call the server
+        String value = idempotent && repeatable && this.mHedging ?
+                this.callExchangeHedged(methodName, exchange) :
+                this.callRequest(methodName, exchange, null, idempotent, repeatable);
+        // Record the method latency
+        this.mLatencyTracker.record(methodName, (System.nanoTime() - start) / 1000000);
+        // Return the value
+        return value;
+    }
+
+    // Call a remote web service method sending a second identical request if the first not
+    // answer within the hedging delay.
+    // The first answer win and the other request is cancelled.
+    private String callExchangeHedged(final String methodName, final Exchange exchange)
+            throws Exception {
+        // Create the calls contexts and a completion service to get the first finished
+        final CallContext primary = new CallContext(null);
+        CallContext hedge = null;
+        ExecutorCompletionService<String> service =
+                new ExecutorCompletionService<>(this.getHedgingExecutor());
+
+        // Start the primary request
+        Future<String> primaryFuture = service.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return ScServer.this.callRequest(methodName, exchange, primary, true, true);
+            }
+        });
+        Future<String> hedgeFuture = null;
+
+        try {
+            // Wait for the primary request until the hedging delay
+            Future<String> done = service.poll(this.getHedgingDelay(methodName), TimeUnit.MILLISECONDS);
+
+            // If the primary not answer in time start the hedge request preferring another
+            // endpoint and wait for the first that finish.
+            if (done == null) {
+                final CallContext context = new CallContext(primary.getAddress());
+                hedge = context;
+                hedgeFuture = service.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return ScServer.this.callRequest(methodName, exchange, context, true, true);
+                    }
+                });
+                done = service.take();
+            }
+
+            // Try to get the result of the first finished request
+            Exception firstError;
+            try {
+                return done.get();
+
+            } catch (ExecutionException e) {
+                // Hold the error
+                firstError = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+
+            // The first finished failed so if the other request was started wait for it
+            if (hedgeFuture != null) {
+                try {
+                    return service.take().get();
+
+                } catch (ExecutionException e) {
+                    // Both failed, throw the first error
+                }
+            }
+            throw firstError;
+
+        } finally {
+            // Cancel the requests still running
+            primary.cancel();
+            primaryFuture.cancel(true);
+            if (hedge != null) hedge.cancel();
+            if (hedgeFuture != null) hedgeFuture.cancel(true);
+        }
+    }
+
+    // Get the hedging delay for the passed method.
+    // If the delay is not settled use the observed 95th percentile of the method latency.
+    private long getHedgingDelay(String methodName) {
+        // Check for the fixed delay
+        if (this.mHedgingDelay > 0) return this.mHedgingDelay;
+        // Use the method percentile
+        long delay = this.mLatencyTracker.getPercentile(methodName, 0.95);
+        return delay > 0 ? delay : ScServer.DEFAULT_HEDGING_DELAY;
+    }
 
-        // Action and call the transport
+    // Get the hedging executor creating it if needed
+    private synchronized ExecutorService getHedgingExecutor() {
+        // Check if already exists
+        if (this.mHedgingExecutor == null) {
+            // Create a pool of daemon threads that expire when not used
+            this.mHedgingExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ScServer-hedging");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        // Return the executor
+        return this.mHedgingExecutor;
+    }
+
+    // Check if the error happened while connecting, so before the request was sent
+    private static boolean isConnectError(IOException error) {
+        // The address not found or the connection refused
+        if (error instanceof UnknownHostException || error instanceof ConnectException ||
+                error instanceof NoRouteToHostException || error instanceof SSLHandshakeException)
+            return true;
+        // The connect timeout, the read timeout can come after the request was received
+        String message = error.getMessage();
+        return error instanceof SocketTimeoutException && message != null &&
+                message.toLowerCase(Locale.US).contains("connect");
+    }
+
+    // Call a remote web service method using the passed exchange.
+    // If the production servers are more than one the call is done on the best endpoint and
+    // in case of connection error on the next ones until one answer.
+    // A not idempotent request is sent to the next endpoint only if the connection failed, so
+    // when it surely not reached the server. An endpoint that answered with a HTTP error is
+    // working and the call is never sent to the next one.
+    // If a call context is passed the excluded address is tried as last.
+    // If the request is not repeatable only the first endpoint is called.
+    private String callRequest(String methodName, Exchange exchange, CallContext context,
+                               boolean idempotent, boolean repeatable)
+            throws Exception {
+        // Check for the test server
+        if (this.useTestServer()) {
+            // Call the test server directly
+            return exchange.call(this.mTestServerAddress, context);
+        }
+
+        // Get the candidates and move the excluded address at the end
+        List<ScEndpointBalancer.Endpoint> candidates = this.mBalancer.getCandidates();
+        if (context != null && context.mExcluded != null) {
+            for (int index = 0; index < candidates.size(); index++) {
+                if (candidates.get(index).getAddress().equals(context.mExcluded)) {
+                    candidates.add(candidates.remove(index));
+                    break;
+                }
+            }
+        }
+
+        // Cycle all production endpoints by preference
+        IOException lastError = null;
+        for (ScEndpointBalancer.Endpoint endpoint : candidates) {
+            // Check if the call was cancelled
+            if (context != null && context.isCancelled())
+                throw new InterruptedIOException("Call cancelled");
+
+            // Hold the start time
+            long start = System.nanoTime();
+            try {
+                // Call the server
+                String value = exchange.call(endpoint.getAddress(), context);
+                // Record the latency and return the value
+                this.mBalancer.recordSuccess(endpoint, (System.nanoTime() - start) / 1000000);
+                return value;
+
+            } catch (SoapFault | ScServerFault e) {
+                // The server answered with a fault so the endpoint is working
+                this.mBalancer.recordSuccess(endpoint, (System.nanoTime() - start) / 1000000);
+                throw e;
+
+            } catch (IOException e) {
+                // If the call was cancelled or the thread interrupted the error is not caused
+                // by the endpoint, so stop here without trying the next one
+                if ((context != null && context.isCancelled()) ||
+                        Thread.currentThread().isInterrupted())
+                    throw e;
+
+                // A client error mean that the endpoint answered
+                int status = ScFailureClassifier.statusOf(e);
+                if (status > 0 && status < 500) {
+                    this.mBalancer.recordSuccess(endpoint, (System.nanoTime() - start) / 1000000);
+                    throw e;
+                }
+
+                // Record the failure and try the next endpoint if the request can be sent again
+                this.mBalancer.recordFailure(endpoint);
+                if (!repeatable || !(idempotent || (status == 0 && ScServer.isConnectError(e))))
+                    throw e;
+                lastError = e;
+
+            } catch (Exception e) {
+                // The server answered with something not understandable
+                this.mBalancer.recordFailure(endpoint);
+                throw e;
+            }
+        }
+
+        // No endpoint answered
+        if (lastError != null) throw lastError;
+        throw new IOException("No server address defined");
+    }
+
+    // Call a remote web service method on a specific server address.
+    // Send the already encoded request or, if null, stream the request.
+    private String callServerAddress(String address, String methodName, SoapObject request,
+                                     byte[] body, CallContext context)
+            throws Exception {
+        // The envelope read the answer
+        SoapSerializationEnvelope envelope = this.createEnvelope();
+
+        // Create the absolute address of the server and the action
+        String url = address + this.mWebServiceName;
         String soapAction = this.mWebServiceNameSpace + methodName;
-        androidHttpTransport.call(soapAction, envelope);
+
+        // Check if must stream the request
+        if (body == null) {
+            // Encode the stream parameters on the fly and call the server
+            envelope.setOutputSoapObject(request);
+            ScServer.STREAM_MARSHAL.register(envelope);
+            this.callStreaming(url, address, soapAction, envelope, context);
+
+        } else {
+            // Call the transport sending the encoded request.
+            // If have a call context the transport hold the connection so can be cancelled.
+            new EncodedTransport(url, address, body, context).call(soapAction, envelope);
+        }
+
         // Wait for a response from the server
         Object response = envelope.getResponse();
 
@@ -268,36 +890,701 @@ public class ScServer extends ScChecker {
         }
     }
 
+    // Send the envelope writing it directly on the connection with a chunked body, so the
+    // stream parameters are never fully held in memory. The answer is parsed inside the envelope.
+    private void callStreaming(String url, String address, String soapAction,
+                               SoapSerializationEnvelope envelope, CallContext context)
+            throws Exception {
+        // Check if cancelled before open the connection
+        if (context != null && context.isCancelled())
+            throw new InterruptedIOException("Call cancelled");
+
+        // Create the connection
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        if (context != null) context.setConnection(address, connection);
+
+        try {
+            // Settings
+            connection.setDoOutput(true);
+            connection.setChunkedStreamingMode(ScServer.STREAMING_CHUNK_SIZE);
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("User-Agent", "ksoap2-android/2.6.0+");
+            connection.setRequestProperty("SOAPAction", "\"" + soapAction + "\"");
+            connection.setRequestProperty("Content-Type", "text/xml;charset=utf-8");
+            connection.setRequestProperty("Accept-Encoding", "identity");
+
+            // Write the envelope
+            OutputStream output = connection.getOutputStream();
+            try {
+                XmlSerializer writer = Xml.newSerializer();
+                writer.setOutput(output, "UTF-8");
+                envelope.write(writer);
+                writer.flush();
+            } finally {
+                output.close();
+            }
+
+            // Get the answer.
+            // The SOAP faults are returned with an error status so read the error stream too.
+            int status = connection.getResponseCode();
+            long retryAfter = ScFailureClassifier.parseRetryAfter(
+                    connection.getHeaderField("Retry-After"));
+            InputStream input = status >= 400 ?
+                    connection.getErrorStream() : connection.getInputStream();
+            if (input == null) throw new ScHttpError(status, retryAfter);
+
+            // Parse the answer
+            try {
+                XmlPullParser parser = Xml.newPullParser();
+                parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+                parser.setInput(input, null);
+                envelope.parse(parser);
+
+            } catch (XmlPullParserException e) {
+                // Not a SOAP answer so report the status if is an error
+                if (status >= 400)
+                    throw new ScHttpError(status, retryAfter);
+                throw e;
+
+            } finally {
+                input.close();
+            }
+
+        } finally {
+            // Close the connection
+            connection.disconnect();
+        }
+    }
+
     // Solve the commands queue list.
-    // NB: this method is called from an asynchronous timer.
-    private void solveQueue() {
+    // NB: this method is called from an asynchronous timer or from the simulator.
+    void solveQueue() {
         // Spent commands holder
         ArrayList<SchedulableCommand> toRemove = new ArrayList<>();
+        // Due commands by group in the queue order
+        LinkedHashMap<String, ArrayDeque<SchedulableCommand>> due = new LinkedHashMap<>();
+
+        // Share the queue changes with the other processes
+        this.syncQueueStore();
+
+        // When offline the commands are held. When the connection come back the waiting
+        // commands are flushed without wait for their delay.
+        boolean connected = this.isConnected();
+        boolean flush = connected && this.mFlushRequested;
+        if (flush) this.mFlushRequested = false;
+
+        // Batch the events raised while solving the queue
+        boolean marked = ScServer.markQueueThread();
+        this.mEventBus.beginBatch();
+        try {
+            // Collect the due commands.
+            // The flush need all the commands waiting for their delay so scan the whole queue,
+            // else take only the due ones from the next execution index.
+            if (flush) this.scanQueue(toRemove, due);
+            else if (connected) this.pollDueCommands(toRemove, due);
+
+            // Execute the due commands within the check budget sharing it between the groups.
+            // The commands run one at time so the groups limits are not applied.
+            // Check again because an execution can move the next commands of its group.
+            int budget = this.mGroupScheduler.getCheckBudget();
+            for (SchedulableCommand command : this.mGroupScheduler.pick(
+                    due, null, budget > 0 ? budget : Integer.MAX_VALUE)) {
+                if ((command.needToExecute() || (flush && command.needToFlush())) &&
+                        command.tryStart()) {
+                    // Execute the command and wait for answer.
+                    try {
+                        command.execute();
+                    } finally {
+                        command.finish();
+                    }
+                    // Remove it soon if spent
+                    if (this.isRemovable(command)) toRemove.add(command);
+                }
+            }
+
+            // Index again the due commands not executed, they wait the next check
+            this.returnDueCommands(due, flush);
+
+            // Execute the successors released by the executions
+            this.executeReleased();
 
+        } finally {
+            // Deliver the batched events, also if an execution failed, so the batch of this
+            // thread is always closed
+            this.mEventBus.endBatch();
+            if (marked) ScServer.QUEUE_THREAD.remove();
+        }
+
+        // Remove all spent command from the queue
+        this.removeSpentCommands(toRemove);
+
+        // Save if needed
+        this.saveCommandsQueueIfChanged();
+    }
+
+    // Collect the spent and the due or to flush commands cycling all the queue
+    private void scanQueue(List<SchedulableCommand> toRemove,
+                           Map<String, ArrayDeque<SchedulableCommand>> due) {
         // Cycle all commands in queue
         for (SchedulableCommand command : this.mCommandQueue) {
             // Check if the command is already spent
             if (!command.willTry()) {
                 // Add this command to spent list to be removed forward but only if the
-                // auto-delete trigger is true
-                if (command.mAutoDelete) {
-                    toRemove.add(command);
-                }
+                // auto-delete trigger is true or if it failed and must be moved to the
+                // dead letters.
+                if (this.isRemovable(command)) toRemove.add(command);
 
             } else
                 // If not spent check id need to be executed
-                if (command.needToExecute()) {
-                    // Execute the command and wait for answer.
-                    command.execute();
+                if (command.needToExecute() || command.needToFlush()) {
+                    ScServer.addDue(due, command);
                 }
         }
+    }
+
+    // Get the due commands of every group from the next execution index.
+    // The commands of a group are taken from the index in the queue order only when the group
+    // scheduler ask for them, so a check read only the commands it execute and not all the due
+    // ones. The spent commands found are added to the remove list.
+    private void pollDueCommands(List<SchedulableCommand> toRemove,
+                                 Map<String, ArrayDeque<SchedulableCommand>> due) {
+        // Move the commands due now to their group
+        this.mCommandQueue.promote(this.mClock.now());
+        // Create the lists of every group with due commands
+        for (String group : this.mCommandQueue.getReadyGroups())
+            due.put(group, new DueCommands(group, toRemove));
+    }
+
+    // Solve the commands queue executing the due commands in parallel within the concurrency
+    // limit.
+    // NB: this method is called from an asynchronous timer.
+    private void solveQueueConcurrent() {
+        // Get the limiter
+        ScConcurrencyLimiter limiter = this.mLimiter;
+        if (limiter == null) return;
+
+        // Batch the events of this check, the workers share the batch and the last one
+        // deliver it
+        this.mEventBus.beginBatch();
+        try {
+            // Start first the released successors, after the other due commands
+            this.startReleased();
+            ArrayList<SchedulableCommand> due =
+                    this.collectDueCommands(limiter.getAvailable());
+
+            // Cycle all due commands until the limit is reached
+            for (int index = 0; index < due.size(); index++) {
+                if (!this.startConcurrent(due.get(index))) {
+                    this.returnDueCommands(due.subList(index, due.size()));
+                    break;
+                }
+            }
+
+        } finally {
+            this.mEventBus.endBatch();
+        }
+    }
+
+    // Start a command on a worker within the concurrency limit.
+    // When finished the successors it released are started too.
+    // Return false if the limit is reached.
+    private boolean startConcurrent(final SchedulableCommand command) {
+        // Check the limit
+        if (!this.acquireSlot(command)) return false;
+        // Start the command if not already started by someone else
+        if (!command.tryStart()) {
+            this.releaseSlot(command);
+            return true;
+        }
+        // Execute on a worker inside the batch of the starting thread
+        final ScCommandEventBus.Batch batch = this.mEventBus.shareBatch();
+        this.getWorkers().execute(new Runnable() {
+            @Override
+            public void run() {
+                ScServer.this.mEventBus.joinBatch(batch);
+                try {
+                    ScServer.this.executeDispatched(command);
+                    ScServer.this.startReleased();
+
+                } finally {
+                    ScServer.this.mEventBus.endBatch();
+                }
+            }
+        });
+        return true;
+    }
+
+    // Start the released successors on the workers within the concurrency limit.
+    // The successors that not find a free slot are held for the next check.
+    private void startReleased() {
+        // Check the limiter
+        if (this.mLimiter == null) return;
+
+        // Cycle all released successors
+        SchedulableCommand successor;
+        while ((successor = this.mReleased.peek()) != null) {
+            // Start it if still due
+            if (this.isConnected() && this.mCommandQueue.contains(successor) &&
+                    successor.needToExecute() && !this.startConcurrent(successor))
+                return;
+            this.mReleased.remove(successor);
+        }
+    }
+
+    // Get the workers executor creating it if needed
+    private synchronized ExecutorService getWorkers() {
+        // Check if already exists
+        if (this.mWorkers == null) {
+            // Create a pool of daemon threads that expire when not used.
+            // The concurrency limiter bound the threads number.
+            this.mWorkers = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(ScServer.asQueueThread(runnable),
+                            "ScServer-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        // Return the executor
+        return this.mWorkers;
+    }
+
+    // Get how many commands can be started now
+    int getDispatchCapacity() {
+        ScConcurrencyLimiter limiter = this.mLimiter;
+        return limiter != null ? limiter.getAvailable() : Integer.MAX_VALUE;
+    }
+
+    // Take a slot of the concurrency limit for a command.
+    // Return false if the limit is reached.
+    boolean acquireSlot(SchedulableCommand command) {
+        // Check the limiter
+        ScConcurrencyLimiter limiter = this.mLimiter;
+        if (limiter == null) return true;
+        if (!limiter.tryAcquire()) return false;
+        // Hold the limiter so the slot is released on the same one
+        command.mSlot = limiter;
+        command.mLastLatency = -1;
+        return true;
+    }
+
+    // Release the slot of a command passing its latency and errors to the limiter
+    void releaseSlot(SchedulableCommand command) {
+        // Check if have a slot
+        ScConcurrencyLimiter limiter = command.mSlot;
+        if (limiter == null) return;
+        command.mSlot = null;
+
+        // Only the connection errors mean overload, the server faults and the permanent
+        // failures not.
+        // If the command was not executed the latency is negative and nothing is learned.
+        Exception error = command.isError() ? command.getLastError() : null;
+        boolean failed = command.mLastLatency >= 0 &&
+                error instanceof IOException && !ScServer.isFault(error) &&
+                !command.getFlag(ScServer.FLAG_REJECTED);
+        limiter.release(command.mLastLatency, failed);
+    }
+
+    // Mark the current thread as a queue thread.
+    // Return false if already marked.
+    private static boolean markQueueThread() {
+        if (ScServer.QUEUE_THREAD.get() != null) return false;
+        ScServer.QUEUE_THREAD.set(Boolean.TRUE);
+        return true;
+    }
+
+    // Wrap the body of a thread that solve the queues or execute their commands, so the
+    // thread is marked as queue thread for all its life
+    static Runnable asQueueThread(final Runnable body) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                ScServer.markQueueThread();
+                body.run();
+            }
+        };
+    }
+
+    // Add a due command to the list of its group
+    private static void addDue(Map<String, ArrayDeque<SchedulableCommand>> due,
+                               SchedulableCommand command) {
+        ArrayDeque<SchedulableCommand> group = due.get(command.getGroup());
+        if (group == null) {
+            group = new ArrayDeque<>();
+            due.put(command.getGroup(), group);
+        }
+        group.add(command);
+    }
+
+    // Do the queue housekeeping and get the commands that must be executed.
+    // Called by the dispatcher from its scheduling thread.
+    // The executions are shared between the groups by the group scheduler, within the limit
+    // of commands in execution of every group.
+    // The due commands are taken from the next execution index, so only they are read and
+    // not the whole queue. The returned commands not started must be passed back to
+    // < returnDueCommands >.
+    ArrayList<SchedulableCommand> collectDueCommands(int max) {
+        // Holders
+        ArrayList<SchedulableCommand> toRemove = new ArrayList<>();
+        LinkedHashMap<String, ArrayDeque<SchedulableCommand>> due = new LinkedHashMap<>();
+
+        // Share the queue changes with the other processes
+        this.syncQueueStore();
+
+        // When offline the commands are held. When the connection come back the waiting
+        // commands are flushed without wait for their delay.
+        boolean connected = this.isConnected();
+        boolean flush = connected && max > 0 && this.mFlushRequested;
+        if (flush) this.mFlushRequested = false;
+
+        // Collect the due commands only if can start some.
+        // The flush need all the commands waiting for their delay so scan the whole queue.
+        if (flush) this.scanQueue(toRemove, due);
+        else if (connected && max > 0) this.pollDueCommands(toRemove, due);
+
+        // Take the commands to execute within the limits of every group and index again
+        // the others
+        HashMap<String, Integer> running;
+        synchronized (this.mGroupsInFlight) {
+            running = new HashMap<>(this.mGroupsInFlight);
+        }
+        ArrayList<SchedulableCommand> picked = this.mGroupScheduler.pick(due, running, max);
+        this.returnDueCommands(due, flush);
 
         // Remove all spent command from the queue
-        this.mCommandQueue.removeAll(toRemove);
+        this.removeSpentCommands(toRemove);
 
-        // Save if needed
-        if (this.mSaveQueue)
-            this.saveCommandsQueue();
+        // Save if needed.
+        // Called at every dispatcher wake up, so save only if something changed.
+        this.saveCommandsQueueIfChanged();
+
+        // Return the commands to execute
+        return picked;
+    }
+
+    // Index again the collected commands that were not started
+    void returnDueCommands(Collection<SchedulableCommand> commands) {
+        for (SchedulableCommand command : commands) this.mCommandQueue.schedule(command);
+    }
+
+    // Index again the due commands of every group that were not picked.
+    // If some of them was only to flush the flush continue at the next check.
+    private void returnDueCommands(Map<String, ArrayDeque<SchedulableCommand>> due,
+                                   boolean flush) {
+        for (ArrayDeque<SchedulableCommand> group : due.values()) {
+            for (SchedulableCommand command : group) {
+                if (flush && !command.needToExecute()) this.mFlushRequested = true;
+                this.mCommandQueue.schedule(command);
+            }
+        }
+    }
+
+    // Count the commands in execution of a group
+    private void countInFlight(String group, int delta) {
+        synchronized (this.mGroupsInFlight) {
+            Integer count = this.mGroupsInFlight.get(group);
+            int value = (count != null ? count : 0) + delta;
+            if (value > 0) this.mGroupsInFlight.put(group, value);
+            else this.mGroupsInFlight.remove(group);
+        }
+    }
+
+    // Check if a command is spent and must be removed from the queue.
+    // A command in execution is removed after, when indexed again at its end.
+    // Only the auto-delete commands and the failed ones that must be moved to the dead letters
+    // are removed.
+    private boolean isRemovable(SchedulableCommand command) {
+        return !command.willTry() && !command.mRunning &&
+                (command.getFlag(ScServer.FLAG_AUTO_DELETE) || this.isDeadLetter(command));
+    }
+
+    // Check if a spent command must be moved to the dead letters
+    private boolean isDeadLetter(SchedulableCommand command) {
+        return this.mDeadLetterStore != null && command.isError();
+    }
+
+    // Remove the spent commands from the queue moving the failed ones to the dead letters.
+    // The successors held by a failed command can not be released anymore once it left the
+    // queue, so they are cancelled too and follow it at the next check.
+    private void removeSpentCommands(List<SchedulableCommand> commands) {
+        // Get the store
+        ScDeadLetterStore store = this.mDeadLetterStore;
+        long now = this.mClock.now();
+        HashMap<String, Exception> failed = new HashMap<>();
+
+        // Cycle all commands
+        for (SchedulableCommand command : commands) {
+            // Remove and store it if needed
+            if (this.mCommandQueue.remove(command) && command.isError()) {
+                if (store != null) store.add(command, now);
+                if (command.getFlag(ScServer.FLAG_HAS_SUCCESSORS))
+                    failed.put(command.getId(), command.mLastError);
+            }
+        }
+
+        // Cancel the held successors
+        if (failed.isEmpty()) return;
+        for (SchedulableCommand command : this.mCommandQueue) {
+            String predecessorId = command.peekExtra().mPredecessorId;
+            if (command.isWaitingPredecessor() && failed.containsKey(predecessorId))
+                command.cancel(failed.get(predecessorId));
+        }
+    }
+
+    // Get the time of the next due execution, Long.MAX_VALUE if nothing is waiting for its
+    // time.
+    // Read from the next execution index, so a spent command not yet removed can be returned:
+    // the next check remove it.
+    long getNextExecution() {
+        return this.mCommandQueue.peekScheduled();
+    }
+
+    // Execute a successor as soon as its predecessor succeeded.
+    // The successor is already due. With a dispatcher ask for an immediate check, else it is
+    // executed by the queue check running, or by the next one.
+    // Never executed here, so a long chain of commands not grow the stack.
+    private void dispatchSuccessor(SchedulableCommand successor) {
+        // Check the dispatcher
+        ScDispatcher dispatcher = this.mDispatcher;
+        if (dispatcher != null) dispatcher.wakeUp();
+        else this.mReleased.add(successor);
+    }
+
+    // Execute the released successors one after the other.
+    // The successors they release are executed by the same cycle.
+    private void executeReleased() {
+        SchedulableCommand successor;
+        while ((successor = this.mReleased.poll()) != null) {
+            if (this.isConnected() && this.mCommandQueue.contains(successor) &&
+                    successor.needToExecute() && successor.tryStart()) {
+                try {
+                    successor.execute();
+                } finally {
+                    successor.finish();
+                }
+            }
+        }
+    }
+
+    // Execute a command started by the dispatcher
+    void executeDispatched(SchedulableCommand command) {
+        try {
+            // Check again because the status can be changed after the collection
+            command.mLastLatency = -1;
+            if (command.willTry() && this.mCommandQueue.contains(command)) command.execute();
+        } finally {
+            this.releaseSlot(command);
+            command.finish();
+        }
+    }
+
+    // Run a listener call on the callback executor
+    private void dispatch(Runnable task) {
+        Executor executor = this.mCallbackExecutor;
+        if (executor != null) executor.execute(task);
+        else task.run();
+    }
+
+    // Check if the queue have a limit
+    private boolean isQueueBounded() {
+        return this.mMaxQueueSize > 0 || this.mMaxQueueBytes > 0;
+    }
+
+    // Check if the queue have space for a new command
+    private boolean hasQueueSpace(long bytes) {
+        return (this.mMaxQueueSize <= 0 || this.mCommandQueue.size() < this.mMaxQueueSize) &&
+                (this.mMaxQueueBytes <= 0 ||
+                        this.mCommandQueue.getBytes() + bytes <= this.mMaxQueueBytes);
+    }
+
+    // Add a command to a bounded queue applying the overflow policy
+    private QueueStatus enqueueBounded(SchedulableCommand command) {
+        // Check if already queued
+        if (this.mCommandQueue.contains(command)) return QueueStatus.DUPLICATED;
+
+        // Holders
+        long bytes = command.estimateSize();
+        long deadline = System.nanoTime() + this.mBlockTimeout * 1000000;
+        boolean blocked = false;
+
+        // A command bigger than the whole queue never fit, so reject it without drop or wait
+        // for the others
+        if (this.mMaxQueueBytes > 0 && bytes > this.mMaxQueueBytes) {
+            this.mMetrics.recordOverflow(OverflowPolicy.REJECT);
+            return QueueStatus.REJECTED;
+        }
+
+        while (true) {
+            synchronized (this.mAdmissionLock) {
+                // If have space add it
+                if (this.hasQueueSpace(bytes))
+                    return this.mCommandQueue.add(command) ?
+                            QueueStatus.ADDED : QueueStatus.DUPLICATED;
+
+                // Find the command to drop
+                SchedulableCommand victim = null;
+                switch (this.mOverflowPolicy) {
+                    case DROP_OLDEST_IN_GROUP:
+                        victim = this.findOldestInGroup(command.getGroup());
+                        break;
+
+                    case DROP_LOWEST_PRIORITY:
+                        victim = this.findLowestPriority(command.getPriority());
+                        break;
+                }
+
+                // Drop it and check again for the space
+                if (victim != null) {
+                    if (this.mCommandQueue.remove(victim))
+                        this.mMetrics.recordOverflow(this.mOverflowPolicy);
+                    continue;
+                }
+
+                // Nothing to drop so reject the new command.
+                // A queue thread is never blocked because it is the one that free the space.
+                if (this.mOverflowPolicy != OverflowPolicy.BLOCK ||
+                        ScServer.QUEUE_THREAD.get() != null) {
+                    this.mMetrics.recordOverflow(OverflowPolicy.REJECT);
+                    return QueueStatus.REJECTED;
+                }
+            }
+
+            // Block the producer until some command is removed or the timeout expire
+            if (!blocked) {
+                this.mMetrics.recordOverflow(OverflowPolicy.BLOCK);
+                blocked = true;
+            }
+            long remaining = (deadline - System.nanoTime()) / 1000000;
+            if (remaining <= 0) {
+                this.mMetrics.recordBlockTimeout();
+                return QueueStatus.TIMEOUT;
+            }
+            try {
+                this.mCommandQueue.awaitRemoval(Math.min(remaining, ScServer.BLOCK_SLICE));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return QueueStatus.TIMEOUT;
+            }
+        }
+    }
+
+    // Find the oldest command of a group not in execution
+    private SchedulableCommand findOldestInGroup(String groupName) {
+        // Cycle all commands in queue
+        for (SchedulableCommand command : this.mCommandQueue) {
+            // The commands in execution can not be dropped
+            if (command.mRunning) continue;
+            // Check the group
+            String group = command.getGroup();
+            if (group == null ? groupName == null : group.equals(groupName)) return command;
+        }
+        // Else not found
+        return null;
+    }
+
+    // Find the oldest command with the lowest priority not in execution.
+    // Return null if all the commands have a priority greater than the passed one.
+    private SchedulableCommand findLowestPriority(int priority) {
+        // Holder
+        SchedulableCommand lowest = null;
+        // Cycle all commands in queue
+        for (SchedulableCommand command : this.mCommandQueue) {
+            if (!command.mRunning && command.getPriority() <= priority &&
+                    (lowest == null || command.getPriority() < lowest.getPriority()))
+                lowest = command;
+        }
+        // Return the found
+        return lowest;
+    }
+
+    // Calculate the digest of an answer
+    private static byte[] digest(String value) {
+        // Check for null value
+        if (value == null) return new byte[0];
+        try {
+            // Use a digest so the answer itself is not held
+            return MessageDigest.getInstance("MD5").digest(value.getBytes("UTF-8"));
+
+        } catch (Exception e) {
+            // Should never happen, fallback on the hash
+            int hash = value.hashCode();
+            return new byte[]{(byte) (hash >> 24), (byte) (hash >> 16), (byte) (hash >> 8), (byte) hash};
+        }
+    }
+
+    // Get the shared instance of a name so the many commands with the same method, group or
+    // parameter name hold only one string
+    private static String intern(String value) {
+        return value != null ? value.intern() : null;
+    }
+
+    // Convert a delay to the int held by the commands, limiting it to the int range
+    private static int toDelay(long value) {
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, value));
+    }
+
+    // Estimate the memory size in bytes of a parameter value
+    private static long estimateSize(Object value) {
+        if (value == null) return 0;
+        if (value instanceof String) return 40 + 2 * ((String) value).length();
+        if (value instanceof byte[]) return 16 + ((byte[]) value).length;
+        if (value instanceof Number || value instanceof Boolean) return 16;
+        return 64;
+    }
+
+    // Convert the parameters names and values to a read only map in the adding order
+    private static Map<String, Object> toParamsMap(Object[] params) {
+        // Fill the map
+        LinkedHashMap<String, Object> map = new LinkedHashMap<>();
+        for (int index = 0; index < params.length; index += 2) {
+            map.put((String) params[index], params[index + 1]);
+        }
+        // Return a read only view
+        return Collections.unmodifiableMap(map);
+    }
+
+    // Check if the encoded request can be sent again.
+    // The callable parameters must be executed and the stream parameters read at every call.
+    private static boolean isReusable(Object[] params) {
+        for (int index = 1; index < params.length; index += 2) {
+            if (params[index] instanceof Callable || params[index] instanceof ScStreamParam)
+                return false;
+        }
+        return true;
+    }
+
+    // Check if the request can be sent more times.
+    // The stream parameters that can be read only one time are not.
+    static boolean isRepeatable(Object[] params) {
+        for (int index = 1; index < params.length; index += 2) {
+            if (params[index] instanceof ScStreamParam &&
+                    !((ScStreamParam) params[index]).isRepeatable())
+                return false;
+        }
+        return true;
+    }
+
+    // Check if a stream parameter was already read and the request can not be sent anymore
+    static boolean isConsumed(Object[] params) {
+        for (int index = 1; index < params.length; index += 2) {
+            if (params[index] instanceof ScStreamParam &&
+                    ((ScStreamParam) params[index]).isConsumed())
+                return true;
+        }
+        return false;
+    }
+
+    // Check if the error is a fault answered by the server
+    private static boolean isFault(Exception error) {
+        return error instanceof SoapFault || error instanceof ScServerFault;
+    }
+
+    // Check if the device is connected
+    private boolean isConnected() {
+        ScConnectivityProvider provider = this.mConnectivityProvider;
+        return provider == null || provider.isConnected();
     }
 
 
@@ -310,7 +1597,18 @@ public class ScServer extends ScChecker {
     public ScServer(Context context) {
         // Init
         this.mContext = context;
-        this.mCommandQueue = new CopyOnWriteArrayList<>();
+        this.mCommandQueue = new ScCommandQueue();
+        this.mBalancer = new ScEndpointBalancer();
+        this.mLatencyTracker = new ScLatencyTracker();
+        this.mEventBus = new ScCommandEventBus();
+        this.mMetrics = new ScServerMetrics();
+        this.mSoapTransport = new SoapTransport();
+        this.mMethodTransports = new ConcurrentHashMap<>();
+        this.mReleased = new ConcurrentLinkedQueue<>();
+        this.mGroupsInFlight = new HashMap<>();
+        this.mMarshalRegistry = new ScMarshalRegistry();
+        this.mGroupScheduler = new ScGroupScheduler();
+        this.mFailureClassifier = new ScFailureClassifier();
         this.mWebServiceNameSpace = "http://tempuri.org/";
 
         // Load the commands queue is have one
@@ -321,39 +1619,34 @@ public class ScServer extends ScChecker {
     @Override
     @SuppressWarnings("unused")
     public boolean check() {
-        // Solve the command queue
-        this.solveQueue();
+        // Solve the command queue if not solved by a dispatcher.
+        // With a concurrency limiter the commands run in parallel.
+        boolean marked = ScServer.markQueueThread();
+        try {
+            if (this.mDispatcher == null) {
+                if (this.mLimiter != null) this.solveQueueConcurrent();
+                else this.solveQueue();
+            }
+        } finally {
+            if (marked) ScServer.QUEUE_THREAD.remove();
+        }
         // Always true
         return true;
     }
 
     // Get the server address.
     // By default the test server is called when the application is in debug.
+    // Else the production server with the best performance will be returned.
     @SuppressWarnings("unused")
     public String getServerAddress() {
-        // Trigger
-        boolean useTestServer = false;
-
-        // Check if the test server is defined
-        if (this.mTestServerAddress != null && !this.mTestServerAddress.isEmpty()) {
-            // Check for the listener
-            if (this.mOnServerSelectionListener != null) {
-                // Call the listener methods for the result
-                useTestServer = this.mOnServerSelectionListener
-                        .onServerSelection(this.onEmulator(), this.inDebug());
-            } else {
-                // Default check if in debug
-                useTestServer = this.inDebug();
-            }
-        }
-
         // Check for witch server to use
-        if (useTestServer) {
+        if (this.useTestServer()) {
             // Test server address
             return this.mTestServerAddress;
         } else {
-            // Production server address
-            return this.mProductionServerAddress;
+            // Best production server address
+            ScEndpointBalancer.Endpoint endpoint = this.mBalancer.getBest();
+            return endpoint != null ? endpoint.getAddress() : null;
         }
     }
 
@@ -368,39 +1661,142 @@ public class ScServer extends ScChecker {
         return new SchedulableCommand(methodName);
     }
 
-    // Add a command to the queue
+    // Add a command to the queue.
+    // If the queue is full the overflow policy is applied, use offerCommand to know if the
+    // command was added.
     @SuppressWarnings("unused")
     public void addCommand(SchedulableCommand command) {
-        // Check if not null
-        if (command != null) {
-            // Add it
-            this.mCommandQueue.add(command);
-        }
+        this.offerCommand(command);
     }
 
     @SuppressWarnings("unused")
     public void addCommand(SchedulableCommand command, boolean startToResolve) {
+        this.offerCommand(command, startToResolve);
+    }
+
+    // Add a command to the queue and return if it was added.
+    // If the queue is full the overflow policy is applied.
+    @SuppressWarnings("unused")
+    public QueueStatus offerCommand(SchedulableCommand command) {
+        // Check if not null
+        if (command == null) return QueueStatus.REJECTED;
+
+        // Without limits add it directly
+        if (!this.isQueueBounded())
+            return this.mCommandQueue.add(command) ? QueueStatus.ADDED : QueueStatus.DUPLICATED;
+
+        // Apply the limits
+        return this.enqueueBounded(command);
+    }
+
+    @SuppressWarnings("unused")
+    public QueueStatus offerCommand(SchedulableCommand command, boolean startToResolve) {
         // Add it
-        this.addCommand(command);
+        QueueStatus status = this.offerCommand(command);
+        // Start to resolve the queue is need
+        if (startToResolve) this.start();
+        // Return the status
+        return status;
+    }
+
+    // Add many commands to the queue keeping the collection order.
+    // Return the number of commands added.
+    @SuppressWarnings("unused")
+    public int addCommands(Collection<? extends SchedulableCommand> commands) {
+        // Without limits add them directly
+        if (!this.isQueueBounded()) return this.mCommandQueue.addAll(commands);
+
+        // Else add one by one applying the limits
+        int count = 0;
+        if (commands != null)
+            for (SchedulableCommand command : commands) {
+                if (this.offerCommand(command) == QueueStatus.ADDED) count++;
+            }
+        // Return the count
+        return count;
+    }
+
+    @SuppressWarnings("unused")
+    public int addCommands(Collection<? extends SchedulableCommand> commands,
+                           boolean startToResolve) {
+        // Add them
+        int count = this.addCommands(commands);
         // Start to resolve the queue is need
         if (startToResolve) this.start();
+        // Return the count
+        return count;
     }
 
     // Remove a command from the queue
     @SuppressWarnings("unused")
     public SchedulableCommand removeCommand(SchedulableCommand command) {
-        // Check for null value
-        if (command != null) {
-            // Find the command index in the queue
-            int index = this.mCommandQueue.indexOf(command);
-            // Check if exists
-            if (index != -1) {
-                // Remove the command and return it
-                return this.mCommandQueue.remove(index);
-            }
+        // Remove the command and return it if was in the queue
+        return this.mCommandQueue.remove(command) ? command : null;
+    }
+
+    // Remove many commands from the queue and return the list of removed commands
+    @SuppressWarnings("unused")
+    public ArrayList<SchedulableCommand> removeCommands(
+            Collection<? extends SchedulableCommand> commands) {
+        return this.mCommandQueue.removeAll(commands);
+    }
+
+    // Remove all commands from the queue and return the list of removed commands
+    @SuppressWarnings("unused")
+    public ArrayList<SchedulableCommand> removeAllCommands() {
+        return this.mCommandQueue.removeAll(this.mCommandQueue.toList());
+    }
+
+    // Get the number of commands in the queue
+    @SuppressWarnings("unused")
+    public int getQueueSize() {
+        return this.mCommandQueue.size();
+    }
+
+    // Move a dead letter back to the queue as a new command to execute now.
+    // If the queue is full the entry is kept inside the store.
+    @SuppressWarnings("unused")
+    public QueueStatus replayDeadLetter(ScDeadLetterStore.Entry entry) {
+        // Check the store
+        ScDeadLetterStore store = this.mDeadLetterStore;
+        if (entry == null || store == null) return QueueStatus.REJECTED;
+
+        // Rebuild the command.
+        // Not possible if its parameters could not be saved.
+        byte[] data = entry.getData();
+        if (data == null) return QueueStatus.REJECTED;
+        SchedulableCommand command;
+        try {
+            command = this.decodeCommand(data);
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+            return QueueStatus.REJECTED;
         }
-        // Else
-        return null;
+
+        // Reset the command and add it to the queue
+        command.reset();
+        command.mNextExecution = this.mClock.now();
+        QueueStatus status = this.offerCommand(command);
+
+        // Remove from the store if not rejected
+        if (status == QueueStatus.ADDED || status == QueueStatus.DUPLICATED)
+            store.remove(entry);
+        return status;
+    }
+
+    // Move many dead letters back to the queue.
+    // Return the number of commands added.
+    @SuppressWarnings("unused")
+    public int replayDeadLetters(Collection<ScDeadLetterStore.Entry> entries) {
+        // Holder
+        int count = 0;
+        // Cycle all entries
+        if (entries != null)
+            for (ScDeadLetterStore.Entry entry : entries) {
+                if (this.replayDeadLetter(entry) == QueueStatus.ADDED) count++;
+            }
+        // Return the count
+        return count;
     }
 
     @SuppressWarnings("unused")
@@ -426,10 +1822,8 @@ public class ScServer extends ScChecker {
             }
         }
 
-        // Remove all found commands
-        this.mCommandQueue.removeAll(toRemove);
-        // Return the list of removed commands
-        return toRemove;
+        // Remove all found commands and return the list of removed commands
+        return this.mCommandQueue.removeAll(toRemove);
     }
 
     // Find a command by method name in the commands queue
@@ -467,6 +1861,22 @@ public class ScServer extends ScChecker {
         this.mOnServerSelectionListener = listener;
     }
 
+    // Get the command events bus.
+    // Many subscribers can listen the commands life cycle events.
+    @SuppressWarnings("unused")
+    public ScCommandEventBus getEventBus() {
+        return this.mEventBus;
+    }
+
+    // Flush the waiting commands at the next check without wait for their delay
+    @SuppressWarnings("unused")
+    public void flushQueue() {
+        this.mFlushRequested = true;
+        // With a dispatcher the check can be done immediately
+        ScDispatcher dispatcher = this.mDispatcher;
+        if (dispatcher != null) dispatcher.wakeUp();
+    }
+
 
     /**
      * Public properties
@@ -476,6 +1886,7 @@ public class ScServer extends ScChecker {
     @SuppressWarnings("unused")
     public void setTestServerAddress(String value) {
         this.mTestServerAddress = value;
+        this.changeRequests();
     }
 
     @SuppressWarnings("unused")
@@ -483,21 +1894,66 @@ public class ScServer extends ScChecker {
         return this.mTestServerAddress;
     }
 
-    // Get/Set the remote server address
+    // Get/Set the remote server address.
+    // Setting a single address replace all the production addresses.
     @SuppressWarnings("unused")
     public void setProductionServerAddress(String value) {
-        this.mProductionServerAddress = value;
+        this.setProductionServerAddresses(value);
     }
 
     @SuppressWarnings("unused")
     public String getProductionServerAddress() {
-        return this.mProductionServerAddress;
+        List<ScEndpointBalancer.Endpoint> endpoints = this.mBalancer.getEndpoints();
+        return endpoints.isEmpty() ? null : endpoints.get(0).getAddress();
+    }
+
+    // Get/Set the list of the remote server addresses.
+    // All the addresses must expose the same web service.
+    @SuppressWarnings("unused")
+    public void setProductionServerAddresses(String... values) {
+        // Replace the old list
+        this.mBalancer.clear();
+        if (values != null)
+            for (String value : values) this.mBalancer.add(value);
+        this.changeRequests();
+    }
+
+    @SuppressWarnings("unused")
+    public String[] getProductionServerAddresses() {
+        // Get the endpoints and extract the addresses
+        List<ScEndpointBalancer.Endpoint> endpoints = this.mBalancer.getEndpoints();
+        String[] addresses = new String[endpoints.size()];
+        for (int index = 0; index < addresses.length; index++)
+            addresses[index] = endpoints.get(index).getAddress();
+        // Return the list
+        return addresses;
+    }
+
+    // Add/Remove a remote server address
+    @SuppressWarnings("unused")
+    public void addProductionServerAddress(String value) {
+        this.mBalancer.add(value);
+        this.changeRequests();
+    }
+
+    @SuppressWarnings("unused")
+    public void removeProductionServerAddress(String value) {
+        this.mBalancer.remove(value);
+        this.changeRequests();
+    }
+
+    // Get the production endpoints balancer.
+    // Can be used to tune the balancing or to read the endpoints statistics.
+    @SuppressWarnings("unused")
+    public ScEndpointBalancer getEndpointBalancer() {
+        return this.mBalancer;
     }
 
     // Get/Set the web service name
     @SuppressWarnings("unused")
     public void setWebServiceName(String value) {
         this.mWebServiceName = value;
+        this.changeRequests();
     }
 
     @SuppressWarnings("unused")
@@ -509,6 +1965,7 @@ public class ScServer extends ScChecker {
     @SuppressWarnings("unused")
     public void setWebServiceNameSpace(String value) {
         this.mWebServiceNameSpace = value;
+        this.changeRequests();
     }
 
     @SuppressWarnings("unused")
@@ -521,6 +1978,7 @@ public class ScServer extends ScChecker {
     @SuppressWarnings("unused")
     public void setDotNet(boolean value) {
         this.mDotNet = value;
+        this.changeRequests();
     }
 
     @SuppressWarnings("unused")
@@ -545,6 +2003,31 @@ public class ScServer extends ScChecker {
         return this.mSaveQueue;
     }
 
+    // Get/Set the store where the queue is shared with the other processes or with the other
+    // servers using the same file.
+    // If settled the saved commands are kept inside the store in place of the shared
+    // preferences and the commands added by the others are loaded at every check. A stored
+    // command is executed only by the process that claim it.
+    // Default: null
+    @SuppressWarnings("unused")
+    public void setQueueStore(ScQueueStore value) {
+        // The commands ids belong to the old store
+        for (SchedulableCommand command : this.mCommandQueue) command.mStoreId = 0;
+        // Hold and load the stored commands
+        this.mQueueStore = value;
+        if (value == null) return;
+        this.migrateToQueueStore(value);
+
+        // The saved queue now live inside the store and must not be loaded again at the next
+        // start, else its commands would be added to the store again
+        if (this.mContext != null) this.setSharedPreferences(ScServer.PREFERENCES_KEY, null);
+    }
+
+    @SuppressWarnings("unused")
+    public ScQueueStore getQueueStore() {
+        return this.mQueueStore;
+    }
+
     // Get/Set if save or not the persistent command
     // Default: false
     @SuppressWarnings("unused")
@@ -557,6 +2040,323 @@ public class ScServer extends ScChecker {
         return this.mSavePersistentCommand;
     }
 
+    // Get/Set if the idempotent commands are hedged.
+    // If true and an idempotent command not receive the answer within the hedging delay a
+    // second identical request is sent, possibly to another server. The first answer win.
+    // Default: false
+    @SuppressWarnings("unused")
+    public void setHedging(boolean value) {
+        this.mHedging = value;
+    }
+
+    @SuppressWarnings("unused")
+    public boolean getHedging() {
+        return this.mHedging;
+    }
+
+    // Get/Set the hedging delay in milliseconds.
+    // If 0 the observed 95th percentile of the method latency will be used.
+    // Default: 0
+    @SuppressWarnings("unused")
+    public void setHedgingDelay(long value) {
+        this.mHedgingDelay = Math.max(0, value);
+    }
+
+    @SuppressWarnings("unused")
+    public long getHedgingDelay() {
+        return this.mHedgingDelay;
+    }
+
+    // Get/Set the executor used to call the listeners and to deliver the events.
+    // If null the listeners are called on the thread that executed the command.
+    // Default: null
+    @SuppressWarnings("unused")
+    public void setCallbackExecutor(Executor value) {
+        this.mCallbackExecutor = value;
+        this.mEventBus.setExecutor(value);
+    }
+
+    @SuppressWarnings("unused")
+    public Executor getCallbackExecutor() {
+        return this.mCallbackExecutor;
+    }
+
+    // Create an executor that run the tasks on the application main thread
+    @SuppressWarnings("unused")
+    public static Executor newMainThreadExecutor() {
+        // Create the handler linked to the main looper
+        final Handler handler = new Handler(Looper.getMainLooper());
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                handler.post(command);
+            }
+        };
+    }
+
+    // Get/Set the max number of commands inside the queue.
+    // Default: 0 (no limit)
+    @SuppressWarnings("unused")
+    public void setMaxQueueSize(int value) {
+        this.mMaxQueueSize = Math.max(0, value);
+    }
+
+    @SuppressWarnings("unused")
+    public int getMaxQueueSize() {
+        return this.mMaxQueueSize;
+    }
+
+    // Get/Set the max estimated size in bytes of the commands inside the queue.
+    // Default: 0 (no limit)
+    @SuppressWarnings("unused")
+    public void setMaxQueueBytes(long value) {
+        this.mMaxQueueBytes = Math.max(0, value);
+    }
+
+    @SuppressWarnings("unused")
+    public long getMaxQueueBytes() {
+        return this.mMaxQueueBytes;
+    }
+
+    // Get/Set the policy applied when a command is added to a full queue.
+    // Default: REJECT
+    @SuppressWarnings("unused")
+    public void setOverflowPolicy(OverflowPolicy value) {
+        this.mOverflowPolicy = value == null ? OverflowPolicy.REJECT : value;
+    }
+
+    @SuppressWarnings("unused")
+    public OverflowPolicy getOverflowPolicy() {
+        return this.mOverflowPolicy;
+    }
+
+    // Get/Set the max time in milliseconds a producer wait with the BLOCK policy.
+    // Default: 5000
+    @SuppressWarnings("unused")
+    public void setBlockTimeout(long value) {
+        this.mBlockTimeout = Math.max(0, value);
+    }
+
+    @SuppressWarnings("unused")
+    public long getBlockTimeout() {
+        return this.mBlockTimeout;
+    }
+
+    // Get/Set the shared dispatcher.
+    // If settled the commands queue is solved by the dispatcher together with the queues of
+    // the other servers registered, so the server not need to be started.
+    // Pass null to come back to the server own check.
+    // A dispatcher shut down is not settled.
+    // Default: null
+    @SuppressWarnings("unused")
+    public synchronized void setDispatcher(ScDispatcher dispatcher) {
+        // Unregister from the old one
+        if (this.mDispatcher != null) this.mDispatcher.unregister(this);
+        // Register to the new one
+        if (dispatcher != null && dispatcher.isShutdown()) dispatcher = null;
+        this.mDispatcher = dispatcher;
+        if (dispatcher != null) dispatcher.register(this);
+    }
+
+    // Forget the dispatcher when it is shut down, so the server come back to its own check
+    synchronized void detachDispatcher(ScDispatcher dispatcher) {
+        if (this.mDispatcher == dispatcher) this.mDispatcher = null;
+    }
+
+    @SuppressWarnings("unused")
+    public ScDispatcher getDispatcher() {
+        return this.mDispatcher;
+    }
+
+    // Get/Set the adaptive concurrency limiter.
+    // If settled the due commands are executed in parallel and the number of commands running
+    // at once follow the limiter. With a dispatcher the limiter cap the server share.
+    // Default: null (one command at time)
+    @SuppressWarnings("unused")
+    public void setConcurrencyLimiter(ScConcurrencyLimiter value) {
+        if (value != null) value.setClock(this.mClock);
+        this.mLimiter = value;
+        this.mMetrics.setConcurrencyLimiter(value);
+    }
+
+    @SuppressWarnings("unused")
+    public ScConcurrencyLimiter getConcurrencyLimiter() {
+        return this.mLimiter;
+    }
+
+    // Get the server counters
+    @SuppressWarnings("unused")
+    public ScServerMetrics getMetrics() {
+        return this.mMetrics;
+    }
+
+    // Get/Set the connectivity provider.
+    // When the provider say the device is offline the queue dispatch is held and the calls
+    // failed for the missing connection are held too, without count as tries and without
+    // notify the error. When the connection come back the queue is flushed.
+    // The provider can be shared with other servers.
+    // Default: null (always connected)
+    @SuppressWarnings("unused")
+    public synchronized void setConnectivityProvider(ScConnectivityProvider provider) {
+        // Create the listener if needed
+        if (this.mConnectivityListener == null)
+            this.mConnectivityListener = new ScConnectivityProvider.OnConnectivityChangeListener() {
+                @Override
+                public void onConnectivityChange(boolean connected) {
+                    // Flush the backlog when the connection come back
+                    if (connected) ScServer.this.flushQueue();
+                }
+            };
+
+        // Detach from the old provider
+        if (this.mConnectivityProvider != null)
+            this.mConnectivityProvider.removeOnConnectivityChangeListener(
+                    this.mConnectivityListener);
+
+        // Hold the new one and listen the changes
+        this.mConnectivityProvider = provider;
+        if (provider != null) provider.addOnConnectivityChangeListener(this.mConnectivityListener);
+    }
+
+    @SuppressWarnings("unused")
+    public ScConnectivityProvider getConnectivityProvider() {
+        return this.mConnectivityProvider;
+    }
+
+    // Get the methods latencies tracker
+    @SuppressWarnings("unused")
+    public ScLatencyTracker getLatencyTracker() {
+        return this.mLatencyTracker;
+    }
+
+    // Get the scheduler that share the executions between the commands groups.
+    // Use it to set the weight and the max commands in execution of every group.
+    @SuppressWarnings("unused")
+    public ScGroupScheduler getGroupScheduler() {
+        return this.mGroupScheduler;
+    }
+
+    // Get/Set the classifier that decide if a failed command is tried again and when.
+    // Default: a classifier with the default mappings
+    @SuppressWarnings("unused")
+    public void setFailureClassifier(ScFailureClassifier value) {
+        this.mFailureClassifier = value != null ? value : new ScFailureClassifier();
+    }
+
+    @SuppressWarnings("unused")
+    public ScFailureClassifier getFailureClassifier() {
+        return this.mFailureClassifier;
+    }
+
+    // Get/Set the store where the commands failed for good are moved.
+    // If settled every command spent with an error is removed from the queue, also if its
+    // auto-delete is false, and held inside the store.
+    // Default: null (the failed commands are deleted or kept inside the queue)
+    @SuppressWarnings("unused")
+    public void setDeadLetterStore(ScDeadLetterStore value) {
+        this.mDeadLetterStore = value;
+    }
+
+    @SuppressWarnings("unused")
+    public ScDeadLetterStore getDeadLetterStore() {
+        return this.mDeadLetterStore;
+    }
+
+    // Get/Set the clock used to schedule the commands, to measure their round-trip time and
+    // the servers cool down.
+    // A virtual clock let the tests move the time by code.
+    // Default: ScClock.MONOTONIC
+    @SuppressWarnings("unused")
+    public void setClock(ScClock value) {
+        this.mClock = value != null ? value : ScClock.MONOTONIC;
+        this.mBalancer.setClock(this.mClock);
+        ScConcurrencyLimiter limiter = this.mLimiter;
+        if (limiter != null) limiter.setClock(this.mClock);
+    }
+
+    @SuppressWarnings("unused")
+    public ScClock getClock() {
+        return this.mClock;
+    }
+
+    // Get/Set the default transport used to send the commands.
+    // Default: null (SOAP)
+    @SuppressWarnings("unused")
+    public void setTransport(ScTransport value) {
+        this.mTransport = value;
+    }
+
+    @SuppressWarnings("unused")
+    public ScTransport getTransport() {
+        return this.mTransport;
+    }
+
+    // Get/Set the transport used to send the commands of a method.
+    // Pass null to come back to the default transport.
+    @SuppressWarnings("unused")
+    public void setTransport(String methodName, ScTransport value) {
+        if (value == null) this.mMethodTransports.remove(methodName);
+        else this.mMethodTransports.put(methodName, value);
+    }
+
+    @SuppressWarnings("unused")
+    public ScTransport getTransport(String methodName) {
+        // Check the method transport
+        ScTransport transport = methodName != null ?
+                this.mMethodTransports.get(methodName) : null;
+        if (transport != null) return transport;
+        // Else the default one
+        transport = this.mTransport;
+        return transport != null ? transport : this.mSoapTransport;
+    }
+
+    // Get/Set the marshals used to write the SOAP parameters.
+    // The same registry can be shared between more servers.
+    // Default: a registry with the built-in marshals
+    @SuppressWarnings("unused")
+    public void setMarshalRegistry(ScMarshalRegistry value) {
+        this.mMarshalRegistry = value != null ? value : new ScMarshalRegistry();
+        this.changeRequests();
+    }
+
+    @SuppressWarnings("unused")
+    public ScMarshalRegistry getMarshalRegistry() {
+        return this.mMarshalRegistry;
+    }
+
+    // Get the built-in SOAP transport
+    @SuppressWarnings("unused")
+    public ScTransport getSoapTransport() {
+        return this.mSoapTransport;
+    }
+
+
+    /**
+     * Queue enumerators
+     */
+
+    // The policy applied when a command is added to a full queue
+    public enum OverflowPolicy {
+        REJECT,                     // Reject the new command
+        DROP_OLDEST_IN_GROUP,       // Drop the oldest command of the new command group
+        DROP_LOWEST_PRIORITY,       // Drop the oldest command with the lowest priority
+        BLOCK                       // Wait until some command is removed or the timeout
+    }
+
+    // What a command do when the command it depends on fail for good
+    public enum DependencyPolicy {
+        CANCEL,                     // The command is cancelled with its successors
+        HOLD                        // The command wait until the predecessor is reset and succeed
+    }
+
+    // The result of a command adding
+    public enum QueueStatus {
+        ADDED,                      // Added to the queue
+        DUPLICATED,                 // Already inside the queue
+        REJECTED,                   // Rejected because the queue is full
+        TIMEOUT                     // The blocked producer gone in timeout
+    }
+
 
     /**
      * Server listener
@@ -589,17 +2389,22 @@ public class ScServer extends ScChecker {
          */
 
         protected String mMethodName = null;                // The called method name
-        protected Hashtable<String, Object> mParams = null; // Tha list of parameters
         protected CommandListener mCommandListener = null;  // Listener linked to the command
         protected int mTryCount = 0;                        // The number of current try
-        protected boolean mSuccess = false;                 // If the execution finish successfully
+        protected int mFlags = 0;                           // The packed status flags
         protected Exception mLastError = null;              // Holde the last error raised
+        protected transient long mLastLatency = -1;         // Last execution round-trip time
+
+        // The parameters names and values one after the other, in the adding order.
+        // The array is replaced at every change so it can be read without lock.
+        protected volatile Object[] mParams = ScServer.NO_PARAMS;
+        // The request encoded by the last try, sent again by the next tries if not changed
+        protected transient volatile EncodedRequest mEncodedRequest = null;
 
 
         // Constructor
         public Command(String methodName) {
-            this.mMethodName = methodName;          // Hold the command name
-            this.mParams = new Hashtable<>();       // Create an empty parameters list
+            this.mMethodName = ScServer.intern(methodName);     // Hold the command name
         }
 
 
@@ -607,25 +2412,99 @@ public class ScServer extends ScChecker {
          * Protected methods
          */
 
+        // Check a status flag
+        protected boolean getFlag(int flag) {
+            return (this.mFlags & flag) != 0;
+        }
+
+        // Set a status flag
+        protected synchronized void setFlag(int flag, boolean value) {
+            if (value) this.mFlags |= flag;
+            else this.mFlags &= ~flag;
+        }
+
+        // Find the position of a parameter inside the array, -1 if not found
+        protected int indexOfParam(Object[] params, String name) {
+            for (int index = 0; index < params.length; index += 2) {
+                if (params[index].equals(name)) return index;
+            }
+            return -1;
+        }
+
+        // Get the request encoded by a transport in the last try.
+        // If the command or the server settings changed an empty request is returned and the
+        // transport must encode it from its method name and parameters.
+        EncodedRequest getEncodedRequest(Object owner) {
+            // Take the current status
+            String methodName = this.mMethodName;
+            Object[] params = this.mParams;
+            long version = ScServer.this.getRequestsVersion();
+
+            // Check the last one
+            EncodedRequest encoded = this.mEncodedRequest;
+            if (encoded != null && encoded.isSame(owner, methodName, params, version))
+                return encoded;
+            return new EncodedRequest(owner, methodName, params, version);
+        }
+
+        // Hold the request encoded by a transport so the next tries can send it again.
+        // Not held if the request must be created at every call.
+        void setEncodedRequest(EncodedRequest encoded, byte[] data) {
+            if (!ScServer.isReusable(encoded.mParams)) return;
+            encoded.mData = data;
+            this.mEncodedRequest = encoded;
+        }
+
         // Execute a command internally
         protected String internalExecute() {
             // Holders
             String value = null;
+            ScClock clock = ScServer.this.mClock;
+            long start = clock.now();
+            this.setFlag(ScServer.FLAG_OFFLINE, false);
             try {
-                // Execute the command calling the class container < callServerMethod > method
-                // and determine is finish proper or with an server error.
-                value = ScServer.this.callServerMethod(this.mMethodName, this.mParams);
+                // A stream parameter already read can not be sent again, so the server is not
+                // called at all
+                if (ScServer.isConsumed(this.mParams))
+                    throw new IOException("Stream parameter already consumed");
+
+                // Execute the command through the method transport and determine is finish
+                // proper or with an server error.
+                value = ScServer.this.getTransport(this.mMethodName).call(this);
                 // Hold the success
-                this.mSuccess = true;
+                this.setFlag(ScServer.FLAG_SUCCESS, true);
+                this.setFlag(ScServer.FLAG_REJECTED, false);
                 this.mLastError = null;
+                this.mLastLatency = clock.now() - start;
 
             } catch (Exception e) {
                 // Write the error inside the stack but not throw any exception
                 e.printStackTrace();
 
+                // If a stream parameter was read the request can not be sent again whatever
+                // the error
+                boolean consumed = ScServer.isConsumed(this.mParams);
+
+                // If a queued command failed because the device is offline it is held as
+                // never tried, keeping its last status, until the connection come back
+                if (!consumed && this instanceof SchedulableCommand &&
+                        e instanceof IOException && !ScServer.this.isConnected()) {
+                    this.setFlag(ScServer.FLAG_OFFLINE, true);
+                    return null;
+                }
+
                 // Hold the error
-                this.mSuccess = false;
+                this.setFlag(ScServer.FLAG_SUCCESS, false);
                 this.mLastError = e;
+                this.mLastLatency = clock.now() - start;
+
+                // Classify the failure
+                ScFailureClassifier.Kind kind = consumed ? ScFailureClassifier.Kind.PERMANENT :
+                        ScServer.this.mFailureClassifier.classify(e);
+                ScServer.this.mMetrics.recordFailure(kind);
+
+                // A permanent failure is never tried again
+                this.setFlag(ScServer.FLAG_REJECTED, kind == ScFailureClassifier.Kind.PERMANENT);
             }
 
             // Increase the tries trigger
@@ -635,34 +2514,76 @@ public class ScServer extends ScChecker {
             return value;
         }
 
+        // Estimate the memory size in bytes of the command
+        protected long estimateSize() {
+            // Base object, method name and parameters
+            // The names are shared so only the values are counted.
+            Object[] params = this.mParams;
+            long size = 160 + 8 * params.length;
+            for (int index = 1; index < params.length; index += 2) {
+                size += ScServer.estimateSize(params[index]);
+            }
+            // Return the size
+            return size;
+        }
+
         // Call all the listeners linked
         protected void callBeforeExecuteListeners() {
             // If exists a linked listener throw the onRequest method
-            if (this.mCommandListener != null)
-                this.mCommandListener.onRequest();
+            final CommandListener listener = this.mCommandListener;
+            if (listener != null)
+                ScServer.this.dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onRequest();
+                    }
+                });
+
+            // Publish the event if someone listen
+            if (ScServer.this.mEventBus.hasSubscribers())
+                ScServer.this.mEventBus.publish(new ScCommandEventBus.CommandEvent(
+                        ScCommandEventBus.CommandEvent.Type.REQUEST, this, null,
+                        ScServer.this.mClock.now()));
         }
 
         // Call all the listeners linked
-        protected void callAfterExecuteListeners(String value) {
-            // No error
-            if (this.isSuccess()) {
-                // If have a linked listener throw the onComplete method
-                if (this.mCommandListener != null) this.mCommandListener.onComplete(value);
-
-            } else
-            // With error
-            {
-                // If have a linked listener throw the onError method.
-                // Pass false because this command is not schedulable so cannot will retry
-                // automatically.
-                if (this.mCommandListener != null) this.mCommandListener.onError();
-            }
+        protected void callAfterExecuteListeners(final String value) {
+            // Hold the current status because the listeners can be called on another thread
+            final boolean success = this.isSuccess();
+            final CommandListener listener = this.mCommandListener;
+            final OnCommandListener serverListener = ScServer.this.mOnCommandListener;
+            final Command command = this;
+
+            // Call the listeners
+            ScServer.this.dispatch(new Runnable() {
+                @Override
+                public void run() {
+                    // No error
+                    if (success) {
+                        // If have a linked listener throw the onComplete method
+                        if (listener != null) listener.onComplete(value);
+
+                    } else
+                    // With error
+                    {
+                        // If have a linked listener throw the onError method.
+                        if (listener != null) listener.onError();
+                    }
 
-            // If have a server linked listener
-            if (ScServer.this.mOnCommandListener != null) {
-                // Call the server listener method onCommand
-                ScServer.this.mOnCommandListener.onCommand(this);
-            }
+                    // If have a server linked listener
+                    if (serverListener != null) {
+                        // Call the server listener method onCommand
+                        serverListener.onCommand(command);
+                    }
+                }
+            });
+
+            // Publish the event if someone listen
+            if (ScServer.this.mEventBus.hasSubscribers())
+                ScServer.this.mEventBus.publish(new ScCommandEventBus.CommandEvent(
+                        success ? ScCommandEventBus.CommandEvent.Type.COMPLETE :
+                                ScCommandEventBus.CommandEvent.Type.ERROR, this, value,
+                        ScServer.this.mClock.now()));
         }
 
 
@@ -688,21 +2609,60 @@ public class ScServer extends ScChecker {
 
         // Add a parameter to the list
         @SuppressWarnings("unused")
-        public void addParam(String name, Object value) {
-            this.mParams.put(name, value);
+        public synchronized void addParam(String name, Object value) {
+            // Check for null values
+            if (name == null || value == null) throw new NullPointerException();
+
+            // Replace the value if the parameter already exists, else append it
+            Object[] params = this.mParams;
+            int index = this.indexOfParam(params, name);
+            if (index < 0) {
+                index = params.length;
+                params = Arrays.copyOf(params, params.length + 2);
+                params[index] = ScServer.intern(name);
+            } else {
+                params = params.clone();
+            }
+            params[index + 1] = value;
+            this.mParams = params;
+            this.mEncodedRequest = null;
+        }
+
+        // Add a file parameter to the list.
+        // The file is read and encoded only when the request is sent.
+        @SuppressWarnings("unused")
+        public void addParam(String name, File file) {
+            this.addParam(name, ScStreamParam.fromFile(file));
         }
 
         // Remove a parameter to the list
         @SuppressWarnings("unused")
-        public void removeParam(String name) {
-            this.mParams.remove(name);
+        public synchronized void removeParam(String name) {
+            // Find the parameter
+            Object[] params = this.mParams;
+            int index = this.indexOfParam(params, name);
+            if (index < 0) return;
+
+            // Create the array without it
+            Object[] holder = new Object[params.length - 2];
+            System.arraycopy(params, 0, holder, 0, index);
+            System.arraycopy(params, index + 2, holder, index, params.length - index - 2);
+            this.mParams = holder.length > 0 ? holder : ScServer.NO_PARAMS;
+            this.mEncodedRequest = null;
+        }
+
+        // Get the parameters in the adding order, read only
+        @SuppressWarnings("unused")
+        public Map<String, Object> getParams() {
+            return ScServer.toParamsMap(this.mParams);
         }
 
         // Reset the command counters
         @SuppressWarnings("unused")
         public void reset() {
             this.mTryCount = 0;
-            this.mSuccess = false;
+            this.setFlag(ScServer.FLAG_SUCCESS, false);
+            this.setFlag(ScServer.FLAG_REJECTED, false);
             this.mLastError = null;
         }
 
@@ -720,12 +2680,12 @@ public class ScServer extends ScChecker {
 
         // The current success command status.
         public boolean isSuccess() {
-            return this.isExecuted() && this.mSuccess;
+            return this.isExecuted() && this.getFlag(ScServer.FLAG_SUCCESS);
         }
 
         // The current error command status
         public boolean isError() {
-            return this.isExecuted() && !this.mSuccess;
+            return this.isExecuted() && !this.getFlag(ScServer.FLAG_SUCCESS);
         }
 
         // Get the last error
@@ -747,7 +2707,8 @@ public class ScServer extends ScChecker {
         // Get/Set the method name
         @SuppressWarnings("unused")
         public void setMethodName(String value) {
-            this.mMethodName = value;
+            this.mMethodName = ScServer.intern(value);
+            this.mEncodedRequest = null;
         }
 
         @SuppressWarnings("unused")
@@ -755,6 +2716,20 @@ public class ScServer extends ScChecker {
             return this.mMethodName;
         }
 
+        // Get/Set the idempotent status.
+        // An idempotent command can be sent more times without side effects so it can be
+        // hedged when the server hedging is active.
+        // Default value: false
+        @SuppressWarnings("unused")
+        public void setIdempotent(boolean value) {
+            this.setFlag(ScServer.FLAG_IDEMPOTENT, value);
+        }
+
+        @SuppressWarnings("unused")
+        public boolean getIdempotent() {
+            return this.getFlag(ScServer.FLAG_IDEMPOTENT);
+        }
+
     }
 
 
@@ -786,19 +2761,38 @@ public class ScServer extends ScChecker {
          * Private variables
          */
 
-        protected boolean mPersistent = false;  // Persistent status
         protected int mMaxRetry = 0;            // Max number of retry
         protected int mRetryDelay = 0;          // Delay in milliseconds between tries
         protected long mNextExecution = 0;      // The date of the next execution
         protected String mGroup = null;         // The command group
-        protected boolean mToSave = true;       // If the command is to save
-        protected boolean mAutoDelete = true;   // Deleted when it is spent
+
+        protected int mPriority = 0;            // The command priority
+        protected String mId = null;            // Unique id, created when needed
+        protected long mCreatedAt = 0;          // When the command was created
+        protected long mLastAttemptAt = 0;      // When the command was last executed
+
+        // The sequence number inside the queue, 0 if not queued
+        protected transient volatile long mQueueKey = 0;
+        // The estimated size when added to the queue
+        protected transient int mQueueBytes = 0;
+        // If the command is in execution from the queue
+        protected transient volatile boolean mRunning = false;
+        // The concurrency limiter slot taken by the execution
+        protected transient volatile ScConcurrencyLimiter mSlot = null;
+        // The record inside the shared queue store, 0 if not stored
+        protected transient volatile long mStoreId = 0;
+        // The entry inside the queue next execution index, null if not indexed
+        protected transient ScCommandQueue.Due mDue = null;
+        // The polling and dependencies status, created when first needed
+        protected transient Extra mExtra = null;
 
 
         // Constructor
         public SchedulableCommand(String methodName) {
             super(methodName);                  // Call the super method
+            this.mFlags = ScServer.FLAG_TO_SAVE | ScServer.FLAG_AUTO_DELETE;
             this.mNextExecution = this.now();   // Set the next execution to now
+            this.mCreatedAt = this.mNextExecution;
         }
 
 
@@ -806,10 +2800,21 @@ public class ScServer extends ScChecker {
          * Private methods
          */
 
-        // Get the current time
+        // Get the current time from the server clock
         protected long now() {
-            Calendar c = Calendar.getInstance();
-            return c.getTimeInMillis();
+            return ScServer.this.mClock.now();
+        }
+
+        // Get the polling and dependencies status creating it if needed
+        protected synchronized Extra extra() {
+            if (this.mExtra == null) this.mExtra = new Extra();
+            return this.mExtra;
+        }
+
+        // Get the polling and dependencies status, a default one if not created
+        protected Extra peekExtra() {
+            Extra extra = this.mExtra;
+            return extra != null ? extra : ScServer.NO_EXTRA;
         }
 
 
@@ -824,18 +2829,17 @@ public class ScServer extends ScChecker {
         public void forceNextExecutionAtDate(long dateInMillisecond, boolean moveAllGroup) {
             // Check if below to a group and will must be move all commands group
             if (moveAllGroup && this.mGroup != null) {
-                // Calc the delta milliseconds and set the found trigger
+                // Calc the delta milliseconds
                 long delta = dateInMillisecond - this.mNextExecution;
-                boolean found = false;
-
-                // Cycle all commands in the queue searching for the group belonging
-                for (SchedulableCommand command : ScServer.this.mCommandQueue) {
-                    // Check if the cycle reach the command to move
-                    if (command == this) found = true;
-                    // If reach the command and if the current command belong to the same group
-                    if (found && command.getGroup().equals(this.getGroup())) {
+
+                // Cycle the commands in the queue from this searching for the group belonging
+                for (SchedulableCommand command : ScServer.this.mCommandQueue.tail(this)) {
+                    // If the current command belong to the same group.
+                    // The group names are interned so can be compared by reference.
+                    if (command.mGroup == this.mGroup) {
                         // Move the command next execution by the delta time offset
                         command.mNextExecution += delta;
+                        ScServer.this.mCommandQueue.schedule(command);
                     }
                 }
             }
@@ -843,6 +2847,7 @@ public class ScServer extends ScChecker {
             else {
                 // Get the next execution in milliseconds
                 this.mNextExecution = dateInMillisecond;
+                ScServer.this.mCommandQueue.schedule(this);
             }
         }
 
@@ -855,7 +2860,133 @@ public class ScServer extends ScChecker {
         // Check if a command must be to execute.
         @SuppressWarnings("unused")
         public boolean needToExecute() {
-            return this.willTry() && this.mNextExecution <= this.now();
+            return this.willTry() && !this.mRunning && !this.isWaitingPredecessor() &&
+                    this.mNextExecution <= this.now();
+        }
+
+        // Check if the command is waiting for its predecessor success
+        @SuppressWarnings("unused")
+        public boolean isWaitingPredecessor() {
+            return this.peekExtra().mPredecessorId != null &&
+                    !this.getFlag(ScServer.FLAG_PREDECESSOR_DONE);
+        }
+
+        // Declare that this command can be executed only after the predecessor succeed.
+        // If < resultParam > is not null the predecessor result will be passed to this command
+        // as the parameter with this name.
+        // When the predecessor succeed this command is executed immediately.
+        @SuppressWarnings("unused")
+        public void dependsOn(SchedulableCommand predecessor, String resultParam) {
+            // Check for null value
+            if (predecessor == null || predecessor == this) return;
+
+            // Link the commands
+            Extra extra = this.extra();
+            extra.mPredecessorId = predecessor.getId();
+            extra.mResultParam = resultParam;
+            this.setFlag(ScServer.FLAG_PREDECESSOR_DONE, false);
+            predecessor.setFlag(ScServer.FLAG_HAS_SUCCESSORS, true);
+
+            // If the predecessor already succeeded and will not run again release this now
+            if (predecessor.isSuccess() && !predecessor.willTry()) {
+                this.setFlag(ScServer.FLAG_PREDECESSOR_DONE, true);
+                String result = predecessor.peekExtra().mLastResult;
+                if (resultParam != null && result != null) this.addParam(resultParam, result);
+                ScServer.this.mCommandQueue.schedule(this);
+            }
+        }
+
+        @SuppressWarnings("unused")
+        public void dependsOn(SchedulableCommand predecessor) {
+            this.dependsOn(predecessor, null);
+        }
+
+        // Release or cancel the commands that depend on this after the execution
+        protected void solveSuccessors(String result) {
+            // Check if someone depends on this
+            if (!this.getFlag(ScServer.FLAG_HAS_SUCCESSORS)) return;
+
+            // Check the status
+            boolean success = this.isSuccess();
+            boolean failed = this.isError() && !this.willTry();
+            if (!success && !failed) return;
+
+            // Find the successors in the queue
+            ArrayList<SchedulableCommand> successors = new ArrayList<>();
+            for (SchedulableCommand command : ScServer.this.mCommandQueue) {
+                if (command.isWaitingPredecessor() &&
+                        this.mId.equals(command.peekExtra().mPredecessorId))
+                    successors.add(command);
+            }
+
+            // Cycle all successors
+            for (SchedulableCommand successor : successors) {
+                if (success) {
+                    // Pass the result and release the successor
+                    String param = successor.peekExtra().mResultParam;
+                    if (param != null && result != null) successor.addParam(param, result);
+                    successor.setFlag(ScServer.FLAG_PREDECESSOR_DONE, true);
+                    successor.mNextExecution = this.now();
+                    ScServer.this.mCommandQueue.schedule(successor);
+                    ScServer.this.dispatchSuccessor(successor);
+
+                } else if (!successor.getFlag(ScServer.FLAG_HOLD)) {
+                    // Cancel the successor and its successors
+                    successor.cancel(this.mLastError);
+                }
+                // Else the successor is held until the predecessor succeed
+            }
+        }
+
+        // Cancel the command because its predecessor failed.
+        // The command is spent and the listeners are called with an error.
+        protected void cancel(Exception cause) {
+            // Set the status
+            this.setFlag(ScServer.FLAG_CANCELLED, true);
+            this.setFlag(ScServer.FLAG_SUCCESS, false);
+            this.mLastError = new IllegalStateException("Predecessor failed", cause);
+            ScServer.this.mQueueExecuted = true;
+            // Index it so it is removed at the next check
+            ScServer.this.mCommandQueue.schedule(this);
+
+            // Call the listeners and the successors
+            this.callAfterExecuteListeners(null);
+            this.solveSuccessors(null);
+        }
+
+        // Mark the command in execution from the queue.
+        // Return false if already in execution.
+        protected synchronized boolean tryStart() {
+            if (this.mRunning) return false;
+            // A shared command is executed only by the process that claim it
+            if (!ScServer.this.claimStored(this)) return false;
+            this.mRunning = true;
+            ScServer.this.countInFlight(this.getGroup(), 1);
+            return true;
+        }
+
+        // Mark the command execution finished
+        protected void finish() {
+            // Share the new status
+            ScServer.this.releaseStored(this);
+            if (this.mRunning) ScServer.this.countInFlight(this.getGroup(), -1);
+            this.mRunning = false;
+            // Index it again if it was taken from the index while in execution
+            ScServer.this.mCommandQueue.schedule(this);
+        }
+
+        // Check if a command waiting for its delay must be executed on the queue flush.
+        // Only the commands become due while offline and the ones waiting the retry delay
+        // after a failure are flushed. The commands scheduled in the future, the persistent
+        // executed with success and the ones the server asked to try later wait anyway.
+        @SuppressWarnings("unused")
+        public boolean needToFlush() {
+            // Check if can be executed
+            if (!this.willTry() || this.mRunning || this.isWaitingPredecessor()) return false;
+            // Due or delayed by a failure
+            return this.mNextExecution <= this.now() ||
+                    (this.isExecuted() && this.isError() && this.mLastError != null &&
+                            ScServer.this.mFailureClassifier.getRetryAfter(this.mLastError) < 0);
         }
 
 
@@ -867,36 +2998,125 @@ public class ScServer extends ScChecker {
         @Override
         @SuppressWarnings("unused")
         public boolean willTry() {
-            return this.mPersistent || !this.isExecuted() ||
-                    (this.isError() && (this.mMaxRetry == 0 || this.mTryCount < this.mMaxRetry));
+            return !this.getFlag(ScServer.FLAG_CANCELLED) &&
+                    !this.getFlag(ScServer.FLAG_REJECTED) &&
+                    (this.getFlag(ScServer.FLAG_PERSISTENT) || !this.isExecuted() ||
+                    (this.isError() && (this.mMaxRetry == 0 || this.mTryCount < this.mMaxRetry)));
+        }
+
+        // The cancelled command is in error even if never executed
+        @Override
+        public boolean isError() {
+            return this.getFlag(ScServer.FLAG_CANCELLED) || super.isError();
         }
 
         // Custom execute
         @Override
         @SuppressWarnings("unused")
         public String execute() {
-            // Call the listener
-            this.callBeforeExecuteListeners();
+            // Call the listener.
+            // With the change detection the listeners are called only when the answer change,
+            // so the request is notified after the execution together with its end.
+            boolean detection = this.getFlag(ScServer.FLAG_CHANGE_DETECTION);
+            if (!detection) this.callBeforeExecuteListeners();
 
             // Super execute
+            this.mLastAttemptAt = this.now();
             String result = this.internalExecute();
+            ScServer.this.mQueueExecuted = true;
+
+            // Held because the device is offline, so the command stay due without notify an
+            // error and is tried again when the connection come back
+            if (this.getFlag(ScServer.FLAG_OFFLINE)) {
+                ScServer.this.mCommandQueue.schedule(this);
+                return null;
+            }
+
+            // Check if the answer changed from the last one and adapt the polling delay
+            boolean changed = this.detectChange(result);
 
             // If the command is persistent or have an error it must be rescheduled.
-            // Do it only if the retry delay is more than zero.
-            if (this.mRetryDelay > 0 && this.willTry()) {
+            // Do it only if the delay is more than zero.
+            long delay = this.isSuccess() ? this.getPollDelay() : this.getFailureDelay();
+            if (delay > 0 && this.willTry()) {
                 // Calc the next execution
-                long nextExecution = this.now() + this.mRetryDelay;
+                long nextExecution = this.now() + delay;
                 // Apply to all group
                 this.forceNextExecutionAtDate(nextExecution, true);
             }
+            // Index the next execution, also of the spent command so it is removed at the
+            // next check
+            ScServer.this.mCommandQueue.schedule(this);
 
-            // Super call listener
-            this.callAfterExecuteListeners(result);
+            // The spent command not need the encoded request anymore
+            if (!this.willTry()) this.mEncodedRequest = null;
+
+            // Super call listener only if the answer changed
+            if (changed) {
+                if (detection) this.callBeforeExecuteListeners();
+                this.callAfterExecuteListeners(result);
+            } else ScServer.this.mMetrics.recordUnchanged();
+
+            // Hold the result for the successors added later and release the waiting ones
+            if (this.getFlag(ScServer.FLAG_HAS_SUCCESSORS))
+                this.extra().mLastResult = this.isSuccess() ? result : null;
+            this.solveSuccessors(result);
 
             // Return
             return result;
         }
 
+        // Check if the answer is changed from the last one.
+        // Always true if the change detection is not active or the execution failed.
+        // When the polling is adaptive stretch the delay while the answer not change and reset
+        // it when change.
+        protected boolean detectChange(String result) {
+            // Check if must detect
+            if (!this.getFlag(ScServer.FLAG_CHANGE_DETECTION) || !this.isSuccess()) return true;
+
+            // Calculate the answer digest and compare with the last one
+            Extra extra = this.extra();
+            byte[] digest = ScServer.digest(result);
+            boolean changed = extra.mLastDigest == null ||
+                    !Arrays.equals(digest, extra.mLastDigest);
+            extra.mLastDigest = digest;
+
+            // Adapt the polling delay
+            if (extra.mMaxPollDelay > this.mRetryDelay) {
+                extra.mPollDelay = changed ? this.mRetryDelay :
+                        (int) Math.min(extra.mMaxPollDelay, Math.max(
+                                (long) (this.getPollDelay() * ScServer.POLL_STRETCH),
+                                this.getPollDelay() + 1));
+            }
+
+            // Return the status
+            return changed;
+        }
+
+        // Get the delay before the next try after a failure.
+        // The server can ask when try again, else a throttled failure back off doubling the
+        // delay at every try.
+        protected long getFailureDelay() {
+            // The delay asked
+            ScFailureClassifier classifier = ScServer.this.mFailureClassifier;
+            long retryAfter = classifier.getRetryAfter(this.mLastError);
+            if (retryAfter >= 0) return retryAfter;
+
+            // Back off if throttled
+            if (classifier.classify(this.mLastError) != ScFailureClassifier.Kind.THROTTLED)
+                return this.mRetryDelay;
+            long delay = Math.max(this.mRetryDelay, ScServer.THROTTLE_DELAY);
+            return Math.min(ScServer.MAX_THROTTLE_DELAY,
+                    delay << Math.min(Math.max(this.mTryCount - 1, 0), 16));
+        }
+
+        // Get the current polling delay
+        protected long getPollDelay() {
+            Extra extra = this.peekExtra();
+            return extra.mPollDelay > 0 && extra.mMaxPollDelay > this.mRetryDelay ?
+                    extra.mPollDelay : this.mRetryDelay;
+        }
+
         // Reset the command counters
         @Override
         @SuppressWarnings("unused")
@@ -904,7 +3124,10 @@ public class ScServer extends ScChecker {
             // Call the super class method
             super.reset();
             // Reset
-            this.mAutoDelete = true;
+            this.setFlag(ScServer.FLAG_AUTO_DELETE, true);
+            this.setFlag(ScServer.FLAG_CANCELLED, false);
+            // Can be executed again
+            ScServer.this.mCommandQueue.schedule(this);
         }
 
 
@@ -913,55 +3136,130 @@ public class ScServer extends ScChecker {
          */
 
         // Serialize this instance
-        // IMPORTANT! all parameters not serializable will be excluded.
         private void writeObject(final ObjectOutputStream out)
                 throws IOException {
+            this.writeTo(out);
+        }
+
+        // Deserialize this instance
+        private void readObject(final ObjectInputStream in)
+                throws IOException, ClassNotFoundException {
+            this.readFrom(in);
+        }
+
+        // Write the command status.
+        // IMPORTANT! all parameters not serializable will be excluded.
+        void writeTo(final ObjectOutputStream out)
+                throws IOException {
             // Select only the serializable parameters
-            Hashtable<String, Object> paramsHolder = new Hashtable<>();
-            for (String key : this.mParams.keySet()) {
-                // Get the current object
-                Object object = this.mParams.get(key);
+            Object[] params = this.mParams;
+            ArrayList<Object> paramsHolder = new ArrayList<>(params.length);
+            for (int index = 0; index < params.length; index += 2) {
                 // Check if the parameter is serializable
-                if (object instanceof Serializable) {
-                    // Add the current object to the list
-                    paramsHolder.put(key, object);
+                if (params[index + 1] instanceof Serializable) {
+                    // Add the name and the value to the list
+                    paramsHolder.add(params[index]);
+                    paramsHolder.add(params[index + 1]);
                 }
             }
 
             // Write inside the parcel destination
             out.writeUTF(this.mMethodName == null ? "" : this.mMethodName);
-            out.writeObject(paramsHolder);
+            out.writeObject(paramsHolder.toArray());
             out.writeInt(this.mTryCount);
-            out.writeBoolean(this.mPersistent);
-            out.writeBoolean(this.mSuccess);
+            out.writeBoolean(this.getFlag(ScServer.FLAG_PERSISTENT));
+            out.writeBoolean(this.getFlag(ScServer.FLAG_SUCCESS));
             out.writeInt(this.mMaxRetry);
             out.writeInt(this.mRetryDelay);
             out.writeLong(this.mNextExecution);
             out.writeUTF(this.mGroup == null ? "" : this.mGroup);
-            out.writeBoolean(this.mToSave);
-            out.writeBoolean(this.mAutoDelete);
+            out.writeBoolean(this.getFlag(ScServer.FLAG_TO_SAVE));
+            out.writeBoolean(this.getFlag(ScServer.FLAG_AUTO_DELETE));
+            out.writeBoolean(this.getFlag(ScServer.FLAG_IDEMPOTENT));
+            out.writeInt(this.mPriority);
+            out.writeBoolean(this.getFlag(ScServer.FLAG_CHANGE_DETECTION));
+            // The polling delays are held as int but written as long like when they were long,
+            // so the queues already saved are still read
+            Extra extra = this.peekExtra();
+            out.writeLong(extra.mMaxPollDelay);
+            out.writeLong(extra.mPollDelay);
+            out.writeObject(extra.mLastDigest);
+            out.writeObject(this.mId);
+            out.writeObject(extra.mPredecessorId);
+            out.writeObject(extra.mResultParam);
+            out.writeBoolean(this.getFlag(ScServer.FLAG_PREDECESSOR_DONE));
+            out.writeBoolean(this.getFlag(ScServer.FLAG_HAS_SUCCESSORS));
+            out.writeBoolean(this.getFlag(ScServer.FLAG_CANCELLED));
+            out.writeInt(this.getDependencyPolicy().ordinal());
+            out.writeLong(this.mCreatedAt);
+            out.writeLong(this.mLastAttemptAt);
         }
 
-        // Deserialize this instance
+        // Read the command status
         @SuppressWarnings("unchecked")
-        private void readObject(final ObjectInputStream in)
+        void readFrom(final ObjectInputStream in)
                 throws IOException, ClassNotFoundException {
             // Read all values
-            this.mMethodName = in.readUTF();
-            this.mParams = (Hashtable<String, Object>) in.readObject();
+            this.mMethodName = ScServer.intern(in.readUTF());
+            this.mParams = ScServer.NO_PARAMS;
+            Object params = in.readObject();
             this.mTryCount = in.readInt();
-            this.mPersistent = in.readBoolean();
-            this.mSuccess = in.readBoolean();
+            this.setFlag(ScServer.FLAG_PERSISTENT, in.readBoolean());
+            this.setFlag(ScServer.FLAG_SUCCESS, in.readBoolean());
             this.mMaxRetry = in.readInt();
             this.mRetryDelay = in.readInt();
             this.mNextExecution = in.readLong();
-            this.mGroup = in.readUTF();
-            this.mToSave = in.readBoolean();
-            this.mAutoDelete = in.readBoolean();
+            this.mGroup = ScServer.intern(in.readUTF());
+            this.setFlag(ScServer.FLAG_TO_SAVE, in.readBoolean());
+            this.setFlag(ScServer.FLAG_AUTO_DELETE, in.readBoolean());
+
+            // Values added after the first version.
+            // The old saved queues not have them so keep the default values.
+            try {
+                this.setFlag(ScServer.FLAG_IDEMPOTENT, in.readBoolean());
+                this.mPriority = in.readInt();
+                this.setFlag(ScServer.FLAG_CHANGE_DETECTION, in.readBoolean());
+                int maxPollDelay = ScServer.toDelay(in.readLong());
+                int pollDelay = ScServer.toDelay(in.readLong());
+                byte[] lastDigest = (byte[]) in.readObject();
+                this.mId = (String) in.readObject();
+                String predecessorId = (String) in.readObject();
+                String resultParam = (String) in.readObject();
+                // Create the status only if used
+                if (maxPollDelay != 0 || pollDelay != 0 || lastDigest != null ||
+                        predecessorId != null || resultParam != null) {
+                    Extra extra = this.extra();
+                    extra.mMaxPollDelay = maxPollDelay;
+                    extra.mPollDelay = pollDelay;
+                    extra.mLastDigest = lastDigest;
+                    extra.mPredecessorId = predecessorId;
+                    extra.mResultParam = resultParam;
+                }
+                this.setFlag(ScServer.FLAG_PREDECESSOR_DONE, in.readBoolean());
+                this.setFlag(ScServer.FLAG_HAS_SUCCESSORS, in.readBoolean());
+                this.setFlag(ScServer.FLAG_CANCELLED, in.readBoolean());
+                this.setDependencyPolicy(DependencyPolicy.values()[in.readInt()]);
+                this.mCreatedAt = in.readLong();
+                this.mLastAttemptAt = in.readLong();
+            } catch (EOFException | OptionalDataException e) {
+                // Old version.
+                // Reading an object past the end of a record raise the optional data error.
+            }
 
             // Validate
             if (this.mMethodName.isEmpty()) this.mMethodName = null;
             if (this.mGroup.isEmpty()) this.mGroup = null;
+
+            // Fill the parameters.
+            // The old versions saved the parameters inside a table.
+            if (params instanceof Map) {
+                for (Map.Entry<String, Object> entry : ((Map<String, Object>) params).entrySet())
+                    this.addParam(entry.getKey(), entry.getValue());
+            } else if (params instanceof Object[]) {
+                Object[] values = (Object[]) params;
+                for (int index = 0; index < values.length; index += 2)
+                    this.addParam((String) values[index], values[index + 1]);
+            }
         }
 
 
@@ -973,12 +3271,13 @@ public class ScServer extends ScChecker {
         // Default value: false
         @SuppressWarnings("unused")
         public void setPersistent(boolean value) {
-            this.mPersistent = value;
+            this.setFlag(ScServer.FLAG_PERSISTENT, value);
+            ScServer.this.mCommandQueue.schedule(this);
         }
 
         @SuppressWarnings("unused")
         public Boolean getPersistent() {
-            return this.mPersistent;
+            return this.getFlag(ScServer.FLAG_PERSISTENT);
         }
 
         // Get/Set the max number of retries in error case.
@@ -986,6 +3285,7 @@ public class ScServer extends ScChecker {
         @SuppressWarnings("unused")
         public void setMaxRetry(int value) {
             this.mMaxRetry = value;
+            ScServer.this.mCommandQueue.schedule(this);
         }
 
         @SuppressWarnings("unused")
@@ -1010,7 +3310,7 @@ public class ScServer extends ScChecker {
         @SuppressWarnings("unused")
         public void setGroup(String value) {
             if (value != null && value.trim().isEmpty()) value = null;
-            this.mGroup = value;
+            this.mGroup = ScServer.intern(value);
         }
 
         @SuppressWarnings("unused")
@@ -1022,12 +3322,12 @@ public class ScServer extends ScChecker {
         // Default value: true
         @SuppressWarnings("unused")
         public void setToSave(Boolean value) {
-            this.mToSave = value;
+            this.setFlag(ScServer.FLAG_TO_SAVE, value);
         }
 
         @SuppressWarnings("unused")
         public boolean getToSave() {
-            return this.mToSave;
+            return this.getFlag(ScServer.FLAG_TO_SAVE);
         }
 
         // Get/Set the auto-delete trigger.
@@ -1035,39 +3335,459 @@ public class ScServer extends ScChecker {
         // Default value: true
         @SuppressWarnings("unused")
         public void setAutoDelete(Boolean value) {
-            this.mAutoDelete = value;
+            this.setFlag(ScServer.FLAG_AUTO_DELETE, value);
         }
 
         @SuppressWarnings("unused")
         public boolean getAutoDelete() {
-            return this.mAutoDelete;
+            return this.getFlag(ScServer.FLAG_AUTO_DELETE);
+        }
+
+        // Get/Set the command priority.
+        // Used by the DROP_LOWEST_PRIORITY overflow policy, higher is more important.
+        // Default value: 0
+        @SuppressWarnings("unused")
+        public void setPriority(int value) {
+            this.mPriority = value;
+        }
+
+        @SuppressWarnings("unused")
+        public int getPriority() {
+            return this.mPriority;
+        }
+
+        // Get/Set the change detection status.
+        // If true the digest of the last answer is held and the listeners are not called when
+        // the server return the same answer again.
+        // Default value: false
+        @SuppressWarnings("unused")
+        public void setChangeDetection(boolean value) {
+            this.setFlag(ScServer.FLAG_CHANGE_DETECTION, value);
+            if (!value && this.mExtra != null) this.mExtra.mLastDigest = null;
+        }
+
+        @SuppressWarnings("unused")
+        public boolean getChangeDetection() {
+            return this.getFlag(ScServer.FLAG_CHANGE_DETECTION);
+        }
+
+        // Get/Set the max adaptive polling delay in milliseconds.
+        // Work with the change detection. While the answer not change the delay between the
+        // executions is stretched from the retry delay up to this value, when the answer change
+        // it come back to the retry delay.
+        // Default value: 0 (not adaptive)
+        @SuppressWarnings("unused")
+        public void setMaxPollDelay(long value) {
+            int delay = ScServer.toDelay(value);
+            if (delay == 0 && this.mExtra == null) return;
+            Extra extra = this.extra();
+            extra.mMaxPollDelay = delay;
+            extra.mPollDelay = 0;
+        }
+
+        @SuppressWarnings("unused")
+        public long getMaxPollDelay() {
+            return this.peekExtra().mMaxPollDelay;
+        }
+
+        // Get the command unique id.
+        // The id is created at the first request and saved with the command.
+        @SuppressWarnings("unused")
+        public synchronized String getId() {
+            if (this.mId == null) this.mId = UUID.randomUUID().toString();
+            return this.mId;
+        }
+
+        // Get when the command was created
+        @SuppressWarnings("unused")
+        public long getCreatedAt() {
+            return this.mCreatedAt;
+        }
+
+        // Get when the command was last executed, 0 if never
+        @SuppressWarnings("unused")
+        public long getLastAttemptAt() {
+            return this.mLastAttemptAt;
+        }
+
+        // Get/Set what to do when the predecessor fail for good.
+        // Default value: CANCEL
+        @SuppressWarnings("unused")
+        public void setDependencyPolicy(DependencyPolicy value) {
+            this.setFlag(ScServer.FLAG_HOLD, value == DependencyPolicy.HOLD);
+        }
+
+        @SuppressWarnings("unused")
+        public DependencyPolicy getDependencyPolicy() {
+            return this.getFlag(ScServer.FLAG_HOLD) ?
+                    DependencyPolicy.HOLD : DependencyPolicy.CANCEL;
+        }
+
+    }
+
+
+    /******************************************************************************************
+     * DUE COMMANDS CLASS
+     * Internal use only
+     *****************************************************************************************/
+
+    /**
+     * The due commands of a group taken from the next execution index only when needed.
+     * The spent commands found are added to the remove list and the ones that can not be
+     * executed now are skipped: they are indexed again when released or finished.
+     */
+    private class DueCommands extends ArrayDeque<SchedulableCommand> {
+
+        private static final long serialVersionUID = 1L;
+
+        private String mGroup = null;                           // The group
+        private List<SchedulableCommand> mToRemove = null;      // The spent commands found
+
+        // Constructor
+        private DueCommands(String group, List<SchedulableCommand> toRemove) {
+            this.mGroup = group;
+            this.mToRemove = toRemove;
+        }
+
+        // Take the next command to execute from the index if nothing is held
+        private void fill() {
+            // Check if already have one
+            if (!super.isEmpty()) return;
+
+            // Cycle the due commands of the group
+            SchedulableCommand command;
+            while ((command = ScServer.this.mCommandQueue.pollReady(this.mGroup)) != null) {
+                // Check if the command is already spent
+                if (!command.willTry()) {
+                    if (ScServer.this.isRemovable(command)) this.mToRemove.add(command);
+
+                } else if (command.needToExecute()) {
+                    super.add(command);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean isEmpty() {
+            this.fill();
+            return super.isEmpty();
+        }
+
+        @Override
+        public SchedulableCommand poll() {
+            this.fill();
+            return super.poll();
+        }
+
+    }
+
+
+    /******************************************************************************************
+     * EXTRA CLASS
+     * Internal use only
+     *****************************************************************************************/
+
+    /**
+     * The status of a schedulable command used only by the adaptive polling and by the
+     * dependencies, held apart so the commands without them not pay its memory
+     */
+    protected static class Extra {
+
+        protected int mMaxPollDelay = 0;        // Max adaptive polling delay
+        protected int mPollDelay = 0;           // Current adaptive polling delay
+        protected byte[] mLastDigest = null;    // Digest of the last answer
+        protected String mPredecessorId = null; // The command this depends on
+        protected String mResultParam = null;   // Parameter filled with the predecessor result
+        protected String mLastResult = null;    // The last result, held only for the successors
+
+    }
+
+
+    /******************************************************************************************
+     * SOAP TRANSPORT CLASS
+     * Internal use only
+     *****************************************************************************************/
+
+    /**
+     * Send the commands through SOAP
+     */
+    private class SoapTransport implements ScTransport {
+
+        @Override
+        public String call(Command command) throws Exception {
+            // Reuse the request encoded by the last try if nothing changed
+            EncodedRequest encoded = command.getEncodedRequest(this);
+            final String methodName = encoded.getMethodName();
+            byte[] body = encoded.getData();
+            SoapObject request = null;
+
+            if (body == null) {
+                // Create the request only one time so the callable parameters are executed once
+                // also when the call is hedged or sent to more servers.
+                request = ScServer.this.createRequest(methodName, encoded.getParams());
+
+                // The stream parameters are encoded on the fly by every call
+                if (!(request instanceof StreamingRequest)) {
+                    body = ScServer.this.encodeRequest(request);
+                    command.setEncodedRequest(encoded, body);
+                }
+            }
+
+            // Call the server
+            final SoapObject streaming = request;
+            final byte[] data = body;
+            return ScServer.this.callExchange(methodName, new Exchange() {
+                @Override
+                public String call(String address, CallContext context) throws Exception {
+                    return ScServer.this.callServerAddress(
+                            address, methodName, streaming, data, context);
+                }
+            }, command.getIdempotent(), ScServer.isRepeatable(encoded.getParams()));
+        }
+
+    }
+
+
+    /******************************************************************************************
+     * EXCHANGE INTERFACE
+     * Internal use only
+     *****************************************************************************************/
+
+    /**
+     * Send an already created request to a server address and return the answer
+     */
+    interface Exchange {
+
+        // Call the server address.
+        // The connection must be held inside the context so the call can be cancelled.
+        String call(String address, CallContext context) throws Exception;
+
+    }
+
+
+    /******************************************************************************************
+     * CALL CONTEXT CLASS
+     * Internal use only
+     *****************************************************************************************/
+
+    /**
+     * Hold the status of a call so it can be cancelled from another thread
+     */
+    static class CallContext {
+
+        private String mExcluded = null;                // Address to try as last
+        private volatile String mAddress = null;        // The current called address
+        private volatile Object mConnection = null;     // The current connection
+        private volatile boolean mCancelled = false;    // Cancelled trigger
+
+        // Constructor
+        private CallContext(String excluded) {
+            this.mExcluded = excluded;
+        }
+
+        // Hold the current connection.
+        // If the call is already cancelled close it immediately.
+        void setConnection(String address, Object connection) {
+            this.mAddress = address;
+            this.mConnection = connection;
+            if (this.mCancelled) this.disconnect();
+        }
+
+        // Get the current called address
+        private String getAddress() {
+            return this.mAddress;
+        }
+
+        // Cancel the call closing the current connection
+        private void cancel() {
+            this.mCancelled = true;
+            this.disconnect();
+        }
+
+        // Check if cancelled
+        boolean isCancelled() {
+            return this.mCancelled;
+        }
+
+        // Close the current connection
+        private void disconnect() {
+            Object connection = this.mConnection;
+            try {
+                if (connection instanceof ServiceConnection)
+                    ((ServiceConnection) connection).disconnect();
+                if (connection instanceof HttpURLConnection)
+                    ((HttpURLConnection) connection).disconnect();
+            } catch (Exception e) {
+                // Already closed
+            }
+        }
+
+    }
+
+
+    /******************************************************************************************
+     * ENCODED TRANSPORT CLASS
+     * Internal use only
+     *****************************************************************************************/
+
+    /**
+     * Transport that send an already encoded request and pass its connection to the call
+     * context, if have one
+     */
+    private static class EncodedTransport extends HttpTransportSE {
+
+        private String mAddress = null;             // The server address
+        private byte[] mBody = null;                // The encoded request
+        private CallContext mContext = null;        // The call context
+
+        // Constructor
+        private EncodedTransport(String url, String address, byte[] body, CallContext context) {
+            super(url);
+            this.mAddress = address;
+            this.mBody = body;
+            this.mContext = context;
+        }
+
+        @Override
+        protected byte[] createRequestData(SoapEnvelope envelope, String encoding) {
+            // Already encoded
+            return this.mBody;
+        }
+
+        @Override
+        public ServiceConnection getServiceConnection() throws IOException {
+            // Without context the call can not be cancelled
+            if (this.mContext == null) return super.getServiceConnection();
+
+            // Check if cancelled before open the connection
+            if (this.mContext.isCancelled()) throw new InterruptedIOException("Call cancelled");
+            // Create the connection and pass it to the context
+            ServiceConnection connection = super.getServiceConnection();
+            this.mContext.setConnection(this.mAddress, connection);
+            return connection;
+        }
+
+    }
+
+
+    /******************************************************************************************
+     * ENCODED REQUEST CLASS
+     * Internal use only
+     *****************************************************************************************/
+
+    /**
+     * The request of a command encoded by a transport.
+     * Hold the method name and the parameters the request is created from, so the transport
+     * must use them and not read again the command.
+     */
+    static class EncodedRequest {
+
+        private Object mOwner = null;               // The transport that encoded the request
+        private String mMethodName = null;          // The method name
+        private Object[] mParams = null;            // The parameters array
+        private long mVersion = 0;                  // The server requests settings version
+        private byte[] mData = null;                // The encoded request
+
+        // Constructor
+        private EncodedRequest(Object owner, String methodName, Object[] params, long version) {
+            this.mOwner = owner;
+            this.mMethodName = methodName;
+            this.mParams = params;
+            this.mVersion = version;
+        }
+
+        // Check if it is the request of the passed status.
+        // The parameters array is replaced at every change so is enough to compare it.
+        private boolean isSame(Object owner, String methodName, Object[] params, long version) {
+            return this.mOwner == owner && this.mParams == params && this.mVersion == version &&
+                    (this.mMethodName == null ?
+                            methodName == null : this.mMethodName.equals(methodName));
+        }
+
+        // Get the method name
+        String getMethodName() {
+            return this.mMethodName;
+        }
+
+        // Get the parameters names and values, read only
+        Object[] getParams() {
+            return this.mParams;
+        }
+
+        // Get the parameters in the adding order, read only
+        Map<String, Object> getParamsMap() {
+            return ScServer.toParamsMap(this.mParams);
+        }
+
+        // Get the encoded request, null if must be encoded
+        byte[] getData() {
+            return this.mData;
+        }
+
+    }
+
+
+    /******************************************************************************************
+     * STREAMING REQUEST CLASS
+     * Internal use only
+     *****************************************************************************************/
+
+    /**
+     * Mark a request with stream parameters
+     */
+    private class StreamingRequest extends SoapObject {
+
+        // Constructor
+        private StreamingRequest(String namespace, String name) {
+            super(namespace, name);
         }
 
     }
 
 
     /******************************************************************************************
-     * MARSHAL DOUBLE CLASS
+     * MARSHAL STREAM CLASS
      * Internal use only
      *****************************************************************************************/
 
     /**
-     * Fix the double type marshalling
+     * Write the stream parameters as base64 encoding them chunk by chunk
      */
-    private class MarshalDouble implements Marshal {
+    private static class MarshalStream implements Marshal {
 
         public Object readInstance(XmlPullParser parser, String namespace, String name,
                                    PropertyInfo expected) throws IOException, XmlPullParserException {
 
-            return Double.parseDouble(parser.nextText());
+            return parser.nextText();
         }
 
         public void register(SoapSerializationEnvelope cm) {
-            cm.addMapping(cm.xsd, "double", Double.class, this);
+            cm.addMapping(cm.xsd, "base64Binary", ScStreamParam.class, this);
         }
 
         public void writeInstance(XmlSerializer writer, Object obj) throws IOException {
-            writer.text(obj.toString());
+            // Open the stream
+            InputStream input = ((ScStreamParam) obj).open();
+            try {
+                // Read a block multiple of 3 bytes so the encoded chunks can be joined
+                byte[] buffer = new byte[ScServer.STREAMING_READ_SIZE];
+                int filled = 0;
+                int read;
+                while ((read = input.read(buffer, filled, buffer.length - filled)) != -1) {
+                    filled += read;
+                    if (filled == buffer.length) {
+                        writer.text(Base64.encodeToString(buffer, 0, filled, Base64.NO_WRAP));
+                        filled = 0;
+                    }
+                }
+                // Write the last block
+                if (filled > 0)
+                    writer.text(Base64.encodeToString(buffer, 0, filled, Base64.NO_WRAP));
+
+            } finally {
+                input.close();
+            }
         }
 
     }
@@ -0,0 +1,64 @@
+package com.sccomponents.interfaces;
+
+import java.io.IOException;
+
+/**
+ * Error answered by the server.
+ * Unlike the connection errors a fault mean the server is working, so the call is not sent
+ * to another server and the concurrency limit is not decreased.
+ */
+@SuppressWarnings("unused")
+public class ScServerFault extends IOException {
+
+    /**
+     * Static and constant
+     */
+
+    private static final long serialVersionUID = 1L;
+
+
+    /**
+     * Private variables
+     */
+
+    private int mStatus = 0;                // The HTTP status
+    private String mCode = null;            // The fault code
+    private long mRetryAfter = -1;          // The delay asked by the server
+
+
+    /**
+     * Public methods
+     */
+
+    // Constructor
+    public ScServerFault(int status, String code, String message) {
+        super(message);
+        this.mStatus = status;
+        this.mCode = code;
+    }
+
+
+    /**
+     * Public properties
+     */
+
+    // Get the HTTP status
+    public int getStatus() {
+        return this.mStatus;
+    }
+
+    // Get the fault code, null if the server not give it
+    public String getCode() {
+        return this.mCode;
+    }
+
+    // Get/Set the milliseconds the server asked to wait before the next try, -1 if not asked
+    void setRetryAfter(long value) {
+        this.mRetryAfter = value;
+    }
+
+    public long getRetryAfter() {
+        return this.mRetryAfter;
+    }
+
+}
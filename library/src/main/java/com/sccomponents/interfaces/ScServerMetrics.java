@@ -0,0 +1,119 @@
+package com.sccomponents.interfaces;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Hold the counters of the server events.
+ * All counters are thread safe and can be read at any time.
+ */
+@SuppressWarnings("unused")
+public class ScServerMetrics {
+
+    /**
+     * Private variables
+     */
+
+    // How many times every overflow policy was applied
+    private AtomicLongArray mOverflows = null;
+    // How many blocked producers gone in timeout
+    private AtomicLong mBlockTimeouts = null;
+    // How many unchanged answers not dispatched
+    private AtomicLong mUnchanged = null;
+    // How many failures of every kind
+    private AtomicLongArray mFailures = null;
+    // The server concurrency limiter
+    private volatile ScConcurrencyLimiter mLimiter = null;
+
+
+    /**
+     * Public methods
+     */
+
+    // Constructor
+    public ScServerMetrics() {
+        // Init
+        this.mOverflows = new AtomicLongArray(ScServer.OverflowPolicy.values().length);
+        this.mBlockTimeouts = new AtomicLong();
+        this.mUnchanged = new AtomicLong();
+        this.mFailures = new AtomicLongArray(ScFailureClassifier.Kind.values().length);
+    }
+
+    // Record an overflow policy application
+    public void recordOverflow(ScServer.OverflowPolicy policy) {
+        this.mOverflows.incrementAndGet(policy.ordinal());
+    }
+
+    // Record a blocked producer gone in timeout
+    public void recordBlockTimeout() {
+        this.mBlockTimeouts.incrementAndGet();
+    }
+
+    // Record an unchanged answer not dispatched to the listeners
+    public void recordUnchanged() {
+        this.mUnchanged.incrementAndGet();
+    }
+
+    // Record a failed execution
+    public void recordFailure(ScFailureClassifier.Kind kind) {
+        this.mFailures.incrementAndGet(kind.ordinal());
+    }
+
+    // Set the concurrency limiter to read
+    public void setConcurrencyLimiter(ScConcurrencyLimiter limiter) {
+        this.mLimiter = limiter;
+    }
+
+    // Reset all the counters
+    public void reset() {
+        for (int index = 0; index < this.mOverflows.length(); index++)
+            this.mOverflows.set(index, 0);
+        this.mBlockTimeouts.set(0);
+        this.mUnchanged.set(0);
+        for (int index = 0; index < this.mFailures.length(); index++)
+            this.mFailures.set(index, 0);
+    }
+
+
+    /**
+     * Public properties
+     */
+
+    // Get how many times the passed overflow policy was applied.
+    // For the REJECT and the drop policies is the number of commands rejected or dropped, for
+    // the BLOCK policy is the number of producers that had to wait.
+    public long getOverflowCount(ScServer.OverflowPolicy policy) {
+        return this.mOverflows.get(policy.ordinal());
+    }
+
+    // Get how many blocked producers gone in timeout
+    public long getBlockTimeoutCount() {
+        return this.mBlockTimeouts.get();
+    }
+
+    // Get how many unchanged answers were not dispatched to the listeners
+    public long getUnchangedCount() {
+        return this.mUnchanged.get();
+    }
+
+    // Get how many executions failed with the passed kind of failure
+    public long getFailureCount(ScFailureClassifier.Kind kind) {
+        return this.mFailures.get(kind.ordinal());
+    }
+
+    // Get the current concurrency limit, -1 if the server not have a limiter
+    public int getConcurrencyLimit() {
+        ScConcurrencyLimiter limiter = this.mLimiter;
+        return limiter != null ? limiter.getLimit() : -1;
+    }
+
+    // Get the history of the concurrency limit changes, the oldest first
+    public List<ScConcurrencyLimiter.Sample> getConcurrencyLimitHistory() {
+        ScConcurrencyLimiter limiter = this.mLimiter;
+        return limiter != null ?
+                limiter.getHistory() : new ArrayList<ScConcurrencyLimiter.Sample>();
+    }
+
+}
@@ -0,0 +1,280 @@
+package com.sccomponents.interfaces;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Solve a server commands queue in virtual time against a fake transport.
+ * The clock never wait: after every queue check it jump to the next due execution, read from
+ * the queue index of the next executions without scan the queue, so hours of scheduling over
+ * millions of commands are simulated in seconds.
+ * The queue is solved on the calling thread one command at time, like the server own check,
+ * so the dispatcher and the concurrency limiter are not used.
+ * The simulated server should not save its queue, else the queue is saved at every check.
+ */
+@SuppressWarnings("unused")
+public class ScSimulator {
+
+    /**
+     * Private variables
+     */
+
+    private ScServer mServer = null;            // The simulated server
+    private ScVirtualClock mClock = null;       // The virtual time
+    private FakeTransport mTransport = null;    // The fake server
+
+
+    /**
+     * Public methods
+     */
+
+    // Constructor
+    public ScSimulator() {
+        this(new ScServer(null));
+    }
+
+    public ScSimulator(ScServer server) {
+        // Init
+        this.mServer = server;
+        this.mClock = new ScVirtualClock(server.getClock().now());
+        this.mTransport = new FakeTransport(this.mClock);
+
+        // Attach the clock and the transport to the server
+        this.mServer.setClock(this.mClock);
+        this.mServer.setTransport(this.mTransport);
+    }
+
+    // Add many commands to the server queue.
+    // If < groups > is more than zero the commands are shared in turn between this number
+    // of groups.
+    // Return the number of commands added.
+    public int addCommands(String methodName, int count, int groups, int maxRetry,
+                           int retryDelay) {
+        // Holder
+        ArrayList<ScServer.SchedulableCommand> commands = new ArrayList<>(Math.max(0, count));
+
+        // Create the commands
+        for (int index = 0; index < count; index++) {
+            ScServer.SchedulableCommand command = this.mServer.newSchedulableCommand(methodName);
+            command.setMaxRetry(maxRetry);
+            command.setRetryDelay(retryDelay);
+            if (groups > 0) command.setGroup("group" + (index % groups));
+            commands.add(command);
+        }
+
+        // Add them to the queue
+        return this.mServer.addCommands(commands);
+    }
+
+    // Solve the queue until it is empty or the passed virtual time is elapsed.
+    // Return the simulation report.
+    public Report run(long duration) {
+        // Holders
+        long start = this.mClock.now();
+        long end = start + Math.max(0, duration);
+        long realStart = System.nanoTime();
+        long calls = this.mTransport.getCalls();
+        long failures = this.mTransport.getFailures();
+        long checks = 0;
+
+        while (this.mServer.getQueueSize() > 0 && this.mClock.now() <= end) {
+            // Check the queue
+            this.mServer.solveQueue();
+            checks++;
+
+            // Jump to the next due execution, at least one millisecond forward.
+            // A spent command not yet removed can be due now, so the next check remove it.
+            long next = this.mServer.getNextExecution();
+            if (next == Long.MAX_VALUE) {
+                // Nothing more to execute, one last check remove the spent commands
+                this.mServer.solveQueue();
+                checks++;
+                break;
+            }
+            this.mClock.set(Math.max(this.mClock.now() + 1, next));
+        }
+
+        // Create the report
+        return new Report(
+                checks,
+                this.mTransport.getCalls() - calls,
+                this.mTransport.getFailures() - failures,
+                this.mServer.getQueueSize(),
+                this.mClock.now() - start,
+                (System.nanoTime() - realStart) / 1000000
+        );
+    }
+
+
+    /**
+     * Public properties
+     */
+
+    // Get the simulated server
+    public ScServer getServer() {
+        return this.mServer;
+    }
+
+    // Get the virtual clock
+    public ScVirtualClock getClock() {
+        return this.mClock;
+    }
+
+    // Get the fake transport
+    public FakeTransport getTransport() {
+        return this.mTransport;
+    }
+
+
+    /******************************************************************************************
+     * FAKE TRANSPORT CLASS
+     *****************************************************************************************/
+
+    /**
+     * Answer to every call after the latency, failing with the settled probability
+     */
+    public static class FakeTransport implements ScTransport {
+
+        private ScVirtualClock mClock = null;       // The virtual time
+        private Random mRandom = null;              // The failures generator
+        private long mLatency = 0;                  // Virtual round-trip time
+        private double mFailureRate = 0;            // Failures probability
+        private String mAnswer = "";                // The answer
+
+        private AtomicLong mCalls = null;           // Calls received
+        private AtomicLong mFailures = null;        // Calls failed
+
+        // Constructor
+        private FakeTransport(ScVirtualClock clock) {
+            this.mClock = clock;
+            this.mRandom = new Random(0);
+            this.mCalls = new AtomicLong();
+            this.mFailures = new AtomicLong();
+        }
+
+        @Override
+        public String call(ScServer.Command command) throws Exception {
+            // Count and let the time pass
+            this.mCalls.incrementAndGet();
+            this.mClock.advance(this.mLatency);
+
+            // Fail if needed
+            if (this.mFailureRate > 0 && this.mRandom.nextDouble() < this.mFailureRate) {
+                this.mFailures.incrementAndGet();
+                throw new IOException("Simulated failure");
+            }
+            // Answer
+            return this.mAnswer;
+        }
+
+        // Get the calls received
+        public long getCalls() {
+            return this.mCalls.get();
+        }
+
+        // Get the calls failed
+        public long getFailures() {
+            return this.mFailures.get();
+        }
+
+        // Get/Set the virtual round-trip time in milliseconds of every call.
+        // Default: 0
+        public void setLatency(long value) {
+            this.mLatency = Math.max(0, value);
+        }
+
+        public long getLatency() {
+            return this.mLatency;
+        }
+
+        // Get/Set the probability, between 0 and 1, that a call fail with a connection error.
+        // Default: 0
+        public void setFailureRate(double value) {
+            this.mFailureRate = Math.max(0, Math.min(1, value));
+        }
+
+        public double getFailureRate() {
+            return this.mFailureRate;
+        }
+
+        // Get/Set the answer of every call.
+        // Default: empty string
+        public void setAnswer(String value) {
+            this.mAnswer = value;
+        }
+
+        public String getAnswer() {
+            return this.mAnswer;
+        }
+
+        // Set the seed of the failures generator so a simulation can be repeated
+        public void setSeed(long seed) {
+            this.mRandom.setSeed(seed);
+        }
+
+    }
+
+
+    /******************************************************************************************
+     * REPORT CLASS
+     *****************************************************************************************/
+
+    /**
+     * The result of a simulation run
+     */
+    public static class Report {
+
+        private long mChecks = 0;           // Queue checks done
+        private long mCalls = 0;            // Calls sent
+        private long mFailures = 0;         // Calls failed
+        private int mRemaining = 0;         // Commands still in queue
+        private long mVirtualTime = 0;      // Simulated milliseconds
+        private long mRealTime = 0;         // Real milliseconds spent
+
+        // Constructor
+        private Report(long checks, long calls, long failures, int remaining,
+                       long virtualTime, long realTime) {
+            this.mChecks = checks;
+            this.mCalls = calls;
+            this.mFailures = failures;
+            this.mRemaining = remaining;
+            this.mVirtualTime = virtualTime;
+            this.mRealTime = realTime;
+        }
+
+        public long getChecks() {
+            return this.mChecks;
+        }
+
+        public long getCalls() {
+            return this.mCalls;
+        }
+
+        public long getFailures() {
+            return this.mFailures;
+        }
+
+        public int getRemaining() {
+            return this.mRemaining;
+        }
+
+        public long getVirtualTime() {
+            return this.mVirtualTime;
+        }
+
+        public long getRealTime() {
+            return this.mRealTime;
+        }
+
+        @Override
+        public String toString() {
+            return "checks=" + this.mChecks + " calls=" + this.mCalls +
+                    " failures=" + this.mFailures + " remaining=" + this.mRemaining +
+                    " virtual=" + this.mVirtualTime + "ms real=" + this.mRealTime + "ms";
+        }
+
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.sccomponents.interfaces;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+
+/**
+ * Binary command parameter read from a stream only when the request is sent.
+ * The content is base64 encoded on the fly inside a chunked request body so the whole payload
+ * is never held in memory.
+ * The file parameters are serializable and a saved command hold only the file path.
+ * The stream parameters can be sent only one time and are never saved: a command with a stream
+ * parameter is not hedged, not sent to another server and not tried again once the stream is
+ * read.
+ */
+@SuppressWarnings("unused")
+public abstract class ScStreamParam {
+
+    /**
+     * Public methods
+     */
+
+    // Constructor
+    protected ScStreamParam() {
+    }
+
+    // Open the stream to read the content
+    public abstract InputStream open() throws IOException;
+
+    // Check if the content can be read more times
+    public abstract boolean isRepeatable();
+
+    // Check if the content was already read and can not be read again
+    public boolean isConsumed() {
+        return false;
+    }
+
+    // Create a parameter reading a file
+    public static ScStreamParam fromFile(File file) {
+        return new FileParam(file.getAbsolutePath());
+    }
+
+    public static ScStreamParam fromFile(String path) {
+        return new FileParam(path);
+    }
+
+    // Create a parameter reading a stream.
+    // The stream will be closed after the request.
+    public static ScStreamParam fromStream(InputStream stream) {
+        return new StreamParam(stream);
+    }
+
+
+    /******************************************************************************************
+     * FILE PARAM CLASS
+     *****************************************************************************************/
+
+    /**
+     * Parameter reading a file
+     */
+    private static class FileParam extends ScStreamParam implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private String mPath = null;        // The file path
+
+        // Constructor
+        private FileParam(String path) {
+            this.mPath = path;
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            return new FileInputStream(this.mPath);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return this.mPath;
+        }
+
+    }
+
+
+    /******************************************************************************************
+     * STREAM PARAM CLASS
+     *****************************************************************************************/
+
+    /**
+     * Parameter reading a stream only one time
+     */
+    private static class StreamParam extends ScStreamParam {
+
+        private InputStream mStream = null;     // The stream still not read
+
+        // Constructor
+        private StreamParam(InputStream stream) {
+            this.mStream = stream;
+        }
+
+        @Override
+        public synchronized InputStream open() throws IOException {
+            // Check if already read
+            if (this.mStream == null) throw new IOException("Stream parameter already consumed");
+            // Give the stream only one time
+            InputStream stream = this.mStream;
+            this.mStream = null;
+            return stream;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public synchronized boolean isConsumed() {
+            return this.mStream == null;
+        }
+
+    }
+
+}
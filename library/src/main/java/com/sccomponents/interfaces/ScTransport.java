@@ -0,0 +1,16 @@
+package com.sccomponents.interfaces;
+
+/**
+ * Send a command to the server and return the answer.
+ * The queue, the retries and the listeners not depend on the transport, so every method can
+ * be sent with a different one.
+ * The built-in transport send the commands through SOAP, <code>ScHttpTransport</code> send
+ * them over HTTP with a custom codec.
+ */
+public interface ScTransport {
+
+    // Call the server method of the command with its parameters.
+    // Throw an exception if the call failed.
+    String call(ScServer.Command command) throws Exception;
+
+}
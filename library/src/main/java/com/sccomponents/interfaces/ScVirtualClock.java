@@ -0,0 +1,47 @@
+package com.sccomponents.interfaces;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clock moved only by code.
+ * Useful to test the scheduling without wait or to simulate a long time in a few seconds.
+ */
+@SuppressWarnings("unused")
+public class ScVirtualClock implements ScClock {
+
+    /**
+     * Private variables
+     */
+
+    private AtomicLong mTime = null;        // The current time
+
+
+    /**
+     * Public methods
+     */
+
+    // Constructor
+    public ScVirtualClock() {
+        this(0);
+    }
+
+    public ScVirtualClock(long time) {
+        this.mTime = new AtomicLong(time);
+    }
+
+    @Override
+    public long now() {
+        return this.mTime.get();
+    }
+
+    // Move the time forward by the passed milliseconds and return the new time
+    public long advance(long milliseconds) {
+        return this.mTime.addAndGet(Math.max(0, milliseconds));
+    }
+
+    // Set the current time
+    public void set(long time) {
+        this.mTime.set(time);
+    }
+
+}
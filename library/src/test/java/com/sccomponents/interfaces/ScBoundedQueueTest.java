@@ -0,0 +1,94 @@
+package com.sccomponents.interfaces;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check the overflow policies of a bounded queue.
+ */
+public class ScBoundedQueueTest {
+
+    // Transport that add a new command to the full queue while executing
+    private static class ProducerTransport implements ScTransport {
+
+        private ScServer mServer = null;                // The server to feed
+        private ScServer.QueueStatus mStatus = null;    // The status of the adding
+        private long mElapsed = 0;                      // The adding time
+
+        @Override
+        public String call(ScServer.Command command) throws Exception {
+            if (this.mStatus == null) {
+                long start = System.nanoTime();
+                this.mStatus = this.mServer.offerCommand(
+                        this.mServer.newSchedulableCommand("Next"));
+                this.mElapsed = (System.nanoTime() - start) / 1000000;
+            }
+            return "ok";
+        }
+
+    }
+
+    @Test
+    public void fullQueue_rejectsTheCommand() throws Exception {
+        // A queue of two commands
+        ScServer server = new ScServer(null);
+        server.setMaxQueueSize(2);
+        ScServer.SchedulableCommand command = server.newSchedulableCommand("Send1");
+
+        // Check the statuses
+        assertEquals(ScServer.QueueStatus.ADDED, server.offerCommand(command, false));
+        assertEquals(ScServer.QueueStatus.DUPLICATED, server.offerCommand(command, false));
+        assertEquals(ScServer.QueueStatus.ADDED,
+                server.offerCommand(server.newSchedulableCommand("Send2"), false));
+        assertEquals(ScServer.QueueStatus.REJECTED,
+                server.offerCommand(server.newSchedulableCommand("Send3"), false));
+        assertEquals(2, server.getQueueSize());
+    }
+
+    @Test
+    public void runningCommand_isNotDropped() throws Exception {
+        // A full queue with the oldest command in execution
+        ScServer server = new ScServer(null);
+        server.setMaxQueueSize(2);
+        server.setOverflowPolicy(ScServer.OverflowPolicy.DROP_OLDEST_IN_GROUP);
+        ScServer.SchedulableCommand running = server.newSchedulableCommand("Send1");
+        ScServer.SchedulableCommand waiting = server.newSchedulableCommand("Send2");
+        server.addCommand(running, false);
+        server.addCommand(waiting, false);
+        assertTrue(running.tryStart());
+
+        // The waiting one is dropped
+        assertEquals(ScServer.QueueStatus.ADDED,
+                server.offerCommand(server.newSchedulableCommand("Send3"), false));
+        assertSame(running, server.findCommand("Send1"));
+        assertNull(server.findCommand("Send2"));
+
+        // Only running commands left so nothing can be dropped
+        server.removeCommand("Send3");
+        server.setMaxQueueSize(1);
+        assertEquals(ScServer.QueueStatus.REJECTED,
+                server.offerCommand(server.newSchedulableCommand("Send4"), false));
+        assertSame(running, server.findCommand("Send1"));
+    }
+
+    @Test
+    public void queueThread_isNotBlocked() throws Exception {
+        // A full blocking queue fed by the command in execution
+        ScSimulator simulator = new ScSimulator();
+        ScServer server = simulator.getServer();
+        ProducerTransport transport = new ProducerTransport();
+        transport.mServer = server;
+        server.setTransport(transport);
+        server.setMaxQueueSize(1);
+        server.setOverflowPolicy(ScServer.OverflowPolicy.BLOCK);
+        server.setBlockTimeout(5000);
+        server.addCommand(server.newSchedulableCommand("Send"), false);
+
+        // The queue thread is not waiting for itself
+        server.solveQueue();
+        assertEquals(ScServer.QueueStatus.REJECTED, transport.mStatus);
+        assertTrue(transport.mElapsed < 1000);
+    }
+
+}
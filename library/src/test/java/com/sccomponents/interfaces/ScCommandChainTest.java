@@ -0,0 +1,82 @@
+package com.sccomponents.interfaces;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that the successors are executed as soon as their predecessor succeeded.
+ */
+public class ScCommandChainTest {
+
+    // Transport that record the called methods
+    private static class RecordingTransport implements ScTransport {
+
+        private List<String> mMethods = new CopyOnWriteArrayList<>();   // The called methods
+        private CountDownLatch mDone = null;                            // Count the calls
+
+        // Constructor
+        private RecordingTransport(int calls) {
+            this.mDone = new CountDownLatch(calls);
+        }
+
+        @Override
+        public String call(ScServer.Command command) throws Exception {
+            this.mMethods.add(command.getMethodName());
+            this.mDone.countDown();
+            return command.getMethodName();
+        }
+
+    }
+
+    // Add a chain of three commands to the server queue
+    private static void addChain(ScServer server) {
+        ScServer.SchedulableCommand first = server.newSchedulableCommand("First");
+        ScServer.SchedulableCommand second = server.newSchedulableCommand("Second");
+        ScServer.SchedulableCommand third = server.newSchedulableCommand("Third");
+        third.dependsOn(second, "value");
+        second.dependsOn(first, "value");
+        server.addCommand(third, false);
+        server.addCommand(second, false);
+        server.addCommand(first, false);
+    }
+
+    @Test
+    public void chain_isExecutedByOneCheck() throws Exception {
+        // A chain on the sequential queue check
+        ScSimulator simulator = new ScSimulator();
+        RecordingTransport transport = new RecordingTransport(3);
+        simulator.getServer().setTransport(transport);
+        ScCommandChainTest.addChain(simulator.getServer());
+
+        // All executed in order without wait the next check
+        simulator.getServer().solveQueue();
+        assertEquals(3, transport.mMethods.size());
+        assertEquals("First", transport.mMethods.get(0));
+        assertEquals("Second", transport.mMethods.get(1));
+        assertEquals("Third", transport.mMethods.get(2));
+    }
+
+    @Test
+    public void chain_isExecutedByOneConcurrentCheck() throws Exception {
+        // A chain on the concurrency limited queue check
+        ScServer server = new ScServer(null);
+        RecordingTransport transport = new RecordingTransport(3);
+        server.setTransport(transport);
+        server.setConcurrencyLimiter(new ScConcurrencyLimiter());
+        ScCommandChainTest.addChain(server);
+
+        // The released successors are started by the workers
+        server.check();
+        assertTrue(transport.mDone.await(5, TimeUnit.SECONDS));
+        assertEquals("First", transport.mMethods.get(0));
+        assertEquals("Second", transport.mMethods.get(1));
+        assertEquals("Third", transport.mMethods.get(2));
+    }
+
+}
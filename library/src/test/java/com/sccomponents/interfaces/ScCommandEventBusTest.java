@@ -0,0 +1,103 @@
+package com.sccomponents.interfaces;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that the events of a queue check are delivered together also when the commands are
+ * executed by many workers.
+ */
+public class ScCommandEventBusTest {
+
+    // Subscriber that record the notifications
+    private static class RecordingSubscriber
+            implements ScCommandEventBus.OnCommandEventsListener {
+
+        private List<Integer> mSizes = new CopyOnWriteArrayList<>();    // The events received
+        private CountDownLatch mDone = null;                            // Count the events
+
+        // Constructor
+        private RecordingSubscriber(int events) {
+            this.mDone = new CountDownLatch(events);
+        }
+
+        @Override
+        public void onCommandEvents(List<ScCommandEventBus.CommandEvent> events) {
+            this.mSizes.add(events.size());
+            for (int index = 0; index < events.size(); index++) this.mDone.countDown();
+        }
+
+    }
+
+    // Transport that answer after a while
+    private static class SlowTransport implements ScTransport {
+
+        @Override
+        public String call(ScServer.Command command) throws Exception {
+            Thread.sleep(20);
+            return "ok";
+        }
+
+    }
+
+    // Create a server with the batching active and some commands in queue
+    private static ScServer newServer(RecordingSubscriber subscriber, int commands) {
+        ScServer server = new ScServer(null);
+        server.setTransport(new SlowTransport());
+        server.getEventBus().setBatching(true);
+        server.getEventBus().subscribe(subscriber);
+        for (int index = 0; index < commands; index++)
+            server.addCommand(server.newSchedulableCommand("Send" + index), false);
+        return server;
+    }
+
+    @Test
+    public void limiterCheck_isDeliveredOnce() throws Exception {
+        // Two commands executed in parallel, the initial limit
+        RecordingSubscriber subscriber = new RecordingSubscriber(4);
+        ScServer server = ScCommandEventBusTest.newServer(subscriber, 2);
+        server.setConcurrencyLimiter(new ScConcurrencyLimiter());
+        server.check();
+
+        // All events with a single notification
+        assertTrue(subscriber.mDone.await(5, TimeUnit.SECONDS));
+        assertEquals(1, subscriber.mSizes.size());
+        assertEquals(4, (int) subscriber.mSizes.get(0));
+    }
+
+    @Test
+    public void dispatcherCheck_isDeliveredOnce() throws Exception {
+        // Three commands executed by the dispatcher workers
+        RecordingSubscriber subscriber = new RecordingSubscriber(6);
+        ScServer server = ScCommandEventBusTest.newServer(subscriber, 3);
+        server.setDispatcher(new ScDispatcher(4));
+
+        // All events with a single notification
+        assertTrue(subscriber.mDone.await(5, TimeUnit.SECONDS));
+        assertEquals(1, subscriber.mSizes.size());
+        assertEquals(6, (int) subscriber.mSizes.get(0));
+    }
+
+    @Test
+    public void fullBatch_isDeliveredBeforeTheEnd() throws Exception {
+        // A shared batch smaller than the events
+        RecordingSubscriber subscriber = new RecordingSubscriber(4);
+        ScServer server = ScCommandEventBusTest.newServer(subscriber, 2);
+        server.getEventBus().setMaxBatchSize(3);
+        server.setConcurrencyLimiter(new ScConcurrencyLimiter());
+        server.check();
+
+        // Check
+        assertTrue(subscriber.mDone.await(5, TimeUnit.SECONDS));
+        assertEquals(2, subscriber.mSizes.size());
+        assertEquals(3, (int) subscriber.mSizes.get(0));
+        assertEquals(1, (int) subscriber.mSizes.get(1));
+    }
+
+}
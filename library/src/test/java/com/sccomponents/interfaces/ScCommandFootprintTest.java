@@ -0,0 +1,72 @@
+package com.sccomponents.interfaces;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check how the queued commands save memory: the names are shared and the status used only by
+ * some commands is created only when needed.
+ */
+public class ScCommandFootprintTest {
+
+    // Create a command like it was loaded, with its own strings
+    private static ScServer.SchedulableCommand newCommand(ScServer server, int index) {
+        ScServer.SchedulableCommand command =
+                server.newSchedulableCommand(new String("SendPosition"));
+        command.setGroup(new String("group" + (index % 10)));
+        command.setMaxRetry(5);
+        command.setRetryDelay(1000);
+        command.addParam(new String("id"), index);
+        command.addParam(new String("value"), index);
+        return command;
+    }
+
+    @Test
+    public void plainCommand_hasNoExtraStatus() throws Exception {
+        // A command without polling and dependencies
+        ScServer server = new ScServer(null);
+        ScServer.SchedulableCommand command = ScCommandFootprintTest.newCommand(server, 1);
+        command.setChangeDetection(false);
+        command.setMaxPollDelay(0);
+        assertNull(command.mExtra);
+        assertFalse(command.isWaitingPredecessor());
+        assertEquals(0, command.getMaxPollDelay());
+
+        // Created by the features that need it
+        command.setMaxPollDelay(5000);
+        assertNotNull(command.mExtra);
+        ScServer.SchedulableCommand successor = ScCommandFootprintTest.newCommand(server, 2);
+        successor.dependsOn(command);
+        assertTrue(successor.isWaitingPredecessor());
+    }
+
+    @Test
+    public void loadedCommands_shareTheStrings() throws Exception {
+        // Create two commands with the same names but different strings
+        ScServer server = new ScServer(null);
+        ScServer.SchedulableCommand first = ScCommandFootprintTest.newCommand(server, 1);
+        ScServer.SchedulableCommand second = ScCommandFootprintTest.newCommand(server, 11);
+
+        // The names are held only one time
+        assertSame(first.getMethodName(), second.getMethodName());
+        assertSame(first.getGroup(), second.getGroup());
+        Object[] names = first.getParams().keySet().toArray();
+        Object[] others = second.getParams().keySet().toArray();
+        assertSame(names[0], others[0]);
+        assertSame(names[1], others[1]);
+    }
+
+    @Test
+    public void estimatedSize_countsOnlyTheValues() throws Exception {
+        // The estimation of a command with two numbers
+        ScServer server = new ScServer(null);
+        ScServer.SchedulableCommand command = ScCommandFootprintTest.newCommand(server, 1);
+        long size = command.estimateSize();
+
+        // The shared names are not counted, the values are
+        command.addParam("value", "a text value");
+        assertTrue(command.estimateSize() > size);
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.sccomponents.interfaces;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check the commands queue order, size and waiting.
+ */
+public class ScCommandQueueTest {
+
+    // Create some commands
+    private static List<ScServer.SchedulableCommand> newCommands(int count) {
+        ScServer server = new ScServer(null);
+        List<ScServer.SchedulableCommand> commands = new ArrayList<>();
+        for (int index = 0; index < count; index++)
+            commands.add(server.newSchedulableCommand("Method" + index));
+        return commands;
+    }
+
+    @Test
+    public void commands_keepTheAddingOrder() throws Exception {
+        // Add
+        ScCommandQueue queue = new ScCommandQueue();
+        List<ScServer.SchedulableCommand> commands = ScCommandQueueTest.newCommands(3);
+        assertEquals(3, queue.addAll(commands));
+
+        // Check
+        assertEquals(commands, queue.toList());
+        assertEquals(3, queue.size());
+        assertTrue(queue.getBytes() > 0);
+    }
+
+    @Test
+    public void command_isQueuedOnlyOneTime() throws Exception {
+        // Add the same command twice
+        ScCommandQueue queue = new ScCommandQueue();
+        ScServer.SchedulableCommand command = ScCommandQueueTest.newCommands(1).get(0);
+        assertTrue(queue.add(command));
+        assertFalse(queue.add(command));
+
+        // A command can not be inside two queues
+        assertFalse(new ScCommandQueue().add(command));
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void removedCommand_releaseItsSize() throws Exception {
+        // Add and remove
+        ScCommandQueue queue = new ScCommandQueue();
+        List<ScServer.SchedulableCommand> commands = ScCommandQueueTest.newCommands(3);
+        queue.addAll(commands);
+        assertTrue(queue.remove(commands.get(1)));
+        assertFalse(queue.remove(commands.get(1)));
+
+        // Check
+        assertEquals(Arrays.asList(commands.get(0), commands.get(2)), queue.toList());
+        assertFalse(queue.contains(commands.get(1)));
+
+        // Empty
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.getBytes());
+
+        // A removed command can be added again
+        assertTrue(queue.add(commands.get(1)));
+    }
+
+    @Test
+    public void iteration_allowTheRemoving() throws Exception {
+        // Remove while iterating
+        ScCommandQueue queue = new ScCommandQueue();
+        List<ScServer.SchedulableCommand> commands = ScCommandQueueTest.newCommands(5);
+        queue.addAll(commands);
+        int count = 0;
+        for (ScServer.SchedulableCommand command : queue) {
+            queue.remove(command);
+            count++;
+        }
+
+        // Every command seen one time
+        assertEquals(5, count);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void changes_countAddsAndRemoves() throws Exception {
+        ScCommandQueue queue = new ScCommandQueue();
+        ScServer.SchedulableCommand command = ScCommandQueueTest.newCommands(1).get(0);
+        long changes = queue.getChanges();
+
+        // Only the real changes count
+        queue.add(command);
+        queue.add(command);
+        queue.remove(command);
+        queue.remove(command);
+        assertEquals(changes + 2, queue.getChanges());
+    }
+
+    @Test
+    public void dueCommands_areTakenByGroupInTheQueueOrder() throws Exception {
+        // Four commands of two groups
+        ScCommandQueue queue = new ScCommandQueue();
+        List<ScServer.SchedulableCommand> commands = ScCommandQueueTest.newCommands(4);
+        commands.get(0).setGroup("b");
+        commands.get(1).setGroup("a");
+        commands.get(2).setGroup("b");
+        commands.get(3).setGroup("a");
+        for (ScServer.SchedulableCommand command : commands) {
+            command.mNextExecution = 1000;
+            queue.add(command);
+        }
+
+        // Nothing due before the time
+        queue.promote(999);
+        assertTrue(queue.getReadyGroups().isEmpty());
+        assertEquals(1000, queue.peekScheduled());
+
+        // The groups in order of their first command
+        queue.promote(1000);
+        assertEquals(Arrays.asList("b", "a"), queue.getReadyGroups());
+        assertEquals(1000, queue.peekScheduled());
+
+        // A command moved later leave the due ones
+        commands.get(1).mNextExecution = 5000;
+        queue.schedule(commands.get(1));
+        assertSame(commands.get(3), queue.pollReady("a"));
+        assertNull(queue.pollReady("a"));
+        assertEquals(Arrays.asList("b"), queue.getReadyGroups());
+
+        // Taken in the queue order and not indexed anymore
+        assertSame(commands.get(0), queue.pollReady("b"));
+        assertSame(commands.get(2), queue.pollReady("b"));
+        assertNull(queue.pollReady("b"));
+        assertEquals(5000, queue.peekScheduled());
+    }
+
+    @Test
+    public void awaitRemoval_wakeUpOnRemove() throws Exception {
+        // Nothing removed
+        final ScCommandQueue queue = new ScCommandQueue();
+        final ScServer.SchedulableCommand command = ScCommandQueueTest.newCommands(1).get(0);
+        queue.add(command);
+        assertFalse(queue.awaitRemoval(10));
+
+        // Remove from another thread
+        Thread remover = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                queue.remove(command);
+            }
+        });
+        remover.start();
+        assertTrue(queue.awaitRemoval(10000));
+        remover.join();
+    }
+
+}
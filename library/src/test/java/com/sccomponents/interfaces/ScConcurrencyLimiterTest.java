@@ -0,0 +1,96 @@
+package com.sccomponents.interfaces;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check how the concurrency limit adapt to the latency and to the failures.
+ */
+public class ScConcurrencyLimiterTest {
+
+    // Start and finish a request
+    private static void call(ScConcurrencyLimiter limiter, long latency, boolean failed) {
+        assertTrue(limiter.tryAcquire());
+        limiter.release(latency, failed);
+    }
+
+    @Test
+    public void requests_areLimited() throws Exception {
+        // Take all the available requests
+        ScConcurrencyLimiter limiter = new ScConcurrencyLimiter();
+        int limit = limiter.getLimit();
+        for (int index = 0; index < limit; index++) assertTrue(limiter.tryAcquire());
+
+        // Check
+        assertFalse(limiter.tryAcquire());
+        assertEquals(0, limiter.getAvailable());
+        assertEquals(limit, limiter.getInFlight());
+
+        // A not executed request free its place without change the limit
+        limiter.release(-1, false);
+        assertEquals(1, limiter.getAvailable());
+        assertEquals(limit, limiter.getLimit());
+    }
+
+    @Test
+    public void fastRequests_increaseTheLimit() throws Exception {
+        // Many requests in time
+        ScConcurrencyLimiter limiter = new ScConcurrencyLimiter();
+        int limit = limiter.getLimit();
+        for (int index = 0; index < 100; index++)
+            ScConcurrencyLimiterTest.call(limiter, 100, false);
+
+        // Additive increase up to the max
+        assertTrue(limiter.getLimit() > limit);
+        assertTrue(limiter.getLimit() <= limiter.getMaxLimit());
+        assertEquals(100.0, limiter.getReferenceLatency(), 0.0);
+    }
+
+    @Test
+    public void failures_decreaseTheLimit() throws Exception {
+        // Grow the limit
+        ScConcurrencyLimiter limiter = new ScConcurrencyLimiter();
+        limiter.setMaxLimit(8);
+        for (int index = 0; index < 200; index++)
+            ScConcurrencyLimiterTest.call(limiter, 100, false);
+        assertEquals(8, limiter.getLimit());
+
+        // Multiplicative decrease
+        ScConcurrencyLimiterTest.call(limiter, 100, true);
+        assertEquals(6, limiter.getLimit());
+
+        // Never under the min
+        for (int index = 0; index < 20; index++)
+            ScConcurrencyLimiterTest.call(limiter, 100, true);
+        assertEquals(limiter.getMinLimit(), limiter.getLimit());
+    }
+
+    @Test
+    public void slowRequests_decreaseTheLimit() throws Exception {
+        // Learn the latency
+        ScConcurrencyLimiter limiter = new ScConcurrencyLimiter();
+        limiter.setMaxLimit(8);
+        for (int index = 0; index < 200; index++)
+            ScConcurrencyLimiterTest.call(limiter, 100, false);
+
+        // A request over the tolerance is like a failure
+        ScConcurrencyLimiterTest.call(limiter, 1000, false);
+        assertEquals(6, limiter.getLimit());
+    }
+
+    @Test
+    public void history_holdTheLimitChanges() throws Exception {
+        // Change the limit
+        ScConcurrencyLimiter limiter = new ScConcurrencyLimiter();
+        int size = limiter.getHistory().size();
+        for (int index = 0; index < 10; index++)
+            ScConcurrencyLimiterTest.call(limiter, 100, false);
+
+        // The last sample is the current limit
+        assertTrue(limiter.getHistory().size() > size);
+        int last = limiter.getHistory().size() - 1;
+        assertEquals(limiter.getLimit(), limiter.getHistory().get(last).getLimit());
+    }
+
+}
@@ -0,0 +1,141 @@
+package com.sccomponents.interfaces;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that the commands are held while the device is offline and flushed when the
+ * connection come back.
+ */
+public class ScConnectivityTest {
+
+    // Transport that fail until it is fixed.
+    // Can lose the connection while calling.
+    private static class FailingTransport implements ScTransport {
+
+        private ScManualConnectivityProvider mProvider = null;  // Lose the connection if exists
+        private boolean mFailing = true;                        // Fail the calls
+        private int mCalls = 0;                                 // The calls received
+
+        @Override
+        public String call(ScServer.Command command) throws Exception {
+            this.mCalls++;
+            if (this.mProvider != null) this.mProvider.setConnected(false);
+            if (this.mFailing) throw new IOException("Connection lost");
+            return "ok";
+        }
+
+    }
+
+    // Listener that count the errors
+    private static class ErrorListener implements ScServer.CommandListener {
+
+        private int mErrors = 0;                    // The errors received
+
+        @Override
+        public void onRequest() {
+        }
+
+        @Override
+        public void onComplete(String value) {
+        }
+
+        @Override
+        public void onError() {
+            this.mErrors++;
+        }
+
+    }
+
+    // Create a server with a command in queue
+    private static ScServer newServer(ScTransport transport, ScConnectivityProvider provider,
+                                      ScServer.CommandListener listener) {
+        ScServer server = new ScServer(null);
+        server.setTransport(transport);
+        server.setConnectivityProvider(provider);
+        ScServer.SchedulableCommand command = server.newSchedulableCommand("Send");
+        command.setRetryDelay(60 * 1000);
+        command.setCommandListener(listener);
+        server.addCommand(command, false);
+        return server;
+    }
+
+    @Test
+    public void sharedProvider_flushesAllServers() throws Exception {
+        // Two servers with a command waiting the retry delay
+        ScManualConnectivityProvider provider = new ScManualConnectivityProvider();
+        FailingTransport transport = new FailingTransport();
+        ScServer first = ScConnectivityTest.newServer(transport, provider, null);
+        ScServer second = ScConnectivityTest.newServer(transport, provider, null);
+        first.solveQueue();
+        second.solveQueue();
+        assertEquals(2, transport.mCalls);
+
+        // The connection go away and come back
+        transport.mFailing = false;
+        provider.setConnected(false);
+        provider.setConnected(true);
+
+        // Both queues are flushed without wait the delay
+        first.solveQueue();
+        second.solveQueue();
+        assertEquals(4, transport.mCalls);
+        assertEquals(0, first.getQueueSize());
+        assertEquals(0, second.getQueueSize());
+    }
+
+    @Test
+    public void removedServer_isNotFlushed() throws Exception {
+        // A server that leave the provider
+        ScManualConnectivityProvider provider = new ScManualConnectivityProvider();
+        FailingTransport transport = new FailingTransport();
+        ScServer server = ScConnectivityTest.newServer(transport, provider, null);
+        server.solveQueue();
+        server.setConnectivityProvider(null);
+
+        // The connection come back
+        transport.mFailing = false;
+        provider.setConnected(false);
+        provider.setConnected(true);
+
+        // Still waiting the delay
+        server.solveQueue();
+        assertEquals(1, transport.mCalls);
+        assertEquals(1, server.getQueueSize());
+    }
+
+    @Test
+    public void offlineFailure_isHeldWithoutError() throws Exception {
+        // A command that lose the connection while executing
+        ScManualConnectivityProvider provider = new ScManualConnectivityProvider();
+        FailingTransport transport = new FailingTransport();
+        transport.mProvider = provider;
+        ErrorListener listener = new ErrorListener();
+        ScServer server = ScConnectivityTest.newServer(transport, provider, listener);
+        ScServer.SchedulableCommand command = server.findCommand("Send");
+        server.solveQueue();
+
+        // Held as never tried
+        assertEquals(1, transport.mCalls);
+        assertEquals(0, listener.mErrors);
+        assertFalse(command.isExecuted());
+        assertNull(command.getLastError());
+
+        // Nothing sent while offline
+        server.solveQueue();
+        assertEquals(1, transport.mCalls);
+
+        // Sent when the connection come back
+        transport.mProvider = null;
+        transport.mFailing = false;
+        provider.setConnected(true);
+        server.solveQueue();
+        assertEquals(2, transport.mCalls);
+        assertEquals(0, listener.mErrors);
+        assertEquals(0, server.getQueueSize());
+    }
+
+}
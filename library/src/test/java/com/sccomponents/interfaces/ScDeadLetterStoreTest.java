@@ -0,0 +1,159 @@
+package com.sccomponents.interfaces;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check the keeping, the query and the replay of the commands failed for good.
+ */
+public class ScDeadLetterStoreTest {
+
+    // Transport that answer with the passed error until it is removed
+    private static class FailingTransport implements ScTransport {
+
+        private Exception mError = null;        // The error to throw
+        private int mCalls = 0;                 // The calls received
+
+        @Override
+        public String call(ScServer.Command command) throws Exception {
+            this.mCalls++;
+            if (this.mError != null) throw this.mError;
+            return "ok";
+        }
+
+    }
+
+    // Create a simulated server that keep the dead letters
+    private static ScSimulator newSimulator(FailingTransport transport) {
+        ScSimulator simulator = new ScSimulator();
+        simulator.getServer().setTransport(transport);
+        simulator.getServer().setDeadLetterStore(new ScDeadLetterStore());
+        return simulator;
+    }
+
+    // Create a command
+    private static ScServer.SchedulableCommand newCommand(ScServer server, String methodName,
+                                                          String group) {
+        ScServer.SchedulableCommand command = server.newSchedulableCommand(methodName);
+        command.setGroup(group);
+        command.setMaxRetry(2);
+        command.setRetryDelay(1000);
+        command.addParam("id", 7);
+        return command;
+    }
+
+    @Test
+    public void failedCommand_isKept() throws Exception {
+        // A command refused by the server
+        FailingTransport transport = new FailingTransport();
+        transport.mError = new ScHttpError(400);
+        ScSimulator simulator = ScDeadLetterStoreTest.newSimulator(transport);
+        ScServer server = simulator.getServer();
+        ScServer.SchedulableCommand command =
+                ScDeadLetterStoreTest.newCommand(server, "Send", "group");
+        server.addCommand(command, false);
+        simulator.run(60 * 1000);
+
+        // Moved out of the queue
+        ScDeadLetterStore store = server.getDeadLetterStore();
+        assertEquals(0, server.getQueueSize());
+        assertEquals(1, store.size());
+
+        // Check the entry
+        ScDeadLetterStore.Entry entry = store.toList().get(0);
+        assertEquals(command.getId(), entry.getCommandId());
+        assertEquals("Send", entry.getMethodName());
+        assertEquals("group", entry.getGroup());
+        assertEquals(ScHttpError.class.getName(), entry.getErrorType());
+        assertTrue(entry.getAttempts() >= 1);
+        assertTrue(entry.isReplayable());
+    }
+
+    @Test
+    public void replayedCommand_isExecutedAgain() throws Exception {
+        // A command failed for good
+        FailingTransport transport = new FailingTransport();
+        transport.mError = new ScHttpError(400);
+        ScSimulator simulator = ScDeadLetterStoreTest.newSimulator(transport);
+        ScServer server = simulator.getServer();
+        server.addCommand(ScDeadLetterStoreTest.newCommand(server, "Send", null), false);
+        simulator.run(60 * 1000);
+        ScDeadLetterStore.Entry entry = server.getDeadLetterStore().toList().get(0);
+
+        // The server is fixed
+        transport.mError = null;
+        int calls = transport.mCalls;
+        assertEquals(ScServer.QueueStatus.ADDED, server.replayDeadLetter(entry));
+        assertEquals(0, server.getDeadLetterStore().size());
+        simulator.run(60 * 1000);
+
+        // Check
+        assertEquals(calls + 1, transport.mCalls);
+        assertEquals(0, server.getDeadLetterStore().size());
+        assertEquals(0, server.getQueueSize());
+    }
+
+    @Test
+    public void notSavedParams_areNotReplayed() throws Exception {
+        // A command with a parameter that can not be saved
+        FailingTransport transport = new FailingTransport();
+        transport.mError = new ScHttpError(400);
+        ScSimulator simulator = ScDeadLetterStoreTest.newSimulator(transport);
+        ScServer server = simulator.getServer();
+        ScServer.SchedulableCommand command =
+                ScDeadLetterStoreTest.newCommand(server, "Send", null);
+        command.addParam("value", new Object());
+        server.addCommand(command, false);
+        simulator.run(60 * 1000);
+
+        // Kept but not replayable
+        ScDeadLetterStore.Entry entry = server.getDeadLetterStore().toList().get(0);
+        assertFalse(entry.isReplayable());
+        assertEquals(ScServer.QueueStatus.REJECTED, server.replayDeadLetter(entry));
+        assertEquals(1, server.getDeadLetterStore().size());
+    }
+
+    @Test
+    public void entries_areQueriedAndPurged() throws Exception {
+        // Some entries
+        ScServer server = new ScServer(null);
+        ScDeadLetterStore store = new ScDeadLetterStore();
+        store.add(ScDeadLetterStoreTest.newCommand(server, "Send", "a"), 1000);
+        store.add(ScDeadLetterStoreTest.newCommand(server, "Send", "b"), 2000);
+        store.add(ScDeadLetterStoreTest.newCommand(server, "Read", "a"), 3000);
+
+        // Query
+        assertEquals(2, store.query("Send").size());
+        assertEquals(1, store.query("Send", "b", 0, Long.MAX_VALUE).size());
+        List<ScDeadLetterStore.Entry> found = store.query(null, "a", 2000, Long.MAX_VALUE);
+        assertEquals(1, found.size());
+        assertEquals("Read", found.get(0).getMethodName());
+        assertEquals(3000, found.get(0).getDeadAt());
+
+        // Purge
+        assertEquals(2, store.purge(3000));
+        assertEquals(1, store.size());
+        assertEquals(1, store.purge());
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void fullStore_dropsTheOldest() throws Exception {
+        // More entries than the capacity
+        ScServer server = new ScServer(null);
+        ScDeadLetterStore store = new ScDeadLetterStore();
+        store.setCapacity(2);
+        for (int index = 0; index < 5; index++)
+            store.add(ScDeadLetterStoreTest.newCommand(server, "Send" + index, null), index);
+
+        // Only the newest kept
+        assertEquals(2, store.size());
+        assertEquals(3, store.getDroppedCount());
+        assertEquals("Send3", store.toList().get(0).getMethodName());
+        assertEquals("Send4", store.toList().get(1).getMethodName());
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.sccomponents.interfaces;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check the sharing of the dispatcher workers and its life cycle.
+ */
+public class ScDispatcherTest {
+
+    // Transport that record the max number of calls at the same time
+    private static class ParallelTransport implements ScTransport {
+
+        private AtomicInteger mRunning = new AtomicInteger();   // The calls in execution
+        private AtomicInteger mMax = new AtomicInteger();       // The max calls together
+        private CountDownLatch mDone = null;                    // Count the calls
+
+        // Constructor
+        private ParallelTransport(int calls) {
+            this.mDone = new CountDownLatch(calls);
+        }
+
+        @Override
+        public String call(ScServer.Command command) throws Exception {
+            // Hold the max
+            int running = this.mRunning.incrementAndGet();
+            int max;
+            while (running > (max = this.mMax.get()) && !this.mMax.compareAndSet(max, running))
+                Thread.yield();
+
+            // Answer after a while
+            Thread.sleep(100);
+            this.mRunning.decrementAndGet();
+            this.mDone.countDown();
+            return "ok";
+        }
+
+    }
+
+    // Create a server with some commands of the same group in queue
+    private static ScServer newServer(ScTransport transport, String group, int commands) {
+        ScServer server = new ScServer(null);
+        server.setTransport(transport);
+        for (int index = 0; index < commands; index++) {
+            ScServer.SchedulableCommand command = server.newSchedulableCommand("Send" + index);
+            command.setGroup(group);
+            server.addCommand(command, false);
+        }
+        return server;
+    }
+
+    @Test
+    public void groupLimit_startsManyCommandsTogether() throws Exception {
+        // A group that can run three commands at the same time
+        ParallelTransport transport = new ParallelTransport(6);
+        ScServer server = ScDispatcherTest.newServer(transport, "group", 6);
+        server.getGroupScheduler().setMaxInFlight("group", 3);
+        ScDispatcher dispatcher = new ScDispatcher(4);
+        server.setDispatcher(dispatcher);
+
+        // Check
+        assertTrue(transport.mDone.await(5, TimeUnit.SECONDS));
+        assertEquals(3, transport.mMax.get());
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void notStartedCommands_waitTheFreeWorkers() throws Exception {
+        // More commands than workers
+        ParallelTransport transport = new ParallelTransport(5);
+        ScServer server = ScDispatcherTest.newServer(transport, null, 5);
+        ScDispatcher dispatcher = new ScDispatcher(2);
+        server.setDispatcher(dispatcher);
+
+        // All executed, at most two together
+        assertTrue(transport.mDone.await(5, TimeUnit.SECONDS));
+        assertEquals(2, transport.mMax.get());
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void shutdown_detachesTheServers() throws Exception {
+        // A registered server
+        ScDispatcher dispatcher = new ScDispatcher(2);
+        ScServer server = new ScServer(null);
+        server.setDispatcher(dispatcher);
+        assertSame(dispatcher, server.getDispatcher());
+        assertEquals(1, dispatcher.getServers());
+
+        // The server come back to its own check
+        dispatcher.shutdown();
+        assertTrue(dispatcher.isShutdown());
+        assertNull(server.getDispatcher());
+        assertEquals(0, dispatcher.getServers());
+
+        // A dispatcher shut down can not be used anymore
+        server.setDispatcher(dispatcher);
+        assertNull(server.getDispatcher());
+        dispatcher.wakeUp();
+    }
+
+    @Test
+    public void unusedServer_leavesTheDispatcher() throws Exception {
+        // A server not referenced anymore
+        ScDispatcher dispatcher = new ScDispatcher(2);
+        new ScServer(null).setDispatcher(dispatcher);
+
+        // Wait the garbage collector
+        for (int index = 0; index < 50 && dispatcher.getServers() > 0; index++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertEquals(0, dispatcher.getServers());
+        dispatcher.shutdown();
+    }
+
+}
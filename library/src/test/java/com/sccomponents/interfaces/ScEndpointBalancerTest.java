@@ -0,0 +1,168 @@
+package com.sccomponents.interfaces;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check the endpoints preference and the exclusion of the failing endpoints in virtual time.
+ */
+public class ScEndpointBalancerTest {
+
+    // Create a balancer with two endpoints on a virtual clock
+    private static ScEndpointBalancer newBalancer(ScVirtualClock clock) {
+        ScEndpointBalancer balancer = new ScEndpointBalancer();
+        balancer.setClock(clock);
+        balancer.add("http://first");
+        balancer.add("http://second");
+        return balancer;
+    }
+
+    // Fail an endpoint many times
+    private static void fail(ScEndpointBalancer balancer, String address, int times) {
+        ScEndpointBalancer.Endpoint endpoint = balancer.add(address);
+        for (int index = 0; index < times; index++) balancer.recordFailure(endpoint);
+    }
+
+    // Call the server mirrors with an exchange that always throw the passed error.
+    // Return the called addresses.
+    private static List<String> callMirrors(final Exception error, boolean idempotent)
+            throws Exception {
+        // Create a server with two mirrors
+        ScServer server = new ScServer(null);
+        server.setProductionServerAddresses("http://first/", "http://second/");
+
+        // Call
+        final List<String> addresses = new ArrayList<>();
+        try {
+            server.callExchange("Send", new ScServer.Exchange() {
+                @Override
+                public String call(String address, ScServer.CallContext context)
+                        throws Exception {
+                    addresses.add(address);
+                    throw error;
+                }
+            }, idempotent, true);
+            org.junit.Assert.fail();
+        } catch (Exception e) {
+            assertSame(error, e);
+        }
+        return addresses;
+    }
+
+    @Test
+    public void endpoints_areAddedOneTime() throws Exception {
+        // Add twice
+        ScEndpointBalancer balancer = ScEndpointBalancerTest.newBalancer(new ScVirtualClock());
+        assertSame(balancer.add("http://first"), balancer.add("http://first"));
+        assertEquals(2, balancer.getEndpoints().size());
+
+        // Remove
+        assertNotNull(balancer.remove("http://first"));
+        assertNull(balancer.remove("http://first"));
+        assertEquals("http://second", balancer.getBest().getAddress());
+    }
+
+    @Test
+    public void fasterEndpoint_isPreferred() throws Exception {
+        // The second answer faster
+        ScEndpointBalancer balancer = ScEndpointBalancerTest.newBalancer(new ScVirtualClock());
+        balancer.recordSuccess(balancer.add("http://first"), 500);
+        balancer.recordSuccess(balancer.add("http://second"), 100);
+
+        // Check
+        assertEquals("http://second", balancer.getBest().getAddress());
+        assertEquals(2, balancer.getCandidates().size());
+    }
+
+    @Test
+    public void failingEndpoint_isExcludedForTheCoolDown() throws Exception {
+        // The first fail until the threshold
+        ScVirtualClock clock = new ScVirtualClock();
+        ScEndpointBalancer balancer = ScEndpointBalancerTest.newBalancer(clock);
+        ScEndpointBalancer.Endpoint first = balancer.add("http://first");
+        balancer.recordSuccess(balancer.add("http://second"), 1000);
+        ScEndpointBalancerTest.fail(balancer, "http://first", balancer.getFailureThreshold() - 1);
+        assertTrue(first.isHealthy(clock.now()));
+        ScEndpointBalancerTest.fail(balancer, "http://first", 1);
+
+        // Excluded but still the last candidate
+        assertFalse(first.isHealthy(clock.now()));
+        assertEquals("http://second", balancer.getBest().getAddress());
+        assertSame(first, balancer.getCandidates().get(1));
+
+        // Healthy again after the cool down
+        clock.advance(balancer.getCoolDown() - 1);
+        assertFalse(first.isHealthy(clock.now()));
+        clock.advance(1);
+        assertTrue(first.isHealthy(clock.now()));
+    }
+
+    @Test
+    public void coolDown_doublesAtEveryFailure() throws Exception {
+        // Over the threshold by one
+        ScVirtualClock clock = new ScVirtualClock();
+        ScEndpointBalancer balancer = ScEndpointBalancerTest.newBalancer(clock);
+        ScEndpointBalancer.Endpoint first = balancer.add("http://first");
+        ScEndpointBalancerTest.fail(balancer, "http://first", balancer.getFailureThreshold() + 1);
+
+        // Check
+        clock.advance(2 * balancer.getCoolDown() - 1);
+        assertFalse(first.isHealthy(clock.now()));
+        clock.advance(1);
+        assertTrue(first.isHealthy(clock.now()));
+
+        // A success reset the failures
+        balancer.recordSuccess(first, 100);
+        ScEndpointBalancerTest.fail(balancer, "http://first", 1);
+        assertTrue(first.isHealthy(clock.now()));
+        assertEquals(balancer.getFailureThreshold() + 3, first.getCalls());
+    }
+
+    @Test
+    public void slowEndpoint_recoversWhenNotCalled() throws Exception {
+        // The first is slower
+        ScVirtualClock clock = new ScVirtualClock();
+        ScEndpointBalancer balancer = ScEndpointBalancerTest.newBalancer(clock);
+        balancer.recordSuccess(balancer.add("http://first"), 500);
+        balancer.recordSuccess(balancer.add("http://second"), 100);
+        assertEquals("http://second", balancer.getBest().getAddress());
+
+        // Only the second is called so the first statistics fade
+        clock.advance(3 * balancer.getScoreHalfLife());
+        balancer.recordSuccess(balancer.add("http://second"), 100);
+        assertEquals("http://first", balancer.getBest().getAddress());
+        assertEquals(500, balancer.add("http://first").getScore(), 0);
+
+        // Never fade if disabled
+        balancer.setScoreHalfLife(0);
+        assertEquals("http://second", balancer.getBest().getAddress());
+    }
+
+    @Test
+    public void connectionError_isSentToTheNextServer() throws Exception {
+        // Not reached the server
+        assertEquals(2, ScEndpointBalancerTest.callMirrors(
+                new ConnectException("Connection refused"), false).size());
+        // Maybe reached the server
+        assertEquals(1, ScEndpointBalancerTest.callMirrors(
+                new IOException("Connection reset"), false).size());
+        assertEquals(2, ScEndpointBalancerTest.callMirrors(
+                new IOException("Connection reset"), true).size());
+    }
+
+    @Test
+    public void clientError_isNeverSentToTheNextServer() throws Exception {
+        // The server answered
+        assertEquals(1, ScEndpointBalancerTest.callMirrors(new ScHttpError(404), true).size());
+        assertEquals(1, ScEndpointBalancerTest.callMirrors(new ScHttpError(408), true).size());
+        // The server is failing
+        assertEquals(2, ScEndpointBalancerTest.callMirrors(new ScHttpError(503), true).size());
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.sccomponents.interfaces;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check the classification of the failures and the reading of the asked delays.
+ */
+public class ScFailureClassifierTest {
+
+    @Test
+    public void connectionError_isRetryable() throws Exception {
+        ScFailureClassifier classifier = new ScFailureClassifier();
+        assertEquals(ScFailureClassifier.Kind.RETRYABLE,
+                classifier.classify(new IOException("Connection reset")));
+        assertEquals(ScFailureClassifier.Kind.RETRYABLE, classifier.classify(null));
+    }
+
+    @Test
+    public void httpStatus_isClassified() throws Exception {
+        ScFailureClassifier classifier = new ScFailureClassifier();
+        assertEquals(ScFailureClassifier.Kind.THROTTLED, classifier.classify(new ScHttpError(503)));
+        assertEquals(ScFailureClassifier.Kind.THROTTLED, classifier.classify(new ScHttpError(429)));
+        assertEquals(ScFailureClassifier.Kind.PERMANENT, classifier.classify(new ScHttpError(404)));
+        assertEquals(ScFailureClassifier.Kind.RETRYABLE, classifier.classify(new ScHttpError(408)));
+        assertEquals(ScFailureClassifier.Kind.RETRYABLE, classifier.classify(new ScHttpError(500)));
+    }
+
+    @Test
+    public void askedDelay_makeThrottled() throws Exception {
+        // A server error with a delay
+        ScFailureClassifier classifier = new ScFailureClassifier();
+        ScHttpError error = new ScHttpError(500, 2000);
+
+        // Check
+        assertEquals(ScFailureClassifier.Kind.THROTTLED, classifier.classify(error));
+        assertEquals(2000, classifier.getRetryAfter(error));
+        assertEquals(-1, classifier.getRetryAfter(new IOException()));
+    }
+
+    @Test
+    public void faultCode_isClassified() throws Exception {
+        // The client faults with any prefix and detail
+        ScFailureClassifier classifier = new ScFailureClassifier();
+        assertEquals(ScFailureClassifier.Kind.PERMANENT,
+                classifier.classify(new ScServerFault(500, "soap:Client.Auth", "Denied")));
+        assertEquals(ScFailureClassifier.Kind.RETRYABLE,
+                classifier.classify(new ScServerFault(500, "soap:Server", "Busy")));
+
+        // The application mapping win over the status
+        classifier.setFaultCode("Server.Database", ScFailureClassifier.Kind.THROTTLED);
+        assertEquals(ScFailureClassifier.Kind.THROTTLED,
+                classifier.classify(new ScServerFault(500, "soap:Server.Database.Lock", "")));
+        classifier.setFaultCode("Server.Database", null);
+        assertNull(classifier.getFaultCode("Server.Database"));
+    }
+
+    @Test
+    public void status_canBeMapped() throws Exception {
+        ScFailureClassifier classifier = new ScFailureClassifier();
+        classifier.setStatus(409, ScFailureClassifier.Kind.RETRYABLE);
+        assertEquals(ScFailureClassifier.Kind.RETRYABLE, classifier.getStatus(409));
+        classifier.setStatus(409, null);
+        assertEquals(ScFailureClassifier.Kind.PERMANENT, classifier.getStatus(409));
+    }
+
+    @Test
+    public void retryAfter_isParsed() throws Exception {
+        // The seconds
+        assertEquals(120000, ScFailureClassifier.parseRetryAfter(" 120 "));
+        assertEquals(0, ScFailureClassifier.parseRetryAfter("-5"));
+
+        // Not valid
+        assertEquals(-1, ScFailureClassifier.parseRetryAfter(null));
+        assertEquals(-1, ScFailureClassifier.parseRetryAfter("soon"));
+
+        // A date in the future
+        SimpleDateFormat format =
+                new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        String date = format.format(new Date(System.currentTimeMillis() + 60000));
+        long delay = ScFailureClassifier.parseRetryAfter(date);
+        assertTrue("Delay: " + delay, delay > 50000 && delay <= 60000);
+    }
+
+}
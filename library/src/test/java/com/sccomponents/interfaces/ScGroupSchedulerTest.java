@@ -0,0 +1,248 @@
+package com.sccomponents.interfaces;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check the sharing of the executions between the commands groups.
+ */
+public class ScGroupSchedulerTest {
+
+    private ScServer mServer = new ScServer(null);      // The commands factory
+
+    // Transport that record the order and the time of the called commands
+    private static class RecordingTransport implements ScTransport {
+
+        private ScClock mClock = null;                          // The virtual time
+        private List<Long> mTimes = new ArrayList<>();          // When called
+        private List<String> mCommands = new ArrayList<>();     // The commands called
+
+        // Constructor
+        private RecordingTransport(ScClock clock) {
+            this.mClock = clock;
+        }
+
+        @Override
+        public String call(ScServer.Command command) throws Exception {
+            this.mTimes.add(this.mClock.now());
+            this.mCommands.add(ScGroupSchedulerTest.name((ScServer.SchedulableCommand) command));
+            return "ok";
+        }
+
+    }
+
+    // Create a simulator with a recording transport
+    private static RecordingTransport attach(ScSimulator simulator) {
+        RecordingTransport transport = new RecordingTransport(simulator.getClock());
+        simulator.getServer().setTransport(transport);
+        return transport;
+    }
+
+    // Create a command of a group
+    private static ScServer.SchedulableCommand newCommand(ScServer server, String group,
+                                                          int index) {
+        ScServer.SchedulableCommand command = server.newSchedulableCommand("Send");
+        command.setGroup(group);
+        command.addParam("index", index);
+        return command;
+    }
+
+    // Get the command as "group:index"
+    private static String name(ScServer.SchedulableCommand command) {
+        return command.getGroup() + ":" + command.getParams().get("index");
+    }
+
+    // Add the due commands of a group
+    private void addDue(Map<String, ArrayDeque<ScServer.SchedulableCommand>> due,
+                        String group, int count) {
+        ArrayDeque<ScServer.SchedulableCommand> commands = new ArrayDeque<>();
+        for (int index = 0; index < count; index++)
+            commands.add(ScGroupSchedulerTest.newCommand(this.mServer, group, index));
+        due.put(group, commands);
+    }
+
+    // Get the picked commands as "group:index"
+    private static List<String> names(List<ScServer.SchedulableCommand> commands) {
+        List<String> names = new ArrayList<>();
+        for (ScServer.SchedulableCommand command : commands)
+            names.add(ScGroupSchedulerTest.name(command));
+        return names;
+    }
+
+    // Count the commands of a group
+    private static int count(List<String> names, String group) {
+        int count = 0;
+        for (String name : names) if (name.startsWith(group + ":")) count++;
+        return count;
+    }
+
+    @Test
+    public void executions_areSharedByWeight() throws Exception {
+        // Two backlogs, the second added later but with triple weight
+        ScGroupScheduler scheduler = new ScGroupScheduler();
+        scheduler.setWeight("fast", 3);
+        Map<String, ArrayDeque<ScServer.SchedulableCommand>> due = new LinkedHashMap<>();
+        this.addDue(due, "slow", 100);
+        this.addDue(due, "fast", 100);
+
+        // Check
+        List<String> picked = ScGroupSchedulerTest.names(scheduler.pick(due, null, 40));
+        assertEquals(40, picked.size());
+        assertEquals(10, ScGroupSchedulerTest.count(picked, "slow"));
+        assertEquals(30, ScGroupSchedulerTest.count(picked, "fast"));
+    }
+
+    @Test
+    public void group_keepsTheQueueOrder() throws Exception {
+        // Two groups
+        ScGroupScheduler scheduler = new ScGroupScheduler();
+        Map<String, ArrayDeque<ScServer.SchedulableCommand>> due = new LinkedHashMap<>();
+        this.addDue(due, "first", 5);
+        this.addDue(due, "second", 5);
+
+        // Every group in its order, the groups alternated
+        List<String> picked = ScGroupSchedulerTest.names(scheduler.pick(due, null, 10));
+        assertEquals("first:0", picked.get(0));
+        assertEquals("second:0", picked.get(1));
+        int next = 0;
+        for (String name : picked) {
+            if (name.startsWith("first:")) assertEquals("first:" + next++, name);
+        }
+        assertEquals(5, next);
+    }
+
+    @Test
+    public void inFlightLimit_isApplied() throws Exception {
+        // A named group run one command at time by default
+        ScGroupScheduler scheduler = new ScGroupScheduler();
+        scheduler.setMaxInFlight("parallel", 3);
+        Map<String, ArrayDeque<ScServer.SchedulableCommand>> due = new LinkedHashMap<>();
+        this.addDue(due, "serial", 10);
+        this.addDue(due, "parallel", 10);
+        this.addDue(due, null, 10);
+
+        // One parallel command is already running
+        Map<String, Integer> running = new HashMap<>();
+        running.put("parallel", 1);
+        List<String> picked = ScGroupSchedulerTest.names(scheduler.pick(due, running, 100));
+
+        // Check
+        assertEquals(1, ScGroupSchedulerTest.count(picked, "serial"));
+        assertEquals(2, ScGroupSchedulerTest.count(picked, "parallel"));
+        assertEquals(10, ScGroupSchedulerTest.count(picked, "null"));
+
+        // A serial command in execution block its group
+        running.put("serial", 1);
+        picked = ScGroupSchedulerTest.names(scheduler.pick(due, running, 100));
+        assertEquals(0, ScGroupSchedulerTest.count(picked, "serial"));
+    }
+
+    @Test
+    public void returningGroup_hasNoBurst() throws Exception {
+        // Only one group for a long time
+        ScGroupScheduler scheduler = new ScGroupScheduler();
+        Map<String, ArrayDeque<ScServer.SchedulableCommand>> due = new LinkedHashMap<>();
+        this.addDue(due, "busy", 1);
+        this.addDue(due, "idle", 1);
+        scheduler.pick(due, null, 2);
+        for (int index = 0; index < 50; index++) {
+            due.clear();
+            this.addDue(due, "busy", 1);
+            scheduler.pick(due, null, 1);
+        }
+
+        // The idle group come back and share the executions from now
+        due.clear();
+        this.addDue(due, "busy", 10);
+        this.addDue(due, "idle", 10);
+        List<String> picked = ScGroupSchedulerTest.names(scheduler.pick(due, null, 10));
+        assertEquals(5, ScGroupSchedulerTest.count(picked, "idle"));
+    }
+
+    @Test
+    public void groups_shareTheExecutionsByWeight() throws Exception {
+        // Two groups with a backlog, the first with double weight
+        ScSimulator simulator = new ScSimulator();
+        ScServer server = simulator.getServer();
+        RecordingTransport transport = ScGroupSchedulerTest.attach(simulator);
+        server.getGroupScheduler().setWeight("heavy", 2);
+        for (int index = 0; index < 30; index++)
+            server.addCommand(ScGroupSchedulerTest.newCommand(server, "heavy", index), false);
+        for (int index = 0; index < 30; index++)
+            server.addCommand(ScGroupSchedulerTest.newCommand(server, "light", index), false);
+
+        // The light group is served also if added after the heavy backlog
+        simulator.run(1000);
+        List<String> first = transport.mCommands.subList(0, 9);
+        int heavy = 0;
+        for (String command : first) if (command.startsWith("heavy:")) heavy++;
+        assertEquals(6, heavy);
+
+        // Every group is executed in its queue order
+        int nextHeavy = 0;
+        int nextLight = 0;
+        for (String command : transport.mCommands) {
+            if (command.startsWith("heavy:")) assertEquals("heavy:" + nextHeavy++, command);
+            else assertEquals("light:" + nextLight++, command);
+        }
+        assertEquals(30, nextHeavy);
+        assertEquals(30, nextLight);
+    }
+
+    @Test
+    public void checkBudget_isSharedByWeight() throws Exception {
+        // Two groups with a backlog, the first with triple weight
+        ScSimulator simulator = new ScSimulator();
+        ScServer server = simulator.getServer();
+        RecordingTransport transport = ScGroupSchedulerTest.attach(simulator);
+        server.getGroupScheduler().setWeight("heavy", 3);
+        server.getGroupScheduler().setCheckBudget(4);
+        for (int index = 0; index < 10; index++)
+            server.addCommand(ScGroupSchedulerTest.newCommand(server, "heavy", index), false);
+        for (int index = 0; index < 10; index++)
+            server.addCommand(ScGroupSchedulerTest.newCommand(server, "light", index), false);
+
+        // One check execute only the budget, three heavy for every light
+        server.solveQueue();
+        assertEquals(4, transport.mCommands.size());
+        assertEquals(3, ScGroupSchedulerTest.count(transport.mCommands, "heavy"));
+        assertEquals(16, server.getQueueSize());
+
+        // The others wait the next checks
+        simulator.run(1000);
+        assertEquals(20, transport.mCommands.size());
+        assertEquals(0, server.getQueueSize());
+    }
+
+    @Test
+    public void moveAllGroup_keepsTheGroupOrder() throws Exception {
+        // Three commands of the same group
+        ScSimulator simulator = new ScSimulator();
+        ScServer server = simulator.getServer();
+        RecordingTransport transport = ScGroupSchedulerTest.attach(simulator);
+        ScServer.SchedulableCommand first = ScGroupSchedulerTest.newCommand(server, "group", 0);
+        server.addCommand(first, false);
+        server.addCommand(ScGroupSchedulerTest.newCommand(server, "group", 1), false);
+        server.addCommand(ScGroupSchedulerTest.newCommand(server, "group", 2), false);
+
+        // Move the first and the others after it
+        long start = simulator.getClock().now();
+        first.forceNextExecutionAtDate(start + 10000, true);
+        simulator.run(60 * 1000);
+
+        // Executed in order, none before the new date
+        assertEquals(3, transport.mTimes.size());
+        assertEquals("group:0", transport.mCommands.get(0));
+        assertEquals("group:2", transport.mCommands.get(2));
+        assertTrue(transport.mTimes.get(0) >= start + 10000);
+    }
+
+}
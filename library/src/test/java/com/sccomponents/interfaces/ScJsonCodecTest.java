@@ -0,0 +1,103 @@
+package com.sccomponents.interfaces;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check the JSON encoding of the requests and the decoding of the answers.
+ */
+public class ScJsonCodecTest {
+
+    // Encode the parameters
+    private static String encode(Map<String, Object> params) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new ScJsonCodec().encode("http://tempuri.org/", "Method", params, output);
+        return output.toString("UTF-8");
+    }
+
+    // Decode an answer
+    private static String decode(int status, String body) throws Exception {
+        return new ScJsonCodec().decode(status, new ByteArrayInputStream(body.getBytes("UTF-8")));
+    }
+
+    @Test
+    public void params_areWrittenAsProperties() throws Exception {
+        // All the kind of values
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("text", "a \"quoted\" text");
+        params.put("integer", 12);
+        params.put("decimal", 1.5);
+        params.put("flag", true);
+        params.put("empty", null);
+        params.put("numbers", new int[]{1, 2, 3});
+        params.put("date", new Date(1000));
+        params.put("list", Arrays.asList("a", 1));
+
+        // Check
+        assertEquals("{\"text\":\"a \\\"quoted\\\" text\",\"integer\":12,\"decimal\":1.5," +
+                        "\"flag\":true,\"empty\":null,\"numbers\":[1,2,3]," +
+                        "\"date\":\"\\/Date(1000)\\/\",\"list\":[\"a\",1]}",
+                ScJsonCodecTest.encode(params));
+    }
+
+    @Test
+    public void nestedObjects_areWritten() throws Exception {
+        // An object inside the parameters
+        Map<String, Object> inner = new LinkedHashMap<>();
+        inner.put("x", 1);
+        inner.put("y", Double.NaN);
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("point", inner);
+
+        // The not finite numbers are null
+        assertEquals("{\"point\":{\"x\":1,\"y\":null}}", ScJsonCodecTest.encode(params));
+    }
+
+    @Test
+    public void url_endsWithTheMethod() throws Exception {
+        assertEquals("http://server/Service.asmx/Method",
+                new ScJsonCodec().getUrl("http://server/Service.asmx", "ns", "Method"));
+    }
+
+    @Test
+    public void answer_isUnwrapped() throws Exception {
+        assertEquals("42", ScJsonCodecTest.decode(200, "{\"d\":42}"));
+        assertEquals("text", ScJsonCodecTest.decode(200, "{\"d\":\"text\"}"));
+        assertEquals("", ScJsonCodecTest.decode(200, "{\"d\":null}"));
+        assertEquals("", ScJsonCodecTest.decode(200, ""));
+    }
+
+    @Test
+    public void jsonError_isAServerFault() throws Exception {
+        try {
+            ScJsonCodecTest.decode(500,
+                    "{\"Message\":\"Invalid id\",\"ExceptionType\":\"System.ArgumentException\"}");
+            fail("Error not thrown");
+
+        } catch (ScServerFault e) {
+            assertEquals(500, e.getStatus());
+            assertEquals("System.ArgumentException", e.getCode());
+            assertEquals("Invalid id", e.getMessage());
+        }
+    }
+
+    @Test
+    public void notJsonError_isAHttpError() throws Exception {
+        try {
+            ScJsonCodecTest.decode(503, "<html>Service Unavailable</html>");
+            fail("Error not thrown");
+
+        } catch (ScHttpError e) {
+            assertEquals(503, e.getStatus());
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.sccomponents.interfaces;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check the sharing of the queue records between two stores opened on the same file, like two
+ * processes do.
+ */
+public class ScQueueStoreTest {
+
+    private File mFile = null;                          // The store file
+    private List<ScQueueStore> mStores = null;          // The opened stores
+
+
+    // Open a store on the test file
+    private ScQueueStore open() throws Exception {
+        ScQueueStore store = new ScQueueStore(this.mFile);
+        this.mStores.add(store);
+        return store;
+    }
+
+    // Convert a text in bytes
+    private static byte[] bytes(String value) throws Exception {
+        return value.getBytes("UTF-8");
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        this.mFile = File.createTempFile("qstore", ".bin");
+        this.mFile.delete();
+        this.mStores = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (ScQueueStore store : this.mStores) store.close();
+        this.mFile.delete();
+    }
+
+    @Test
+    public void writes_arePolledByTheOtherStore() throws Exception {
+        // Two writers
+        ScQueueStore first = this.open();
+        ScQueueStore second = this.open();
+
+        // Add
+        long id = first.put(ScQueueStoreTest.bytes("one"));
+        assertTrue(first.poll().isEmpty());
+        ScQueueStore.Changes changes = second.poll();
+        assertEquals(1, changes.getChanged().size());
+        assertEquals(id, changes.getChanged().get(0).getId());
+        assertArrayEquals(ScQueueStoreTest.bytes("one"), changes.getChanged().get(0).getData());
+        assertTrue(second.poll().isEmpty());
+
+        // Update
+        assertTrue(second.update(id, ScQueueStoreTest.bytes("two")));
+        changes = first.poll();
+        assertArrayEquals(ScQueueStoreTest.bytes("two"), changes.getChanged().get(0).getData());
+
+        // Remove
+        assertTrue(first.remove(id));
+        assertFalse(first.remove(id));
+        changes = second.poll();
+        assertEquals(1, changes.getRemoved().size());
+        assertEquals(id, (long) changes.getRemoved().get(0));
+        assertEquals(0, second.size());
+    }
+
+    @Test
+    public void notPolledChange_isNotOverwritten() throws Exception {
+        // The second know the first version
+        ScQueueStore first = this.open();
+        ScQueueStore second = this.open();
+        long id = first.put(ScQueueStoreTest.bytes("one"));
+        second.poll();
+
+        // The first change it, the second can not change it before read it
+        assertTrue(first.update(id, ScQueueStoreTest.bytes("two")));
+        assertFalse(second.update(id, ScQueueStoreTest.bytes("three")));
+        second.poll();
+        assertTrue(second.update(id, ScQueueStoreTest.bytes("three")));
+    }
+
+    @Test
+    public void claim_isExclusive() throws Exception {
+        // A record known by both
+        ScQueueStore first = this.open();
+        ScQueueStore second = this.open();
+        long id = first.put(ScQueueStoreTest.bytes("one"));
+        second.poll();
+
+        // Only one can claim it
+        assertTrue(second.claim(id));
+        assertFalse(first.claim(id));
+        assertFalse(first.update(id, ScQueueStoreTest.bytes("two")));
+        assertFalse(first.release(id));
+
+        // Free after the release
+        assertTrue(second.release(id));
+        assertTrue(first.claim(id));
+    }
+
+    @Test
+    public void expiredClaim_isFree() throws Exception {
+        // A claim without lease time
+        ScQueueStore first = this.open();
+        ScQueueStore second = this.open();
+        long id = first.put(ScQueueStoreTest.bytes("one"));
+        second.poll();
+        second.setLeaseTime(0);
+        assertTrue(second.claim(id));
+
+        // Like the claiming process died
+        assertTrue(first.claim(id));
+    }
+
+    @Test
+    public void compact_keepsTheLiveRecords() throws Exception {
+        // Some writes
+        ScQueueStore first = this.open();
+        List<byte[]> data = new ArrayList<>();
+        for (int index = 0; index < 10; index++) data.add(ScQueueStoreTest.bytes("r" + index));
+        long[] ids = first.putAll(data);
+        for (int index = 0; index < 8; index++) first.remove(ids[index]);
+        first.update(ids[9], ScQueueStoreTest.bytes("last"));
+
+        // Compact two times, so the records are moved in both the free parts of the file
+        first.compact();
+        first.compact();
+        assertEquals(2, first.size());
+
+        // A new store read only the live records
+        ScQueueStore second = this.open();
+        ScQueueStore.Changes changes = second.poll();
+        assertEquals(2, changes.getChanged().size());
+        for (ScQueueStore.Record record : changes.getChanged()) {
+            if (record.getId() == ids[8])
+                assertArrayEquals(ScQueueStoreTest.bytes("r8"), record.getData());
+            else assertArrayEquals(ScQueueStoreTest.bytes("last"), record.getData());
+        }
+
+        // The ids are not reused
+        assertTrue(first.put(ScQueueStoreTest.bytes("new")) > ids[9]);
+    }
+
+}
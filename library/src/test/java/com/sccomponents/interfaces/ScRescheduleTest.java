@@ -0,0 +1,142 @@
+package com.sccomponents.interfaces;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check the delays of the failed and throttled commands in virtual time, so the delays are
+ * exact and the tests never wait.
+ */
+public class ScRescheduleTest {
+
+    // Transport that record when it is called and fail with the passed errors in turn.
+    // After the errors it answer with success.
+    private static class RecordingTransport implements ScTransport {
+
+        private ScClock mClock = null;                          // The virtual time
+        private Exception[] mErrors = null;                     // The errors to throw
+        private List<Long> mTimes = new ArrayList<>();          // When called
+
+        // Constructor
+        private RecordingTransport(ScClock clock, Exception... errors) {
+            this.mClock = clock;
+            this.mErrors = errors;
+        }
+
+        @Override
+        public String call(ScServer.Command command) throws Exception {
+            int index = this.mTimes.size();
+            this.mTimes.add(this.mClock.now());
+            if (index < this.mErrors.length) throw this.mErrors[index];
+            return "ok";
+        }
+
+        // Get the delays between the calls
+        private List<Long> getDelays() {
+            List<Long> delays = new ArrayList<>();
+            for (int index = 1; index < this.mTimes.size(); index++)
+                delays.add(this.mTimes.get(index) - this.mTimes.get(index - 1));
+            return delays;
+        }
+
+    }
+
+    // Create a simulator with a recording transport
+    private static RecordingTransport attach(ScSimulator simulator, Exception... errors) {
+        RecordingTransport transport = new RecordingTransport(simulator.getClock(), errors);
+        simulator.getServer().setTransport(transport);
+        return transport;
+    }
+
+    @Test
+    public void failedCommand_waitsTheRetryDelay() throws Exception {
+        // A command that always fail
+        ScSimulator simulator = new ScSimulator();
+        IOException error = new IOException("Connection reset");
+        RecordingTransport transport =
+                ScRescheduleTest.attach(simulator, error, error, error, error);
+        simulator.addCommands("Send", 1, 0, 3, 1500);
+
+        // Tried three times, every time after the retry delay, then spent
+        ScSimulator.Report report = simulator.run(60 * 1000);
+        assertEquals(3, transport.mTimes.size());
+        assertEquals(1500L, (long) transport.getDelays().get(0));
+        assertEquals(1500L, (long) transport.getDelays().get(1));
+        assertEquals(0, report.getRemaining());
+    }
+
+    @Test
+    public void throttledCommand_backsOff() throws Exception {
+        // A command that the server always refuse for overload without say when try again
+        ScSimulator simulator = new ScSimulator();
+        ScHttpError busy = new ScHttpError(503);
+        RecordingTransport transport =
+                ScRescheduleTest.attach(simulator, busy, busy, busy, busy, busy);
+        simulator.addCommands("Send", 1, 0, 4, 0);
+
+        // Every try count and the delay double from one second
+        simulator.run(60 * 1000);
+        assertEquals(4, transport.mTimes.size());
+        assertEquals(1000L, (long) transport.getDelays().get(0));
+        assertEquals(2000L, (long) transport.getDelays().get(1));
+        assertEquals(4000L, (long) transport.getDelays().get(2));
+    }
+
+    @Test
+    public void throttledCommand_waitsTheRetryAfter() throws Exception {
+        // The server ask two times to come back after 30 seconds
+        ScSimulator simulator = new ScSimulator();
+        ScHttpError busy = new ScHttpError(503, 30000);
+        RecordingTransport transport = ScRescheduleTest.attach(simulator, busy, busy);
+        simulator.addCommands("Send", 1, 0, 3, 1000);
+
+        // The asked delay replace the retry delay and the last try succeed
+        ScSimulator.Report report = simulator.run(5 * 60 * 1000);
+        assertEquals(3, transport.mTimes.size());
+        assertEquals(30000L, (long) transport.getDelays().get(0));
+        assertEquals(30000L, (long) transport.getDelays().get(1));
+        assertEquals(0, report.getRemaining());
+    }
+
+    @Test
+    public void alwaysThrottledCommand_stopsAtTheMaxRetry() throws Exception {
+        // The server always ask to come back after 30 seconds
+        ScSimulator simulator = new ScSimulator();
+        ScHttpError busy = new ScHttpError(503, 30000);
+        RecordingTransport transport =
+                ScRescheduleTest.attach(simulator, busy, busy, busy, busy, busy, busy);
+        simulator.addCommands("Send", 1, 0, 3, 1000);
+
+        // The asked tries count too
+        ScSimulator.Report report = simulator.run(10 * 60 * 1000);
+        assertEquals(3, transport.mTimes.size());
+        assertEquals(0, report.getRemaining());
+    }
+
+    @Test
+    public void timedOutRequest_isTriedAgain() throws Exception {
+        // The server not received the request in time
+        ScSimulator simulator = new ScSimulator();
+        RecordingTransport transport =
+                ScRescheduleTest.attach(simulator, new ScHttpError(408));
+        simulator.addCommands("Send", 1, 0, 3, 1500);
+
+        // Tried again after the retry delay, while a not found is not
+        simulator.run(60 * 1000);
+        assertEquals(2, transport.mTimes.size());
+        assertEquals(1500L, (long) transport.getDelays().get(0));
+
+        // A missing method is never tried again
+        simulator = new ScSimulator();
+        transport = ScRescheduleTest.attach(simulator, new ScHttpError(404));
+        simulator.addCommands("Send", 1, 0, 3, 1500);
+        simulator.run(60 * 1000);
+        assertEquals(1, transport.mTimes.size());
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.sccomponents.interfaces;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that the simulator jump exactly to the next due executions and that the server time
+ * is the virtual one.
+ */
+public class ScSimulatorTest {
+
+    // Transport that record when it is called
+    private static class RecordingTransport implements ScTransport {
+
+        private ScClock mClock = null;                          // The virtual time
+        private List<Long> mTimes = new ArrayList<>();          // When called
+
+        // Constructor
+        private RecordingTransport(ScClock clock) {
+            this.mClock = clock;
+        }
+
+        @Override
+        public String call(ScServer.Command command) throws Exception {
+            this.mTimes.add(this.mClock.now());
+            return "ok";
+        }
+
+    }
+
+    @Test
+    public void scheduledCommands_areExecutedInTimeOrder() throws Exception {
+        // Commands scheduled in the reverse order of the queue
+        ScSimulator simulator = new ScSimulator();
+        ScServer server = simulator.getServer();
+        RecordingTransport transport = new RecordingTransport(simulator.getClock());
+        server.setTransport(transport);
+        long start = simulator.getClock().now();
+        for (int index = 3; index > 0; index--) {
+            ScServer.SchedulableCommand command = server.newSchedulableCommand("Send" + index);
+            server.addCommand(command, false);
+            command.forceNextExecutionAtDate(start + index * 1000, false);
+        }
+
+        // The first check find nothing due, after one check for every due time and the last
+        ScSimulator.Report report = simulator.run(60 * 1000);
+        assertEquals(3, transport.mTimes.size());
+        assertEquals(start + 1000, (long) transport.mTimes.get(0));
+        assertEquals(start + 2000, (long) transport.mTimes.get(1));
+        assertEquals(start + 3000, (long) transport.mTimes.get(2));
+        assertEquals(5, report.getChecks());
+        assertEquals(0, report.getRemaining());
+    }
+
+    @Test
+    public void manyCommands_areAllExecuted() throws Exception {
+        // Many commands on a server that fail sometimes
+        ScSimulator simulator = new ScSimulator();
+        simulator.getTransport().setLatency(5);
+        simulator.getTransport().setFailureRate(0.2);
+        int count = simulator.addCommands("Send", 50000, 0, 0, 1000);
+
+        // Every command succeed at the end
+        ScSimulator.Report report = simulator.run(24 * 60 * 60 * 1000L);
+        assertEquals(0, report.getRemaining());
+        assertEquals(count, report.getCalls() - report.getFailures());
+    }
+
+    @Test
+    public void events_haveTheVirtualTime() throws Exception {
+        // Listen the events of a slow server
+        ScSimulator simulator = new ScSimulator();
+        simulator.getTransport().setLatency(500);
+        final List<ScCommandEventBus.CommandEvent> events = new ArrayList<>();
+        simulator.getServer().getEventBus().subscribe(
+                new ScCommandEventBus.OnCommandEventsListener() {
+                    @Override
+                    public void onCommandEvents(List<ScCommandEventBus.CommandEvent> list) {
+                        events.addAll(list);
+                    }
+                });
+        simulator.getClock().set(1000000);
+        simulator.addCommands("Send", 1, 0, 1, 0);
+        simulator.run(60 * 1000);
+
+        // Check
+        assertEquals(2, events.size());
+        assertEquals(1000000, events.get(0).getTime());
+        assertEquals(1000500, events.get(1).getTime());
+    }
+
+    @Test
+    public void limiterHistory_hasTheVirtualTime() throws Exception {
+        // Attach a limiter to the simulated server
+        ScSimulator simulator = new ScSimulator();
+        simulator.getClock().set(1000000);
+        ScConcurrencyLimiter limiter = new ScConcurrencyLimiter();
+        simulator.getServer().setConcurrencyLimiter(limiter);
+        assertEquals(1000000, limiter.getHistory().get(0).getTime());
+
+        // Change the limit later
+        simulator.getClock().advance(5000);
+        assertTrue(limiter.tryAcquire());
+        limiter.release(100, true);
+
+        // Check
+        List<ScConcurrencyLimiter.Sample> history = limiter.getHistory();
+        assertEquals(2, history.size());
+        assertEquals(1005000, history.get(1).getTime());
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.sccomponents.interfaces;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that the stream parameters read only one time are never sent again.
+ */
+public class ScStreamParamTest {
+
+    // Transport that read the stream parameters and fail
+    private static class ReadingTransport implements ScTransport {
+
+        private int mCalls = 0;                 // Number of calls
+
+        @Override
+        public String call(ScServer.Command command) throws Exception {
+            this.mCalls++;
+            for (Object value : command.getParams().values()) {
+                if (value instanceof ScStreamParam) {
+                    InputStream input = ((ScStreamParam) value).open();
+                    while (input.read() != -1) ;
+                    input.close();
+                }
+            }
+            throw new IOException("Connection reset");
+        }
+
+    }
+
+    // Create a one shot stream parameter
+    private static ScStreamParam oneShot() {
+        return ScStreamParam.fromStream(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    public void consumedStream_isNotRetried() throws Exception {
+        // Create a server with a transport that read the stream and fail
+        ScServer server = new ScServer(null);
+        ReadingTransport transport = new ReadingTransport();
+        server.setTransport(transport);
+
+        // A command that could retry many times
+        ScServer.SchedulableCommand command = server.newSchedulableCommand("Upload");
+        command.setMaxRetry(5);
+        command.addParam("data", ScStreamParamTest.oneShot());
+
+        // The first try read the stream and the second never call the server
+        command.execute();
+        assertEquals(1, transport.mCalls);
+        assertTrue(command.isError());
+        assertFalse(command.willTry());
+
+        command.execute();
+        assertEquals(1, transport.mCalls);
+    }
+
+    @Test
+    public void repeatableStream_isRetried() throws Exception {
+        // Create a server with a transport that read the stream and fail
+        ScServer server = new ScServer(null);
+        ReadingTransport transport = new ReadingTransport();
+        server.setTransport(transport);
+
+        // A command with a parameter that can be read more times
+        ScServer.SchedulableCommand command = server.newSchedulableCommand("Upload");
+        command.setMaxRetry(5);
+        command.addParam("data", new ScStreamParam() {
+            @Override
+            public InputStream open() throws IOException {
+                return new ByteArrayInputStream(new byte[]{1, 2, 3});
+            }
+
+            @Override
+            public boolean isRepeatable() {
+                return true;
+            }
+        });
+
+        // The connection error can be tried again
+        command.execute();
+        assertTrue(command.willTry());
+    }
+
+    @Test
+    public void notRepeatableRequest_isNotSentToTheNextServer() throws Exception {
+        // Create a server with two mirrors
+        ScServer server = new ScServer(null);
+        server.setProductionServerAddresses("http://first/", "http://second/");
+
+        // Exchange that always fail with a connection error
+        final List<String> addresses = new ArrayList<>();
+        ScServer.Exchange exchange = new ScServer.Exchange() {
+            @Override
+            public String call(String address, ScServer.CallContext context) throws Exception {
+                addresses.add(address);
+                throw new ConnectException("Connection refused");
+            }
+        };
+
+        // A repeatable request try both the mirrors
+        try {
+            server.callExchange("Upload", exchange, false, true);
+            fail();
+        } catch (IOException e) {
+            assertEquals(2, addresses.size());
+        }
+
+        // A not repeatable one only the first
+        addresses.clear();
+        try {
+            server.callExchange("Upload", exchange, true, false);
+            fail();
+        } catch (IOException e) {
+            assertEquals(1, addresses.size());
+        }
+    }
+
+}